@@ -1,5 +1,6 @@
 package enigma;
 import java.util.ArrayList;
+import java.util.Arrays;
 /** An alphabet of encodable characters.  Provides a mapping from characters
  *  to and from indices into the alphabet.
  *  @author Ryan Chen
@@ -10,9 +11,21 @@ class Alphabet {
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
         _chars = chars;
+        char low = Character.MAX_VALUE, high = 0;
         for (char i : chars.toCharArray()) {
             alphaChars.add(i);
+            low = (char) Math.min(low, i);
+            high = (char) Math.max(high, i);
         }
+        _low = low;
+        _index = new int[chars.isEmpty() ? 0 : high - low + 1];
+        Arrays.fill(_index, -1);
+        boolean bytes = chars.length() == BYTE_SIZE;
+        for (int k = chars.length() - 1; k >= 0; k--) {
+            _index[chars.charAt(k) - low] = k;
+            bytes &= chars.charAt(k) == k;
+        }
+        _byteAlphabet = bytes;
     }
 
 
@@ -28,6 +41,25 @@ class Alphabet {
         this("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
     }
 
+    /** Returns a new alphabet of the 256 byte values, in which the
+     *  character with code K (0 <= K < 256) has index K. */
+    static Alphabet byteAlphabet() {
+        char[] chars = new char[BYTE_SIZE];
+        for (int i = 0; i < BYTE_SIZE; i++) {
+            chars[i] = (char) i;
+        }
+        return new Alphabet(new String(chars));
+    }
+
+    /** Returns true iff I am a byte alphabet, so that byte value K
+     *  (as an unsigned number) is the same as index K. */
+    boolean isByteAlphabet() {
+        return _byteAlphabet;
+    }
+
+    /** The number of symbols in a byte alphabet. */
+    static final int BYTE_SIZE = 256;
+
     /** Returns the size of the alphabet. */
     int size() {
         return alphaChars.size();
@@ -35,7 +67,23 @@ class Alphabet {
 
     /** Returns true if preprocess(CH) is in this alphabet. */
     boolean contains(char ch) {
-        return alphaChars.contains(Character.valueOf(ch));
+        return toInt(ch) >= 0;
+    }
+
+    /** Returns the position of the first character in BUF[START .. END-1]
+     *  that is not in this alphabet, or -1 if they all are.  This is the
+     *  bulk form of contains(), which checks a whole buffer with one
+     *  table lookup per character. */
+    int firstInvalid(char[] buf, int start, int end) {
+        int[] index = _index;
+        int low = _low;
+        for (int i = start; i < end; i++) {
+            int k = buf[i] - low;
+            if (k < 0 || k >= index.length || index[k] < 0) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     /** Returns character number INDEX in the alphabet, where
@@ -47,7 +95,11 @@ class Alphabet {
     /** Returns the index of character preprocess(CH), which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        return alphaChars.indexOf(ch);
+        int k = ch - _low;
+        if (k < 0 || k >= _index.length) {
+            return -1;
+        }
+        return _index[k];
     }
 
     /** The ArrayList that represents the Alphabet. */
@@ -56,6 +108,16 @@ class Alphabet {
     /** The string of the alphabet. */
     private String _chars;
 
+    /** The smallest character in the alphabet. */
+    private final char _low;
+
+    /** _index[C - _low] is the index of character C, or -1 if C is not
+     *  in the alphabet. */
+    private final int[] _index;
+
+    /** True iff I am a byte alphabet (see isByteAlphabet). */
+    private final boolean _byteAlphabet;
+
     /** Return the string of the alphabet. */
     public String getChars() {
         return _chars;
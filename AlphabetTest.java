@@ -41,4 +41,26 @@ public class AlphabetTest {
         assert (check.contains('B'));
         assert (!(check.contains('A')));
     }
+
+    @Test
+    public void checkFirstInvalid() {
+        Alphabet check = new Alphabet("aBcDeFg");
+        char[] buf = "xaBcDxeFgZ".toCharArray();
+        assertEquals(-1, check.firstInvalid(buf, 1, 5));
+        assertEquals(5, check.firstInvalid(buf, 1, 9));
+        assertEquals(9, check.firstInvalid(buf, 6, 10));
+        assertEquals(-1, check.firstInvalid(buf, 3, 3));
+        assertEquals(-1, check.toInt('A'));
+    }
+
+    @Test
+    public void checkByteAlphabet() {
+        assertTrue(Alphabet.byteAlphabet().isByteAlphabet());
+        assertFalse(new Alphabet().isByteAlphabet());
+        char[] chars = new char[Alphabet.BYTE_SIZE];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) (chars.length - 1 - i);
+        }
+        assertFalse(new Alphabet(new String(chars)).isByteAlphabet());
+    }
 }
@@ -0,0 +1,329 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static enigma.EnigmaException.*;
+
+/** Batch mode for Main: runs many (configuration, input, output) jobs
+ *  concurrently on a bounded pool of worker threads.  Each distinct
+ *  configuration file is parsed once and shared by all the jobs that
+ *  use it.  A job that fails, even with an Error such as a stack
+ *  overflow, is reported, and does not stop the others.
+ *
+ *  The arguments are --batch SOURCE [THREADS].  SOURCE is either a
+ *  manifest file, each of whose lines (other than blank lines and lines
+ *  starting with '#') names a configuration file, an input file and an
+ *  output file, or a directory.  Names on a manifest line are separated
+ *  by whitespace; a name that contains whitespace is written between
+ *  double quotes.  In a directory, each file NAME.in is processed with
+ *  configuration NAME.conf if there is one, and otherwise with
+ *  default.conf, giving NAME.out.  Relative names in a manifest are
+ *  taken relative to the manifest's directory.  THREADS defaults to the
+ *  number of available processors.
+ *  @author Ryan Chen
+ */
+final class Batch {
+
+    /** Run the batch described by ARGS (see the class comment), reporting
+     *  on the standard output and standard error, with the options
+     *  NORMALIZE and ENGINE (see options).  Return true iff every job
+     *  succeeded. */
+    static boolean run(String[] args, String normalize, int engine) {
+        if (args.length < 2 || args.length > 3) {
+            throw error("Usage: --batch SOURCE [THREADS]");
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (args.length == 3) {
+            try {
+                threads = Integer.parseInt(args[2]);
+            } catch (NumberFormatException excp) {
+                threads = 0;
+            }
+            if (threads < 1) {
+                throw error("bad thread count: %s", args[2]);
+            }
+        }
+        Batch batch = new Batch(jobs(new File(args[1])), threads);
+        batch.options(normalize, engine);
+        batch.execute();
+        return batch.report(System.out, System.err);
+    }
+
+    /** A batch that runs JOBS on THREADS worker threads. */
+    Batch(List<Job> jobs, int threads) {
+        _jobs = jobs;
+        _threads = threads;
+        for (Job job : jobs) {
+            String key = job.config().getAbsolutePath();
+            if (!_configs.containsKey(key)) {
+                _configs.put(key, new FutureTask<>(() -> parse(job.config())));
+            }
+        }
+    }
+
+    /** Clean up messages as described by NORMALIZE (see Normalizer), or
+     *  not at all if it is null, and convert them with ENGINE (see
+     *  Engines), in every job. */
+    void options(String normalize, int engine) {
+        _normalize = normalize;
+        _engine = engine;
+    }
+
+    /** Return the jobs described by SOURCE, a manifest or a directory. */
+    static List<Job> jobs(File source) {
+        ArrayList<Job> result = new ArrayList<>();
+        if (source.isDirectory()) {
+            String[] names = source.list();
+            Arrays.sort(names);
+            for (String name : names) {
+                if (name.endsWith(INPUT_SUFFIX)) {
+                    String base = name.substring(0, name.length()
+                                                 - INPUT_SUFFIX.length());
+                    File config = new File(source, base + CONFIG_SUFFIX);
+                    if (!config.isFile()) {
+                        config = new File(source, DEFAULT_CONFIG);
+                    }
+                    result.add(new Job(config, new File(source, name),
+                                       new File(source, base + OUTPUT_SUFFIX)));
+                }
+            }
+            return result;
+        }
+        try (Scanner manifest = new Scanner(source)) {
+            File dir = source.getAbsoluteFile().getParentFile();
+            while (manifest.hasNextLine()) {
+                String line = manifest.nextLine().trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                ArrayList<String> names = new ArrayList<>();
+                Matcher name = MANIFEST_NAME.matcher(line);
+                while (name.lookingAt()) {
+                    names.add(name.group(1) != null ? name.group(1)
+                              : name.group(2));
+                    name.region(name.end(), line.length());
+                }
+                if (name.regionStart() != line.length()
+                    || names.size() != 3) {
+                    throw error("bad manifest line: %s", line);
+                }
+                result.add(new Job(resolve(dir, names.get(0)),
+                                   resolve(dir, names.get(1)),
+                                   resolve(dir, names.get(2))));
+            }
+        } catch (IOException excp) {
+            throw error("could not open %s", source);
+        }
+        return result;
+    }
+
+    /** Return the file NAME, relative to DIR if it is not absolute. */
+    private static File resolve(File dir, String name) {
+        File file = new File(name);
+        return file.isAbsolute() ? file : new File(dir, name);
+    }
+
+    /** Return the configuration read from the file CONFIG. */
+    private static MachineConfig parse(File config) {
+        return Main.readConfig(config);
+    }
+
+    /** Run all my jobs, waiting until they are finished. */
+    void execute() {
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        try {
+            ArrayList<Future<?>> pending = new ArrayList<>();
+            for (Job job : _jobs) {
+                pending.add(pool.submit(() -> runJob(job)));
+            }
+            for (Future<?> done : pending) {
+                done.get();
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw error("batch interrupted");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Run JOB, recording its outcome in JOB, whatever it throws. */
+    private void runJob(Job job) {
+        long start = System.nanoTime();
+        try {
+            MachineConfig definition = config(job.config());
+            try (Scanner input = new Scanner(job.input());
+                 PrintStream output = new PrintStream(new BufferedOutputStream(
+                         new FileOutputStream(job.output())))) {
+                Main main = new Main(definition, input, output);
+                main.normalize(_normalize);
+                main.useEngine(_engine);
+                main.process();
+                output.flush();
+                if (output.checkError()) {
+                    throw error("could not write %s", job.output());
+                }
+            } catch (IOException excp) {
+                throw error("could not open %s or %s", job.input(),
+                            job.output());
+            }
+            job.succeeded(job.input().length(), System.nanoTime() - start);
+        } catch (EnigmaException excp) {
+            job.failed(excp.getMessage(), System.nanoTime() - start);
+        } catch (Throwable excp) {
+            job.failed(excp.toString(), System.nanoTime() - start);
+        }
+    }
+
+    /** Return the shared configuration in file CONFIG, parsing it if no
+     *  other job has yet done so. */
+    private MachineConfig config(File config) {
+        FutureTask<MachineConfig> task =
+            _configs.get(config.getAbsolutePath());
+        task.run();
+        try {
+            return task.get();
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw error("could not read %s", config);
+        } catch (InterruptedException excp) {
+            throw error("interrupted reading %s", config);
+        }
+    }
+
+    /** Print one line per job to OUT (for successes) or ERR (for
+     *  failures), in job order, followed by a summary on OUT.  Return
+     *  true iff there were no failures. */
+    boolean report(PrintStream out, PrintStream err) {
+        int failures = 0;
+        long bytes = 0;
+        for (Job job : _jobs) {
+            if (job.error() == null) {
+                bytes += job.bytes();
+                out.printf("%s: %d bytes in %.1f ms (%.2f MB/s)%n",
+                           job.input(), job.bytes(), job.nanos() / 1e6,
+                           megabytesPerSecond(job.bytes(), job.nanos()));
+            } else {
+                failures += 1;
+                err.printf("Error: %s: %s%n", job.input(), job.error());
+            }
+        }
+        out.printf("%d files, %d failed, %d bytes%n",
+                   _jobs.size(), failures, bytes);
+        return failures == 0;
+    }
+
+    /** Return the rate at which BYTES were processed in NANOS ns. */
+    private static double megabytesPerSecond(long bytes, long nanos) {
+        return nanos == 0 ? 0.0 : bytes * 1e3 / nanos;
+    }
+
+    /** One configuration, input and output file to be processed. */
+    static class Job {
+
+        /** A job applying configuration CONFIG to INPUT giving OUTPUT. */
+        Job(File config, File input, File output) {
+            _config = config;
+            _input = input;
+            _output = output;
+        }
+
+        /** Return my configuration file. */
+        File config() {
+            return _config;
+        }
+
+        /** Return my input file. */
+        File input() {
+            return _input;
+        }
+
+        /** Return my output file. */
+        File output() {
+            return _output;
+        }
+
+        /** Record that I processed BYTES bytes of input in NANOS ns. */
+        synchronized void succeeded(long bytes, long nanos) {
+            _bytes = bytes;
+            _nanos = nanos;
+        }
+
+        /** Record that I failed after NANOS ns with message MSG. */
+        synchronized void failed(String msg, long nanos) {
+            _error = msg == null ? "failed" : msg;
+            _nanos = nanos;
+        }
+
+        /** Return my error message, or null if I succeeded. */
+        synchronized String error() {
+            return _error;
+        }
+
+        /** Return the number of input bytes I processed. */
+        synchronized long bytes() {
+            return _bytes;
+        }
+
+        /** Return how long I took, in nanoseconds. */
+        synchronized long nanos() {
+            return _nanos;
+        }
+
+        /** The configuration file. */
+        private final File _config;
+        /** The input file. */
+        private final File _input;
+        /** The output file. */
+        private final File _output;
+        /** The number of input bytes processed. */
+        private long _bytes;
+        /** The elapsed time in nanoseconds. */
+        private long _nanos;
+        /** The error message, if any. */
+        private String _error;
+    }
+
+    /** The jobs. */
+    private final List<Job> _jobs;
+    /** The number of worker threads. */
+    private final int _threads;
+    /** The normalization spec for every job, or null. */
+    private String _normalize;
+    /** The engine for every job. */
+    private int _engine = Engines.ADAPTIVE;
+    /** Configuration parsing tasks, keyed by absolute file name. */
+    private final HashMap<String, FutureTask<MachineConfig>> _configs =
+        new HashMap<>();
+
+    /** A name on a manifest line, with any whitespace before it: either
+     *  a quoted name (group 1) or a run of non-whitespace (group 2). */
+    private static final Pattern MANIFEST_NAME =
+        Pattern.compile("\\s*(?:\"([^\"]*)\"|([^\\s\"]+))");
+
+    /** Suffix of input files in a batch directory. */
+    static final String INPUT_SUFFIX = ".in";
+    /** Suffix of configuration files in a batch directory. */
+    static final String CONFIG_SUFFIX = ".conf";
+    /** Suffix of output files in a batch directory. */
+    static final String OUTPUT_SUFFIX = ".out";
+    /** Configuration for inputs in a batch directory with no own one. */
+    static final String DEFAULT_CONFIG = "default" + CONFIG_SUFFIX;
+}
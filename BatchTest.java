@@ -0,0 +1,161 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Batch class.
+ *  @author Ryan Chen
+ */
+public class BatchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A configuration file. */
+    private static final String CONFIG = String.join("\n",
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ",
+        "5 3",
+        " I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)",
+        " III MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)",
+        " IV MJ     (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)",
+        " Beta N    (ALBEVFCYODJWUGNMQTZSKPR) (HIX)",
+        " B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)",
+        "           (RX) (SZ) (TV)", "");
+
+    /** Return an input file for CONFIG whose message is MESSAGE. */
+    private static String input(String message) {
+        return String.join("\n", "* B Beta III IV I AXLE (YF) (ZH)",
+                           message, "");
+    }
+
+    /** A job whose output file cannot even be named, because looking
+     *  it up throws an Error. */
+    private static class Broken extends Batch.Job {
+
+        /** A broken job on CONFIG and INPUT. */
+        Broken(File config, File input) {
+            super(config, input, null);
+        }
+
+        @Override
+        File output() {
+            throw new StackOverflowError("too deep");
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testFailuresAreIsolated() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        try {
+            File config = dir.resolve("default.conf").toFile();
+            Files.writeString(config.toPath(), CONFIG);
+            List<Batch.Job> jobs = new ArrayList<>();
+            String[] messages = {"FROM HIS SHOULDER", "HIAWATHA",
+                                 "TOOK THE CAMERA"};
+            for (int i = 0; i < messages.length; i++) {
+                File in = dir.resolve("good" + i + ".in").toFile();
+                Files.writeString(in.toPath(), input(messages[i]));
+                jobs.add(new Batch.Job(config, in,
+                                       dir.resolve("good" + i + ".out")
+                                       .toFile()));
+                if (i == 1) {
+                    jobs.add(new Broken(config, in));
+                    jobs.add(new Batch.Job(config,
+                                           dir.resolve("none.in").toFile(),
+                                           dir.resolve("none.out")
+                                           .toFile()));
+                }
+            }
+            Batch batch = new Batch(jobs, 2);
+            batch.execute();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(),
+                err = new ByteArrayOutputStream();
+            assertFalse(batch.report(new PrintStream(out, true),
+                                     new PrintStream(err, true)));
+            assertTrue(out.toString().contains("5 files, 2 failed"));
+            assertTrue(err.toString().contains("StackOverflowError"));
+            assertTrue(err.toString().contains("none.in"));
+            for (int i = 0; i < messages.length; i++) {
+                assertEquals(mainOutput(config, input(messages[i])),
+                             Files.readString(dir.resolve("good" + i
+                                                          + ".out")));
+            }
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    @Test
+    public void testManifestWithSpaces() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        try {
+            Path sub = Files.createDirectory(dir.resolve("my files"));
+            Files.writeString(sub.resolve("naval rotors.conf"), CONFIG);
+            Files.writeString(sub.resolve("a b.in"), input("HELLO WORLD"));
+            Path manifest = dir.resolve("manifest");
+            Files.writeString(manifest, String.join("\n",
+                "# config input output",
+                "\"my files/naval rotors.conf\"  \"my files/a b.in\" "
+                + "plain.out", ""));
+            List<Batch.Job> jobs = Batch.jobs(manifest.toFile());
+            assertEquals(1, jobs.size());
+            Batch batch = new Batch(jobs, 1);
+            batch.execute();
+            ByteArrayOutputStream log = new ByteArrayOutputStream();
+            assertTrue(batch.report(new PrintStream(log, true),
+                                    new PrintStream(log, true)));
+            File conf = sub.resolve("naval rotors.conf").toFile();
+            assertEquals(mainOutput(conf, input("HELLO WORLD")),
+                         Files.readString(dir.resolve("plain.out")));
+
+            Files.writeString(manifest, "\"unclosed a b c\n");
+            try {
+                Batch.jobs(manifest.toFile());
+                fail("bad manifest line accepted");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().startsWith("bad manifest"));
+            }
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    @Test
+    public void testOptionsApplyToJobs() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        try {
+            File config = dir.resolve("default.conf").toFile();
+            Files.writeString(config.toPath(), CONFIG);
+            Files.writeString(dir.resolve("a.in"),
+                              input("from his shoulder"));
+            Batch batch = new Batch(Batch.jobs(dir.toFile()), 1);
+            batch.options("fold", Engines.CORE);
+            batch.execute();
+            ByteArrayOutputStream log = new ByteArrayOutputStream();
+            assertTrue(batch.report(new PrintStream(log, true),
+                                    new PrintStream(log, true)));
+            assertEquals(mainOutput(config, input("FROM HIS SHOULDER")),
+                         Files.readString(dir.resolve("a.out")));
+        } finally {
+            deleteTree(dir);
+        }
+    }
+}
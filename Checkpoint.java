@@ -0,0 +1,323 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import static enigma.EnigmaException.*;
+
+/** Checkpointed mode for Main, for inputs too large to start over.
+ *  The arguments are --checkpoint CKPT CONFIG INPUT OUTPUT [INTERVAL].
+ *  About every INTERVAL bytes of input (default 1 MiB), the output is
+ *  synced to disk and a checkpoint recording the input and output
+ *  offsets, the current settings line, the rotor positions and a CRC of
+ *  the output so far is written atomically to CKPT.  If CKPT exists at
+ *  startup, the run resumes from it: the output is checked against the
+ *  CRC, cut back to the recorded offset, and processing continues from
+ *  the recorded input offset, so that the final output is identical to
+ *  that of an uninterrupted run.  CKPT is removed when the run finishes.
+ *  @author Ryan Chen
+ */
+final class Checkpoint {
+
+    /** Run the checkpointed job described by ARGS (see class comment),
+     *  cleaning up messages as described by NORMALIZE (see Normalizer),
+     *  or not at all if it is null, and converting them with ENGINE (see
+     *  Engines). */
+    static void run(String[] args, String normalize, int engine) {
+        if (args.length < 5 || args.length > 6) {
+            throw error("Usage: --checkpoint CKPT CONFIG INPUT OUTPUT "
+                        + "[INTERVAL]");
+        }
+        long interval = DEFAULT_INTERVAL;
+        if (args.length == 6) {
+            try {
+                interval = Long.parseLong(args[5]);
+            } catch (NumberFormatException excp) {
+                interval = 0;
+            }
+            if (interval < 1) {
+                throw error("bad checkpoint interval: %s", args[5]);
+            }
+        }
+        MachineConfig definition = Main.readConfig(new File(args[2]));
+        process(definition, new File(args[1]), new File(args[3]),
+                new File(args[4]), interval, normalize, engine);
+    }
+
+    /** Apply DEFINITION to INPUT, writing OUTPUT and checkpointing to
+     *  CKPT about every INTERVAL bytes of input, resuming from CKPT if
+     *  it exists, with the options NORMALIZE and ENGINE as for run. */
+    static void process(MachineConfig definition, File ckpt, File input,
+                        File output, long interval, String normalize,
+                        int engine) {
+        Checkpoint start = ckpt.exists() ? read(ckpt) : new Checkpoint();
+        CRC32 crc = new CRC32();
+        try (FileInputStream in = new FileInputStream(input);
+             FileOutputStream out = new FileOutputStream(output, true)) {
+            FileChannel outChannel = out.getChannel();
+            start.restoreOutput(outChannel, output, crc);
+            in.getChannel().position(start._inputOffset);
+            LineInput lines = new LineInput(in, start._inputOffset);
+            PrintStream printer = new PrintStream(new CheckedOutputStream(
+                    new BufferedOutputStream(out), crc));
+            Main main = new Main(definition, null, printer);
+            main.normalize(normalize);
+            main.useEngine(engine);
+            main.start();
+            if (start._settings != null) {
+                main.resume(start._settings, start._positions);
+            }
+            long next = start._inputOffset + interval;
+            String line;
+            try {
+                while ((line = lines.readLine()) != null) {
+                    main.processLine(line);
+                    if (lines.offset() >= next) {
+                        save(ckpt, main, lines.offset(), printer,
+                             outChannel, crc);
+                        next = lines.offset() + interval;
+                    }
+                }
+            } finally {
+                printer.flush();
+            }
+            if (printer.checkError()) {
+                throw error("could not write %s", output);
+            }
+        } catch (IOException excp) {
+            throw error("I/O error on %s or %s: %s", input, output,
+                        excp.getMessage());
+        }
+        if (ckpt.exists() && !ckpt.delete()) {
+            throw error("could not remove %s", ckpt);
+        }
+    }
+
+    /** Flush PRINTER, sync the output file behind it to disk through
+     *  CHANNEL, and then atomically replace CKPT with a checkpoint
+     *  describing MAIN after reading INPUTOFFSET bytes of input, given
+     *  that CRC is the CRC of the output so far. */
+    private static void save(File ckpt, Main main, long inputOffset,
+                             PrintStream printer, FileChannel channel,
+                             CRC32 crc) throws IOException {
+        printer.flush();
+        channel.force(false);
+        Checkpoint point = new Checkpoint();
+        point._inputOffset = inputOffset;
+        point._outputOffset = channel.size();
+        point._outputCrc = crc.getValue();
+        point._settings = main.settings();
+        if (point._settings != null) {
+            ArrayList<Rotor> slots = main.machine().getRotorSlots();
+            point._positions = new int[slots.size()];
+            for (int k = 0; k < slots.size(); k++) {
+                point._positions[k] = slots.get(k).setting();
+            }
+        }
+        point.write(ckpt);
+    }
+
+    /** Write me to CKPT atomically, through a temporary file. */
+    private void write(File ckpt) throws IOException {
+        Properties props = new Properties();
+        props.setProperty(VERSION, FORMAT_VERSION);
+        props.setProperty(INPUT_OFFSET, Long.toString(_inputOffset));
+        props.setProperty(OUTPUT_OFFSET, Long.toString(_outputOffset));
+        props.setProperty(OUTPUT_CRC, Long.toString(_outputCrc));
+        if (_settings != null) {
+            props.setProperty(SETTINGS, _settings);
+            StringBuilder positions = new StringBuilder();
+            for (int k = 0; k < _positions.length; k++) {
+                positions.append(k == 0 ? "" : ",").append(_positions[k]);
+            }
+            props.setProperty(POSITIONS, positions.toString());
+        }
+        File temp = new File(ckpt.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            Writer writer = new OutputStreamWriter(out, UTF8);
+            props.store(writer, "enigma checkpoint");
+            writer.flush();
+            out.getChannel().force(true);
+        }
+        Files.move(temp.toPath(), ckpt.toPath(),
+                   StandardCopyOption.ATOMIC_MOVE,
+                   StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Return the checkpoint stored in CKPT. */
+    static Checkpoint read(File ckpt) {
+        Properties props = new Properties();
+        try (Reader reader = new InputStreamReader(
+                 new FileInputStream(ckpt), UTF8)) {
+            props.load(reader);
+        } catch (IOException excp) {
+            throw error("could not read checkpoint %s", ckpt);
+        }
+        if (!FORMAT_VERSION.equals(props.getProperty(VERSION))) {
+            throw error("unknown checkpoint format in %s", ckpt);
+        }
+        Checkpoint point = new Checkpoint();
+        try {
+            point._inputOffset =
+                Long.parseLong(props.getProperty(INPUT_OFFSET));
+            point._outputOffset =
+                Long.parseLong(props.getProperty(OUTPUT_OFFSET));
+            point._outputCrc = Long.parseLong(props.getProperty(OUTPUT_CRC));
+            point._settings = props.getProperty(SETTINGS);
+            if (point._settings != null) {
+                String[] positions = props.getProperty(POSITIONS).split(",");
+                point._positions = new int[positions.length];
+                for (int k = 0; k < positions.length; k++) {
+                    point._positions[k] = Integer.parseInt(positions[k]);
+                }
+            }
+        } catch (NumberFormatException | NullPointerException excp) {
+            throw error("corrupt checkpoint %s", ckpt);
+        }
+        return point;
+    }
+
+    /** Check that the first _outputOffset bytes of OUTPUT, whose channel
+     *  is CHANNEL, have the CRC I recorded, accumulating them into CRC, and
+     *  discard anything after them. */
+    private void restoreOutput(FileChannel channel, File output, CRC32 crc)
+        throws IOException {
+        if (channel.size() < _outputOffset) {
+            throw error("%s is shorter than its checkpoint", output);
+        }
+        try (InputStream prefix = new BufferedInputStream(
+                 new FileInputStream(output))) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long left = _outputOffset;
+            while (left > 0) {
+                int n = prefix.read(buffer, 0,
+                                    (int) Math.min(left, buffer.length));
+                if (n < 0) {
+                    break;
+                }
+                crc.update(buffer, 0, n);
+                left -= n;
+            }
+        }
+        if (crc.getValue() != _outputCrc) {
+            throw error("%s does not match its checkpoint", output);
+        }
+        channel.truncate(_outputOffset);
+    }
+
+    /** A source of lines from a byte stream that keeps track of its
+     *  byte offset, splitting lines the way Scanner.nextLine does for
+     *  line feeds, carriage returns and their pairs.  The stream is read
+     *  a buffer at a time, and each line is copied out of the buffer in
+     *  bulk. */
+    static class LineInput {
+
+        /** Lines from IN, which starts at byte OFFSET of its file. */
+        LineInput(InputStream in, long offset) {
+            _in = in;
+            _offset = offset;
+        }
+
+        /** Return the next line, without its terminator, or null at the
+         *  end of the input. */
+        String readLine() throws IOException {
+            _line.reset();
+            if (_pos == _end && !fill()) {
+                return null;
+            }
+            while (true) {
+                int start = _pos;
+                while (_pos < _end && _buf[_pos] != '\n'
+                       && _buf[_pos] != '\r') {
+                    _pos += 1;
+                }
+                _line.write(_buf, start, _pos - start);
+                _offset += _pos - start;
+                if (_pos < _end) {
+                    break;
+                } else if (!fill()) {
+                    return _line.toString(Charset.defaultCharset());
+                }
+            }
+            byte c = _buf[_pos];
+            _pos += 1;
+            _offset += 1;
+            if (c == '\r' && (_pos < _end || fill())
+                && _buf[_pos] == '\n') {
+                _pos += 1;
+                _offset += 1;
+            }
+            return _line.toString(Charset.defaultCharset());
+        }
+
+        /** Return the offset of the first byte not yet read. */
+        long offset() {
+            return _offset;
+        }
+
+        /** Refill my buffer from the stream, returning false at the end
+         *  of the stream. */
+        private boolean fill() throws IOException {
+            int n = _in.read(_buf, 0, _buf.length);
+            _pos = 0;
+            _end = Math.max(n, 0);
+            return n > 0;
+        }
+
+        /** The underlying stream. */
+        private final InputStream _in;
+        /** Bytes read from _in; those at _pos .. _end-1 are unused. */
+        private final byte[] _buf = new byte[BUFFER_SIZE];
+        /** The bounds of the unused bytes in _buf. */
+        private int _pos, _end;
+        /** The current line. */
+        private final ByteArrayOutputStream _line =
+            new ByteArrayOutputStream();
+        /** The current byte offset. */
+        private long _offset;
+    }
+
+    /** Byte offset of the next unread input. */
+    private long _inputOffset;
+    /** Length of the checkpointed output. */
+    private long _outputOffset;
+    /** CRC of the checkpointed output. */
+    private long _outputCrc;
+    /** The most recent settings line, or null. */
+    private String _settings;
+    /** The rotor setting in each slot. */
+    private int[] _positions;
+
+    /** Default number of input bytes between checkpoints. */
+    static final long DEFAULT_INTERVAL = 1 << 20;
+    /** Size of the buffer used to check output. */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** Charset of checkpoint files. */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /** Checkpoint format version. */
+    private static final String FORMAT_VERSION = "1";
+    /** Checkpoint property names. */
+    private static final String VERSION = "version",
+        INPUT_OFFSET = "input.offset", OUTPUT_OFFSET = "output.offset",
+        OUTPUT_CRC = "output.crc", SETTINGS = "settings",
+        POSITIONS = "positions";
+}
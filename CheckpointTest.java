@@ -0,0 +1,130 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Scanner;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Checkpoint class.
+ *  @author Ryan Chen
+ */
+public class CheckpointTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A settings line, and one of the same length that names no rotor
+     *  in the configuration. */
+    private static final String GOOD = "* B Beta III IV I AXLE (YF) (ZH)",
+        BAD = "* B Beta III IV X AXLE (YF) (ZH)";
+
+    /** Return an input of SECTIONS sections, the one numbered BROKEN
+     *  starting with BAD rather than GOOD. */
+    private static String input(int sections, int broken) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < sections; i++) {
+            result.append(i == broken ? BAD : GOOD).append("\n");
+            for (int j = 0; j < 20; j++) {
+                result.append("FROM HIS SHOULDER HIAWATHA ".repeat(j % 5))
+                    .append(i % 3 == 0 ? "\r\n" : "\n");
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return a temporary file containing TEXT. */
+    private static File file(String text) throws IOException {
+        File result = File.createTempFile("enigma", ".txt");
+        result.deleteOnExit();
+        Files.writeString(result.toPath(), text);
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testResumeMatchesStraightRun() throws IOException {
+        MachineConfig config = navalConfig(5, 3);
+        File input = file(input(40, 30));
+        File output = file(""), ckpt = file("");
+        ckpt.delete();
+        try {
+            Checkpoint.process(config, ckpt, input, output, 500, null,
+                           Engines.ADAPTIVE);
+            fail("bad settings line accepted");
+        } catch (EnigmaException excp) {
+            assertTrue(ckpt.exists());
+        }
+        Files.write(output.toPath(), "torn write".getBytes(),
+                    StandardOpenOption.APPEND);
+        Files.writeString(input.toPath(), input(40, -1));
+        Checkpoint.process(config, ckpt, input, output, 500, null,
+                           Engines.ADAPTIVE);
+        assertFalse(ckpt.exists());
+
+        File straight = file(""), none = file("");
+        none.delete();
+        Checkpoint.process(config, none, input, straight, 1 << 20, null,
+                           Engines.ADAPTIVE);
+        assertArrayEquals(Files.readAllBytes(straight.toPath()),
+                          Files.readAllBytes(output.toPath()));
+    }
+
+    @Test
+    public void testResumeRejectsChangedOutput() throws IOException {
+        MachineConfig config = navalConfig(5, 3);
+        File input = file(input(40, 30));
+        File output = file(""), ckpt = file("");
+        ckpt.delete();
+        try {
+            Checkpoint.process(config, ckpt, input, output, 500, null,
+                           Engines.ADAPTIVE);
+            fail("bad settings line accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        byte[] bytes = Files.readAllBytes(output.toPath());
+        bytes[0] ^= 1;
+        Files.write(output.toPath(), bytes);
+        try {
+            Checkpoint.process(config, ckpt, input, output, 500, null,
+                           Engines.ADAPTIVE);
+            fail("changed output accepted");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("does not match"));
+        }
+    }
+
+    @Test
+    public void testLinesMatchScanner() throws IOException {
+        StringBuilder text = new StringBuilder();
+        String[] ends = {"\n", "\r", "\r\n", "\n\n", "\r\r\n"};
+        for (int i = 0; i < 3000; i++) {
+            text.append("LINE ").append(i).append(" ".repeat(i % 97))
+                .append(ends[i % ends.length]);
+        }
+        text.append("LAST");
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        Checkpoint.LineInput lines =
+            new Checkpoint.LineInput(new ByteArrayInputStream(bytes), 0);
+        Scanner scanner = new Scanner(text.toString());
+        while (scanner.hasNextLine()) {
+            assertEquals(scanner.nextLine(), lines.readLine());
+        }
+        assertNull(lines.readLine());
+        assertEquals(bytes.length, lines.offset());
+    }
+}
@@ -0,0 +1,191 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+import static enigma.EnigmaException.*;
+
+/** Reads configuration files without building any permutations.  The
+ *  reader makes one pass over the file, recording for each rotor its
+ *  name, kind and notches, and the text of its cycles, which it checks
+ *  as it goes: every character must be in the alphabet, and none may
+ *  appear twice in one rotor.  The cycles of a rotor are compiled only
+ *  when a machine first asks for that rotor (see RotorSpec), so that the
+ *  cost of a configuration depends on the rotors actually used rather
+ *  than on the size of the library, while a bad description is still
+ *  reported before any message is converted, and the file is not needed
+ *  again once it has been read.  The file is read as Main always has:
+ *  the first line is the alphabet, then come the numbers of slots and
+ *  pawls, and then the rotor descriptions, up to the first token that
+ *  cannot start one.
+ *  @author Ryan Chen
+ */
+final class ConfigReader {
+
+    /** Return the configuration indexed from FILE. */
+    static MachineConfig read(File file) {
+        try (InputStream in = new BufferedInputStream(
+                 new FileInputStream(file))) {
+            return new ConfigReader(in).readConfig();
+        } catch (IOException excp) {
+            throw error("could not open %s", file);
+        }
+    }
+
+    /** A reader for the contents IN of a configuration file. */
+    private ConfigReader(InputStream in) {
+        _in = in;
+    }
+
+    /** Return the configuration in my file. */
+    private MachineConfig readConfig() throws IOException {
+        Alphabet alphabet = new Alphabet(readLine());
+        int numRotors = readInt(), numPawls = readInt();
+        ArrayList<RotorSpec> specs = new ArrayList<>();
+        int[] seen = new int[alphabet.size()];
+        StringBuilder cycles = new StringBuilder();
+        String token = nextToken();
+        while (token != null && isName(token)) {
+            String name = token;
+            String info = nextToken();
+            if (info == null || !isName(info)) {
+                throw error("bad rotor description");
+            }
+            cycles.setLength(0);
+            token = nextToken();
+            while (token != null && isCycles(token)) {
+                check(token, alphabet, seen, specs.size() + 1);
+                cycles.append(token);
+                token = nextToken();
+            }
+            specs.add(new RotorSpec(name, info.charAt(0), info.substring(1),
+                                    cycles.toString(), alphabet));
+        }
+        return new MachineConfig(alphabet, numRotors, numPawls, specs);
+    }
+
+    /** Check that the characters of the cycles TOKEN are all in
+     *  ALPHABET and are not already marked with ROTOR in SEEN, which
+     *  holds a mark for each index of ALPHABET, and mark them. */
+    private static void check(String token, Alphabet alphabet, int[] seen,
+                              int rotor) {
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c == '(' || c == ')') {
+                continue;
+            }
+            int k = alphabet.toInt(c);
+            if (k < 0) {
+                throw error("bad rotor description: %c is not in the "
+                            + "alphabet", c);
+            } else if (seen[k] == rotor) {
+                throw error("bad rotor description: %c appears twice", c);
+            }
+            seen[k] = rotor;
+        }
+    }
+
+    /** Return the first line of the file, as Scanner.nextLine would. */
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c = readByte();
+        if (c < 0) {
+            throw error("configuration file truncated");
+        }
+        while (c >= 0 && c != '\n' && c != '\r') {
+            line.write(c);
+            c = readByte();
+        }
+        if (c == '\r') {
+            _in.mark(1);
+            if (_in.read() != '\n') {
+                _in.reset();
+            }
+        }
+        return line.toString(Charset.defaultCharset());
+    }
+
+    /** Return the next token as an integer. */
+    private int readInt() throws IOException {
+        String token = nextToken();
+        if (token == null) {
+            throw error("configuration file truncated");
+        }
+        try {
+            return Integer.parseInt(token);
+        } catch (NumberFormatException excp) {
+            throw error("configuration file truncated");
+        }
+    }
+
+    /** Return the next whitespace-delimited token, or return null at end
+     *  of file. */
+    private String nextToken() throws IOException {
+        int c = readByte();
+        while (c >= 0 && isWhitespace(c)) {
+            c = readByte();
+        }
+        if (c < 0) {
+            return null;
+        }
+        _token.reset();
+        while (c >= 0 && !isWhitespace(c)) {
+            _token.write(c);
+            c = readByte();
+        }
+        return _token.toString(Charset.defaultCharset());
+    }
+
+    /** Return the next byte of the file, or -1 at its end. */
+    private int readByte() throws IOException {
+        return _in.read();
+    }
+
+    /** Return true iff byte C is whitespace. */
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r'
+            || c == '\f' || c == VERTICAL_TAB;
+    }
+
+    /** Return true iff TOKEN may be a rotor name or kind. */
+    private static boolean isName(String token) {
+        return token.indexOf('(') < 0 && token.indexOf(')') < 0
+            && token.indexOf('*') < 0;
+    }
+
+    /** Return true iff TOKEN is a sequence of parenthesized cycles. */
+    private static boolean isCycles(String token) {
+        boolean open = false;
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c == '(') {
+                if (open) {
+                    return false;
+                }
+                open = true;
+            } else if (c == ')') {
+                if (!open) {
+                    return false;
+                }
+                open = false;
+            } else if (c == '*' || !open) {
+                return false;
+            }
+        }
+        return !open;
+    }
+
+    /** The contents of the file. */
+    private final InputStream _in;
+    /** Bytes of the current token. */
+    private final ByteArrayOutputStream _token = new ByteArrayOutputStream();
+
+    /** The vertical tab character. */
+    private static final int VERTICAL_TAB = 0x0b;
+}
@@ -0,0 +1,106 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ConfigReader class.
+ *  @author Ryan Chen
+ */
+public class ConfigReaderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a temporary configuration file containing the naval
+     *  rotors I, II, III, Beta and B. */
+    private File navalConfig() throws IOException {
+        File file = File.createTempFile("enigma", ".conf");
+        file.deleteOnExit();
+        try (FileWriter out = new FileWriter(file)) {
+            out.write(UPPER_STRING + "\n 4 2\n");
+            out.write(" I MQ " + NAVALA.get("I") + "\n");
+            out.write(" II ME " + NAVALA.get("II") + "\n");
+            out.write(" III MV " + NAVALA.get("III") + "\n");
+            out.write(" Beta N " + NAVALA.get("Beta") + "\n");
+            out.write(" B R " + NAVALA.get("B") + "\n");
+        }
+        return file;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void readsHeaderAndNames() throws IOException {
+        MachineConfig config = ConfigReader.read(navalConfig());
+        assertEquals(UPPER_STRING, config.alphabet().getChars());
+        assertEquals(4, config.numRotors());
+        assertEquals(2, config.numPawls());
+        assertEquals(5, config.specs().size());
+        assertEquals('M', config.spec("II").type());
+        assertEquals("E", config.spec("II").notches());
+        assertEquals('R', config.spec("B").type());
+        assertNull(config.spec("IV"));
+    }
+
+    @Test
+    public void loadsOnlyRotorsUsed() throws IOException {
+        MachineConfig config = ConfigReader.read(navalConfig());
+        for (RotorSpec spec : config.specs()) {
+            assertFalse(spec.loaded());
+        }
+        Machine machine = config.newMachine();
+        machine.insertRotors(new String[] {"B", "Beta", "III", "I"});
+        assertTrue(config.spec("I").loaded());
+        assertTrue(config.spec("B").loaded());
+        assertFalse(config.spec("II").loaded());
+        Permutation perm = config.spec("I").permutation();
+        String map = NAVALA_MAP.get("I");
+        for (int i = 0; i < UPPER_STRING.length(); i += 1) {
+            assertEquals(map.charAt(i), perm.permute(UPPER_STRING.charAt(i)));
+        }
+    }
+
+    @Test
+    public void keepsRotorsAfterFileChanges() throws IOException {
+        File file = navalConfig();
+        MachineConfig config = ConfigReader.read(file);
+        try (FileWriter out = new FileWriter(file)) {
+            out.write("changed\n");
+        }
+        Permutation perm = config.spec("II").permutation();
+        String map = NAVALA_MAP.get("II");
+        for (int i = 0; i < UPPER_STRING.length(); i += 1) {
+            assertEquals(map.charAt(i), perm.permute(UPPER_STRING.charAt(i)));
+        }
+    }
+
+    @Test
+    public void rejectsBadCyclesWhenRead() throws IOException {
+        File file = File.createTempFile("enigma", ".conf");
+        file.deleteOnExit();
+        String[] bad = {"(AB) (CA)", "(AB) (C1)"};
+        for (String cycles : bad) {
+            try (FileWriter out = new FileWriter(file)) {
+                out.write(UPPER_STRING + "\n 2 1\n I MQ (DE)\n");
+                out.write(" B R " + cycles + "\n");
+            }
+            try {
+                ConfigReader.read(file);
+                fail("accepted " + cycles);
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().startsWith("bad rotor"));
+            }
+        }
+    }
+}
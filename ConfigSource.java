@@ -0,0 +1,149 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static enigma.EnigmaException.*;
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/** A configuration file whose latest contents are always at hand, so
+ *  that a long-running process can pick up a changed rotor library
+ *  without a restart.  Each reading of the file makes a new
+ *  MachineConfig, which is never changed once published, and the current
+ *  one is swapped for it in one step.  Readers just fetch the current
+ *  one (a single volatile read, with no lock), so a machine made before
+ *  a reload keeps converting on the old configuration, and machines made
+ *  after it use the new one.  If a reading fails, the old configuration
+ *  stays current.
+ *
+ *  The file is re-read by reload(), or, once watch() is called, on a
+ *  background thread whenever the file changes.  Since an editor may
+ *  write the file in several steps, the watcher waits for changes to
+ *  settle before reading; a file read part way through a write fails to
+ *  parse, or is read again after the next change.
+ *
+ *  A rotor arena is mapped rather than read, and so should be replaced
+ *  by renaming a new file over it rather than rewritten in place.
+ *  @author Ryan Chen
+ */
+final class ConfigSource {
+
+    /** A source for the configuration in FILE, which is read now. */
+    ConfigSource(File file) {
+        _file = file;
+        _current.set(Main.readConfig(file));
+    }
+
+    /** Return the current configuration. */
+    MachineConfig current() {
+        return _current.get();
+    }
+
+    /** Return the number of times the configuration has been replaced
+     *  since I was made. */
+    long reloads() {
+        return _reloads;
+    }
+
+    /** Read my file again, and make its contents the current
+     *  configuration.  If that fails, the current configuration is
+     *  unchanged. */
+    void reload() {
+        MachineConfig config = Main.readConfig(_file);
+        synchronized (this) {
+            _current.set(config);
+            _reloads += 1;
+        }
+    }
+
+    /** Start reloading my file on a background thread whenever it
+     *  changes, until close() is called, reporting reloads that fail
+     *  to ERR. */
+    synchronized void watch(PrintStream err) {
+        if (_watcher != null) {
+            return;
+        }
+        Path file = _file.getAbsoluteFile().toPath();
+        try {
+            _watcher = FileSystems.getDefault().newWatchService();
+            file.getParent().register(_watcher, ENTRY_CREATE, ENTRY_MODIFY);
+        } catch (IOException excp) {
+            throw error("could not watch %s", _file);
+        }
+        WatchService watcher = _watcher;
+        Path name = file.getFileName();
+        Thread thread = new Thread(() -> follow(watcher, name, err),
+                                   "enigma-config-watch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Stop watching my file. */
+    synchronized void close() {
+        if (_watcher != null) {
+            try {
+                _watcher.close();
+            } catch (IOException excp) {
+                /* Ignore: we are shutting down. */
+            }
+        }
+    }
+
+    /** Reload my file, whose name in its directory is NAME, each time
+     *  WATCHER reports a change to it, reporting failures to ERR. */
+    private void follow(WatchService watcher, Path name, PrintStream err) {
+        try {
+            while (true) {
+                if (!changed(watcher.take(), name)) {
+                    continue;
+                }
+                Thread.sleep(SETTLE_MILLIS);
+                for (WatchKey key = watcher.poll(); key != null;
+                     key = watcher.poll()) {
+                    changed(key, name);
+                }
+                try {
+                    reload();
+                } catch (EnigmaException excp) {
+                    err.printf("Error: could not reload %s: %s%n", _file,
+                               excp.getMessage());
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException excp) {
+            return;
+        }
+    }
+
+    /** Take the events of KEY, and return true iff any of them may be a
+     *  change to the file NAME. */
+    private static boolean changed(WatchKey key, Path name) {
+        boolean result = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            result |= event.kind() == OVERFLOW || name.equals(event.context());
+        }
+        key.reset();
+        return result;
+    }
+
+    /** The configuration file. */
+    private final File _file;
+    /** The current configuration. */
+    private final AtomicReference<MachineConfig> _current =
+        new AtomicReference<>();
+    /** The number of reloads. */
+    private volatile long _reloads;
+    /** Watches my file's directory, or null if not watching. */
+    private WatchService _watcher;
+
+    /** The time to wait after a change for further changes, before
+     *  reading the file. */
+    private static final long SETTLE_MILLIS = 50;
+}
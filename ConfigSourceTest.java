@@ -0,0 +1,184 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Scanner;
+
+/** The suite of all JUnit tests for the ConfigSource class.
+ *  @author Ryan Chen
+ */
+public class ConfigSourceTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A configuration file. */
+    private static final String CONFIG = String.join("\n",
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ",
+        "5 3",
+        " I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)",
+        " III MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)",
+        " IV MJ     (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)",
+        " Beta N    (ALBEVFCYODJWUGNMQTZSKPR) (HIX)",
+        " B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)",
+        "           (RX) (SZ) (TV)", "");
+
+    /** CONFIG with rotor I rewired. */
+    private static final String REWIRED =
+        CONFIG.replace("(IV) (JZ) (S)", "(IVS) (JZ)");
+
+    /** A settings line for CONFIG. */
+    private static final String SETTINGS = "* B Beta III IV I AXLE (YF) (ZH)";
+
+    /** Messages to convert. */
+    private static final String FIRST = "FROM HIS SHOULDER HIAWATHA",
+        SECOND = "TOOK THE CAMERA OF ROSEWOOD";
+
+    /** Return a temporary file containing TEXT. */
+    private static Path file(String text) throws IOException {
+        Path file = Files.createTempFile("enigma", ".conf");
+        file.toFile().deleteOnExit();
+        Files.writeString(file, text);
+        return file;
+    }
+
+    /** Return what Main prints for the lines of INPUT on CONFIG. */
+    private static String run(MachineConfig config, String... input) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true);
+        new Main(config, new Scanner(String.join("\n", input)), out)
+            .process();
+        return bytes.toString();
+    }
+
+    /** Return what Main prints for the lines of INPUT on the configuration
+     *  in TEXT. */
+    private static String run(String text, String... input)
+        throws IOException {
+        return run(Main.readConfig(file(text).toFile()), input);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testReloadSwaps() throws IOException {
+        Path path = file(CONFIG);
+        ConfigSource source = new ConfigSource(path.toFile());
+        MachineConfig old = source.current();
+        Files.writeString(path, REWIRED);
+        source.reload();
+        assertEquals(1, source.reloads());
+        assertNotSame(old, source.current());
+        String want = run(CONFIG, SETTINGS, FIRST);
+        assertEquals(want, run(old, SETTINGS, FIRST));
+        assertEquals(run(REWIRED, SETTINGS, FIRST),
+                     run(source.current(), SETTINGS, FIRST));
+        assertNotEquals(want, run(source.current(), SETTINGS, FIRST));
+    }
+
+    @Test
+    public void testFailedReloadKeepsOld() throws IOException {
+        Path path = file(CONFIG);
+        ConfigSource source = new ConfigSource(path.toFile());
+        MachineConfig old = source.current();
+        Files.writeString(path, "ABC\nnot a configuration\n");
+        try {
+            source.reload();
+            fail("bad configuration accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        assertSame(old, source.current());
+        assertEquals(0, source.reloads());
+    }
+
+    @Test
+    public void testWatch() throws Exception {
+        Path path = file(CONFIG);
+        ConfigSource source = new ConfigSource(path.toFile());
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        source.watch(new PrintStream(log, true));
+        try {
+            Files.writeString(path, REWIRED);
+            for (int i = 0; source.reloads() == 0; i++) {
+                assertTrue("timed out waiting for reload", i < 500);
+                Thread.sleep(10);
+            }
+            assertEquals(run(REWIRED, SETTINGS, FIRST),
+                         run(source.current(), SETTINGS, FIRST));
+            assertEquals("", log.toString());
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void testMainPicksUpAtSettings() throws IOException {
+        Path path = file(CONFIG);
+        ConfigSource source = new ConfigSource(path.toFile());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true);
+        Main main = new Main(source.current(), new Scanner(""), out);
+        main.reload(source);
+        main.start();
+        main.processLine(SETTINGS);
+        main.processLine(FIRST);
+        Files.writeString(path, REWIRED);
+        source.reload();
+        main.processLine(SECOND);
+        main.processLine(SETTINGS);
+        main.processLine(FIRST);
+        assertEquals(run(CONFIG, SETTINGS, FIRST, SECOND)
+                     + run(REWIRED, SETTINGS, FIRST), bytes.toString());
+    }
+
+    @Test
+    public void testParallelKeepsInputOrder() throws IOException {
+        Path path = file(CONFIG);
+        ConfigSource source = new ConfigSource(path.toFile());
+        String section = SETTINGS + "\n" + FIRST + "\n";
+        String input = section.repeat(3000);
+        Reader reader = new StringReader(input) {
+            @Override
+            public int read(char[] buf, int off, int len)
+                throws IOException {
+                _read += len;
+                if (_read > input.length() / 2 && source.reloads() == 0) {
+                    Files.writeString(path, REWIRED);
+                    source.reload();
+                }
+                return super.read(buf, off, len);
+            }
+
+            private long _read;
+        };
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true);
+        Main main = new Main(source.current(), null, out);
+        main.reload(source);
+        new Sections(main, 4).run(new Scanner(reader), out);
+        String old = run(CONFIG, SETTINGS, FIRST),
+            rewired = run(REWIRED, SETTINGS, FIRST);
+        String output = bytes.toString();
+        int olds = 0;
+        while (output.startsWith(old, olds * old.length())) {
+            olds += 1;
+        }
+        assertTrue(olds > 0 && olds < 3000);
+        assertEquals(rewired.repeat(3000 - olds),
+                     output.substring(olds * old.length()));
+    }
+}
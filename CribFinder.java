@@ -0,0 +1,307 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.*;
+
+/** Finds where cribs (guessed plaintexts) may lie in ciphertexts.  A
+ *  machine never enciphers a letter to itself, so a crib cannot lie at
+ *  an offset where any of its letters equals the ciphertext letter under
+ *  it; the offsets that remain are the only ones worth trying in a crib
+ *  attack (see KeySearch's --crib-offset).
+ *
+ *  The messages are laid end to end, and for each letter a bitmask marks
+ *  the positions where that letter occurs.  The offsets at which a crib
+ *  clashes are then the OR, over the crib's letters, of the mask of that
+ *  letter shifted down by the letter's place in the crib, so each crib
+ *  letter costs one shift and OR per 64 offsets.  The work is done in
+ *  blocks small enough to stay in cache, and cribs are spread over all
+ *  cores; results are still written in crib order.
+ *
+ *  Usage: java enigma.CribFinder CONFIG CORPUS CRIBS [--window W]
+ *  [--threads T] [--count].  The alphabet comes from the configuration
+ *  file CONFIG.  Each line of CORPUS is a message and each line of CRIBS
+ *  a crib; characters not in the alphabet are ignored.  For each place a
+ *  crib may lie, a line giving the crib's line number, the message's
+ *  line number and the offset in the message (from 0) is printed.  With
+ *  --window W only offsets less than W are considered; with --count only
+ *  the number of places for each crib is printed.
+ *  @author Ryan Chen
+ */
+final class CribFinder {
+
+    /** Run the finder on ARGS (see the class comment), printing the
+     *  results on the standard output. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 3) {
+                throw error("Usage: java enigma.CribFinder CONFIG CORPUS "
+                            + "CRIBS [--window W] [--threads T] [--count]");
+            }
+            Alphabet alphabet = Main.readConfig(new File(args[0])).alphabet();
+            int window = 0;
+            int threads = Runtime.getRuntime().availableProcessors();
+            boolean count = false;
+            for (int i = 3; i < args.length; i++) {
+                switch (args[i]) {
+                case "--window":
+                    window = number(args, ++i);
+                    break;
+                case "--threads":
+                    threads = Math.max(1, number(args, ++i));
+                    break;
+                case "--count":
+                    count = true;
+                    break;
+                default:
+                    throw error("unknown option %s", args[i]);
+                }
+            }
+            CribFinder finder = new CribFinder(alphabet, lines(args[1]),
+                                               window);
+            List<String> cribs = lines(args[2]);
+            Writer out = new BufferedWriter(
+                new OutputStreamWriter(System.out), BUFFER_SIZE);
+            finder.report(cribs, threads, count, out);
+            out.flush();
+            return;
+        } catch (IOException excp) {
+            System.err.printf("Error: could not write results%n");
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the non-negative number ARGS[I]. */
+    private static int number(String[] args, int i) {
+        if (i < args.length) {
+            try {
+                int result = Integer.parseInt(args[i]);
+                if (result >= 0) {
+                    return result;
+                }
+            } catch (NumberFormatException excp) {
+                /* Fall through. */
+            }
+        }
+        throw error("bad number after %s", args[i - 1]);
+    }
+
+    /** Return the lines of the file NAME. */
+    private static List<String> lines(String name) {
+        ArrayList<String> result = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                 new FileInputStream(name), Charset.defaultCharset()))) {
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                result.add(line);
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", name);
+        }
+        return result;
+    }
+
+    /** A finder for cribs in MESSAGES, over ALPHABET, considering only
+     *  offsets less than WINDOW in each message (or all, if WINDOW is
+     *  0). */
+    CribFinder(Alphabet alphabet, List<String> messages, int window) {
+        _alphabet = alphabet;
+        _starts = new int[messages.size() + 1];
+        int total = 0;
+        for (int m = 0; m < messages.size(); m++) {
+            _starts[m] = total;
+            total += indices(messages.get(m)).length;
+        }
+        _starts[messages.size()] = total;
+        _words = (total + 63) >>> 6;
+        _masks = new long[alphabet.size()][_words + 1];
+        _ends = new long[_words + 1];
+        _window = new long[_words];
+        for (int m = 0; m < messages.size(); m++) {
+            int pos = _starts[m];
+            for (int c : indices(messages.get(m))) {
+                _masks[c][pos >>> 6] |= 1L << pos;
+                pos += 1;
+            }
+            if (pos > _starts[m]) {
+                _ends[(pos - 1) >>> 6] |= 1L << (pos - 1);
+            }
+            int limit = window == 0 ? pos
+                : Math.min(pos, _starts[m] + window);
+            for (int p = _starts[m]; p < limit; p++) {
+                _window[p >>> 6] |= 1L << p;
+            }
+        }
+    }
+
+    /** Return the alphabet indices of the characters of TEXT that are in
+     *  my alphabet. */
+    int[] indices(String text) {
+        int[] result = new int[text.length()];
+        int n = 0;
+        for (int i = 0; i < text.length(); i++) {
+            int c = _alphabet.toInt(text.charAt(i));
+            if (c >= 0) {
+                result[n++] = c;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Return the number of messages. */
+    int messages() {
+        return _starts.length - 1;
+    }
+
+    /** Return the bitmask of positions, counting through the messages laid
+     *  end to end, at which CRIB (alphabet indices) may start: within my
+     *  window, not running past the end of its message, and not putting
+     *  any crib letter over the same ciphertext letter. */
+    long[] admissible(int[] crib) {
+        long[] result = new long[_words];
+        int m = crib.length;
+        if (m == 0) {
+            return result;
+        }
+        for (int block = 0; block < _words; block += BLOCK) {
+            int end = Math.min(_words, block + BLOCK);
+            for (int j = 0; j < m; j++) {
+                orShifted(_masks[crib[j]], j, result, block, end);
+            }
+            for (int j = 0; j < m - 1; j++) {
+                orShifted(_ends, j, result, block, end);
+            }
+            for (int k = block; k < end; k++) {
+                result[k] = ~result[k] & _window[k];
+            }
+        }
+        return result;
+    }
+
+    /** Set OUT[K] |= the word K of MASK shifted down by SHIFT bits, for
+     *  FROM <= K < TO.  MASK has one spare zero word at its end. */
+    private void orShifted(long[] mask, int shift, long[] out,
+                           int from, int to) {
+        int q = shift >>> 6, r = shift & 63;
+        int last = Math.min(to, _words - q);
+        if (r == 0) {
+            for (int k = from; k < last; k++) {
+                out[k] |= mask[k + q];
+            }
+        } else {
+            for (int k = from; k < last; k++) {
+                out[k] |= (mask[k + q] >>> r) | (mask[k + q + 1] << (64 - r));
+            }
+        }
+    }
+
+    /** Call HITS.hit for each place CRIB may lie, in order. */
+    void find(int[] crib, Hits hits) {
+        long[] bits = admissible(crib);
+        int message = 0;
+        for (int k = 0; k < bits.length; k++) {
+            for (long w = bits[k]; w != 0; w &= w - 1) {
+                int pos = (k << 6) + Long.numberOfTrailingZeros(w);
+                while (_starts[message + 1] <= pos) {
+                    message += 1;
+                }
+                hits.hit(message, pos - _starts[message]);
+            }
+        }
+    }
+
+    /** Return the number of places CRIB may lie. */
+    long count(int[] crib) {
+        long result = 0;
+        for (long w : admissible(crib)) {
+            result += Long.bitCount(w);
+        }
+        return result;
+    }
+
+    /** Write to OUT the places each of CRIBS may lie (or, if COUNT, their
+     *  number) as described in the class comment, working on THREADS
+     *  threads. */
+    void report(List<String> cribs, int threads, boolean count, Writer out)
+        throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            int batch = threads * BATCH_PER_THREAD;
+            for (int first = 0; first < cribs.size(); first += batch) {
+                int base = first;
+                int n = Math.min(batch, cribs.size() - first);
+                String[] text = new String[n];
+                pool.submit(() -> IntStream.range(0, n).parallel().forEach(
+                    i -> text[i] = describe(base + i,
+                                            indices(cribs.get(base + i)),
+                                            count))).get();
+                for (String s : text) {
+                    out.write(s);
+                }
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw error("crib search failed: %s", excp.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Return the lines reporting crib number INDEX (from 0), CRIB, as
+     *  described in the class comment. */
+    private String describe(int index, int[] crib, boolean count) {
+        StringBuilder result = new StringBuilder();
+        if (count) {
+            result.append(index + 1).append(' ').append(count(crib))
+                .append('\n');
+        } else {
+            find(crib, (message, offset) ->
+                result.append(index + 1).append(' ').append(message + 1)
+                    .append(' ').append(offset).append('\n'));
+        }
+        return result.toString();
+    }
+
+    /** Receives the places a crib may lie. */
+    interface Hits {
+        /** Note that the crib may lie at OFFSET in message MESSAGE (both
+         *  from 0). */
+        void hit(int message, int offset);
+    }
+
+    /** The alphabet. */
+    private final Alphabet _alphabet;
+    /** The position at which each message starts, and the total
+     *  length. */
+    private final int[] _starts;
+    /** The number of words in a mask. */
+    private final int _words;
+    /** For each letter, the positions at which it occurs. */
+    private final long[][] _masks;
+    /** The last position of each message. */
+    private final long[] _ends;
+    /** The positions within the window of their message. */
+    private final long[] _window;
+
+    /** The number of words handled together, to stay in cache. */
+    private static final int BLOCK = 512;
+    /** The number of cribs per thread searched before writing. */
+    private static final int BATCH_PER_THREAD = 16;
+    /** The size of the output buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+}
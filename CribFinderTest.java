@@ -0,0 +1,105 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/** The suite of all JUnit tests for the CribFinder class.
+ *  @author Ryan Chen
+ */
+public class CribFinderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The alphabet used. */
+    private static final Alphabet ABC = new Alphabet("ABC");
+
+    /** Return LENGTH random letters of ABC from RANDOM. */
+    private static String text(Random random, int length) {
+        char[] result = new char[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = (char) ('A' + random.nextInt(3));
+        }
+        return new String(result);
+    }
+
+    /** Return the places CRIB may lie in MESSAGES within WINDOW, found
+     *  directly, as "MESSAGE OFFSET" strings. */
+    private static List<String> slow(List<String> messages, String crib,
+                                     int window) {
+        ArrayList<String> result = new ArrayList<>();
+        for (int m = 0; m < messages.size(); m++) {
+            String msg = messages.get(m);
+            for (int p = 0; p + crib.length() <= msg.length()
+                     && (window == 0 || p < window); p++) {
+                boolean ok = true;
+                for (int j = 0; j < crib.length() && ok; j++) {
+                    ok = msg.charAt(p + j) != crib.charAt(j);
+                }
+                if (ok) {
+                    result.add(m + " " + p);
+                }
+            }
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesDirectSearch() {
+        Random random = new Random(46);
+        ArrayList<String> messages = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            messages.add(text(random, random.nextInt(i % 7 == 0 ? 300 : 40)));
+        }
+        for (int window : new int[] {0, 5, 70}) {
+            CribFinder finder = new CribFinder(ABC, messages, window);
+            for (int length = 1; length < 80; length += 3) {
+                String crib = text(random, length);
+                ArrayList<String> fast = new ArrayList<>();
+                finder.find(finder.indices(crib),
+                            (m, p) -> fast.add(m + " " + p));
+                assertEquals("crib " + crib + " window " + window,
+                             slow(messages, crib, window), fast);
+                assertEquals(fast.size(),
+                             finder.count(finder.indices(crib)));
+            }
+        }
+    }
+
+    @Test
+    public void testIgnoresOtherCharacters() {
+        CribFinder finder = new CribFinder(ABC,
+            Arrays.asList("AB CA B", "", "CCC"), 0);
+        ArrayList<String> hits = new ArrayList<>();
+        finder.find(finder.indices("C-A"), (m, p) -> hits.add(m + " " + p));
+        assertEquals(Arrays.asList("0 0", "0 1", "0 3"), hits);
+        assertEquals(3, finder.messages());
+    }
+
+    @Test
+    public void testReportInCribOrder() throws Exception {
+        CribFinder finder = new CribFinder(ABC,
+            Arrays.asList("ABCABC", "BBB"), 0);
+        StringWriter out = new StringWriter();
+        finder.report(Arrays.asList("CA", "AAAA", "A"), 3, false, out);
+        assertEquals("1 1 0\n1 1 1\n1 1 3\n1 1 4\n1 2 0\n1 2 1\n"
+                     + "3 1 1\n3 1 2\n3 1 4\n3 1 5\n3 2 0\n3 2 1\n3 2 2\n",
+                     out.toString());
+        out = new StringWriter();
+        finder.report(Arrays.asList("CA", "A"), 2, true, out);
+        assertEquals("1 6\n2 7\n", out.toString());
+    }
+}
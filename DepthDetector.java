@@ -0,0 +1,385 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.*;
+
+/** Finds pairs of ciphertexts that are likely to be "in depth", that is,
+ *  enciphered under overlapping machine states.  Two such texts agree
+ *  letter-for-letter far more often than unrelated ones do (at about the
+ *  rate of plaintext, rather than 1 in the alphabet size), so the
+ *  detector counts the coincidences of every pair of lines at each
+ *  relative offset and ranks the pairs by how far their count is above
+ *  what unrelated texts would give.
+ *
+ *  Each message is stored bit-sliced: bit I of plane B is bit B of the
+ *  alphabet index of character I.  One word of each plane then covers
+ *  64 positions, and the positions at which two messages agree are the
+ *  zero bits of the OR of the XORs of their planes, so comparing two
+ *  messages costs a few word operations and a bit count per 64
+ *  characters.  Rows of the comparison are spread over all cores.
+ *  All-pairs comparison is still quadratic in the number of lines; with
+ *  --window W each line is compared only with the W lines after it,
+ *  which is how corpora of millions of lines, whose depths are usually
+ *  close together in time, are handled in minutes.
+ *
+ *  Usage: java enigma.DepthDetector CONFIG CORPUS [--offset D]
+ *  [--window W] [--top K] [--min-overlap M] [--threads T].  The alphabet
+ *  comes from the configuration file CONFIG.  Characters of CORPUS that
+ *  are not in it (such as the spaces between groups) are ignored.
+ *  @author Ryan Chen
+ */
+final class DepthDetector {
+
+    /** Run the detector on ARGS (see the class comment), printing the
+     *  best candidates on the standard output. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 2 || args.length % 2 != 0) {
+                throw error("Usage: java enigma.DepthDetector CONFIG CORPUS "
+                            + "[--offset D] [--window W] [--top K] "
+                            + "[--min-overlap M] [--threads T]");
+            }
+            Alphabet alphabet = Main.readConfig(new File(args[0])).alphabet();
+            DepthDetector detector = new DepthDetector(alphabet);
+            int threads = Runtime.getRuntime().availableProcessors();
+            for (int i = 2; i < args.length; i += 2) {
+                int value = number(args[i + 1]);
+                switch (args[i]) {
+                case "--offset":
+                    detector._maxOffset = value;
+                    break;
+                case "--window":
+                    detector._window = value;
+                    break;
+                case "--top":
+                    detector._top = Math.max(1, value);
+                    break;
+                case "--min-overlap":
+                    detector._minOverlap = Math.max(1, value);
+                    break;
+                case "--threads":
+                    threads = Math.max(1, value);
+                    break;
+                default:
+                    throw error("unknown option %s", args[i]);
+                }
+            }
+            detector.read(new File(args[1]));
+            print(detector.search(threads), System.out);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the non-negative number NUM. */
+    private static int number(String num) {
+        try {
+            int result = Integer.parseInt(num);
+            if (result >= 0) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through. */
+        }
+        throw error("bad number: %s", num);
+    }
+
+    /** A detector for ciphertexts over ALPHABET. */
+    DepthDetector(Alphabet alphabet) {
+        _alphabet = alphabet;
+        _planes = Math.max(1, 32 - Integer.numberOfLeadingZeros(
+                alphabet.size() - 1));
+        _counts = new long[alphabet.size()];
+    }
+
+    /** Add each line of the file CORPUS as a message. */
+    void read(File corpus) {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                 new FileInputStream(corpus), Charset.defaultCharset()))) {
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                add(line);
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", corpus);
+        }
+    }
+
+    /** Add TEXT as the next message, ignoring characters not in my
+     *  alphabet. */
+    void add(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (_alphabet.contains(text.charAt(i))) {
+                length += 1;
+            }
+        }
+        int words = (length + 63) >>> 6;
+        long[] sliced = new long[_planes * words];
+        int pos = 0;
+        for (int i = 0; i < text.length(); i++) {
+            int c = _alphabet.toInt(text.charAt(i));
+            if (c >= 0) {
+                _counts[c] += 1;
+                for (int b = 0; b < _planes; b++) {
+                    if ((c & (1 << b)) != 0) {
+                        sliced[b * words + (pos >>> 6)] |= 1L << pos;
+                    }
+                }
+                pos += 1;
+            }
+        }
+        if (_messages.size() == _lengths.length) {
+            _lengths = Arrays.copyOf(_lengths, 2 * _lengths.length + 1);
+        }
+        _lengths[_messages.size()] = length;
+        _messages.add(sliced);
+    }
+
+    /** Return the number of messages added. */
+    int size() {
+        return _messages.size();
+    }
+
+    /** Return the number of positions at which message A, starting at
+     *  its position OFFSET, agrees with message B from its start, over
+     *  their overlap of OVERLAP characters. */
+    int coincidences(int a, int b, int offset, int overlap) {
+        long[] x = _messages.get(a), y = _messages.get(b);
+        int xWords = (_lengths[a] + 63) >>> 6;
+        int yWords = (_lengths[b] + 63) >>> 6;
+        int q = offset >>> 6, r = offset & 63;
+        int count = 0;
+        for (int k = 0; k << 6 < overlap; k++) {
+            long differ = 0;
+            for (int p = 0; p < _planes; p++) {
+                int base = p * xWords + q + k;
+                long shifted = x[base] >>> r;
+                if (r != 0 && q + k + 1 < xWords) {
+                    shifted |= x[base + 1] << (64 - r);
+                }
+                differ |= shifted ^ y[p * yWords + k];
+            }
+            long same = ~differ;
+            int left = overlap - (k << 6);
+            if (left < 64) {
+                same &= (1L << left) - 1;
+            }
+            count += Long.bitCount(same);
+        }
+        return count;
+    }
+
+    /** Return the fraction of coincidences expected at one position of
+     *  two unrelated messages, from the letter counts of the corpus. */
+    double expectedRate() {
+        double total = 0, sumSquares = 0;
+        for (long count : _counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 1.0 / _alphabet.size();
+        }
+        for (long count : _counts) {
+            sumSquares += (count / total) * (count / total);
+        }
+        return sumSquares;
+    }
+
+    /** Compare every pair of messages no more than _window lines apart
+     *  (all pairs if _window is 0) at every relative offset up to
+     *  _maxOffset, using THREADS threads, and return the _top best
+     *  candidates, best first. */
+    List<Candidate> search(int threads) {
+        double rate = expectedRate();
+        TopK best = new TopK(_top);
+        int n = size();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.submit(() -> IntStream.range(0, n).parallel().forEach(
+                i -> searchRow(i, rate, best))).get();
+        } catch (InterruptedException | ExecutionException excp) {
+            throw error("depth search failed: %s", excp.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+        return best.sorted();
+    }
+
+    /** Compare message I with the messages after it within my window,
+     *  given that the coincidence rate of unrelated texts is RATE,
+     *  offering each candidate to BEST.  When RATE is 1 (the corpus uses
+     *  a single letter) every pair coincides everywhere, no score can be
+     *  computed, and the row is skipped. */
+    private void searchRow(int i, double rate, TopK best) {
+        if (rate >= 1) {
+            return;
+        }
+        int last = _window == 0 ? size() : Math.min(size(), i + 1 + _window);
+        for (int j = i + 1; j < last; j++) {
+            for (int d = -_maxOffset; d <= _maxOffset; d++) {
+                int a = d >= 0 ? i : j, b = d >= 0 ? j : i;
+                int offset = Math.abs(d);
+                int overlap = Math.min(_lengths[a] - offset,
+                                       _lengths[b]);
+                if (overlap < _minOverlap) {
+                    continue;
+                }
+                int count = coincidences(a, b, offset, overlap);
+                double mean = overlap * rate;
+                double z = (count - mean)
+                    / Math.sqrt(mean * (1 - rate));
+                if (z > best.threshold()) {
+                    best.offer(new Candidate(i, j, d, overlap, count, z));
+                }
+            }
+        }
+    }
+
+    /** Print CANDIDATES to OUT, one per line: the two line numbers
+     *  (from 1), the offset of the second line relative to the first,
+     *  the overlap, the number of coincidences and the score. */
+    static void print(List<Candidate> candidates, PrintStream out) {
+        for (Candidate c : candidates) {
+            out.printf("%d %d %d %d %d %.2f%n", c.first() + 1,
+                       c.second() + 1, c.offset(), c.overlap(),
+                       c.coincidences(), c.score());
+        }
+    }
+
+    /** A pair of messages that may be in depth. */
+    static class Candidate {
+
+        /** Messages FIRST and SECOND, with SECOND starting OFFSET
+         *  characters after FIRST (or before, if negative), agreeing in
+         *  COINCIDENCES of OVERLAP positions, with score SCORE. */
+        Candidate(int first, int second, int offset, int overlap,
+                  int coincidences, double score) {
+            _first = first;
+            _second = second;
+            _offset = offset;
+            _overlap = overlap;
+            _coincidences = coincidences;
+            _score = score;
+        }
+
+        /** Return the index of the first message. */
+        int first() {
+            return _first;
+        }
+
+        /** Return the index of the second message. */
+        int second() {
+            return _second;
+        }
+
+        /** Return the offset of the second message. */
+        int offset() {
+            return _offset;
+        }
+
+        /** Return the length of the overlap. */
+        int overlap() {
+            return _overlap;
+        }
+
+        /** Return the number of coincidences. */
+        int coincidences() {
+            return _coincidences;
+        }
+
+        /** Return the score: standard deviations above chance. */
+        double score() {
+            return _score;
+        }
+
+        /** The message indices. */
+        private final int _first, _second;
+        /** The offset, overlap and coincidence count. */
+        private final int _offset, _overlap, _coincidences;
+        /** The score. */
+        private final double _score;
+    }
+
+    /** The K best candidates offered to it, from any number of threads. */
+    static class TopK {
+
+        /** An empty collection keeping the best K candidates. */
+        TopK(int k) {
+            _k = k;
+        }
+
+        /** Return a score that a candidate must beat to be kept. */
+        double threshold() {
+            return _threshold;
+        }
+
+        /** Keep CANDIDATE if it is among the best so far. */
+        synchronized void offer(Candidate candidate) {
+            _heap.add(candidate);
+            if (_heap.size() > _k) {
+                _heap.poll();
+            }
+            if (_heap.size() == _k) {
+                _threshold = _heap.peek().score();
+            }
+        }
+
+        /** Return the candidates kept, best first. */
+        synchronized List<Candidate> sorted() {
+            Candidate[] result = _heap.toArray(new Candidate[0]);
+            Arrays.sort(result, (x, y) -> Double.compare(y.score(),
+                                                         x.score()));
+            return Arrays.asList(result);
+        }
+
+        /** The number of candidates kept. */
+        private final int _k;
+        /** The kept candidates, worst first. */
+        private final PriorityQueue<Candidate> _heap = new PriorityQueue<>(
+            (x, y) -> Double.compare(x.score(), y.score()));
+        /** The score of the worst kept candidate once there are K. */
+        private volatile double _threshold = Double.NEGATIVE_INFINITY;
+    }
+
+    /** The alphabet of the messages. */
+    private final Alphabet _alphabet;
+    /** The number of bit planes per message. */
+    private final int _planes;
+    /** The bit-sliced messages. */
+    private final ArrayList<long[]> _messages = new ArrayList<>();
+    /** The lengths of the messages. */
+    private int[] _lengths = new int[0];
+    /** The number of occurrences of each letter in the corpus. */
+    private final long[] _counts;
+    /** The largest relative offset tried. */
+    private int _maxOffset;
+    /** The number of following lines each line is compared with, or 0
+     *  for all of them. */
+    private int _window;
+    /** The number of candidates reported. */
+    private int _top = DEFAULT_TOP;
+    /** The shortest overlap considered. */
+    private int _minOverlap = DEFAULT_MIN_OVERLAP;
+
+    /** Default number of candidates reported. */
+    static final int DEFAULT_TOP = 100;
+    /** Default shortest overlap. */
+    static final int DEFAULT_MIN_OVERLAP = 20;
+}
@@ -0,0 +1,98 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the DepthDetector class.
+ *  @author Ryan Chen
+ */
+public class DepthDetectorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Plain text with the letter frequencies of English. */
+    private static final String TEXT =
+        "SHOULDYOUASKMEWHENCETHESESTORIESWHENCETHESELEGENDSANDTRADITIONS"
+        + "WITHTHEODORSOFTHEFORESTWITHTHEDEWANDDAMPOFMEADOWSWITHTHECURLING"
+        + "SMOKEOFWIGWAMSWITHTHERUSHINGOFGREATRIVERSWITHTHEIRFREQUENT"
+        + "REPETITIONSANDTHEIRWILDREVERBERATIONSASOFTHUNDERINTHEMOUNTAINS"
+        + "ISHOULDANSWERISHOULDTELLYOUFROMTHEFORESTSANDTHEPRAIRIESFROMTHE"
+        + "GREATLAKESOFTHENORTHLANDFROMTHELANDOFTHEOJIBWAYSFROMTHELANDOF"
+        + "THEDACOTAHSFROMTHEMOUNTAINSMOORSANDFENLANDSWHERETHEHERONTHE"
+        + "SHUHSHUHGAHFEEDSAMONGTHEREEDSANDRUSHESIREPEATTHEMASIHEARDTHEM";
+
+    /** Return TEXT enciphered with the naval machine set to the rotor
+     *  positions SETTING, starting at character START of TEXT. */
+    private String encipher(String setting, int start) {
+        String plain = TEXT.substring(start) + TEXT.substring(0, start);
+        return navalMachine("* B Beta III IV I " + setting).convert(plain);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void findsPairInDepth() {
+        DepthDetector detector = new DepthDetector(UPPER);
+        Random random = new Random(61);
+        for (int k = 0; k < 8; k += 1) {
+            String setting = "";
+            for (int i = 0; i < 4; i += 1) {
+                setting += (char) ('A' + random.nextInt(26));
+            }
+            if (k == 2 || k == 6) {
+                setting = "QRST";
+            }
+            detector.add(encipher(setting, 37 * k));
+        }
+        List<DepthDetector.Candidate> best = detector.search(2);
+        assertEquals(2, best.get(0).first());
+        assertEquals(6, best.get(0).second());
+        assertEquals(0, best.get(0).offset());
+    }
+
+    @Test
+    public void countsCoincidencesAtOffsets() {
+        DepthDetector detector = new DepthDetector(new Alphabet("ABCD"));
+        Random random = new Random(7);
+        String a = "", b = "";
+        for (int i = 0; i < 200; i += 1) {
+            a += (char) ('A' + random.nextInt(4));
+            b += (char) ('A' + random.nextInt(4));
+        }
+        detector.add(a);
+        detector.add(b);
+        detector.add(a.substring(70));
+        assertEquals(130, detector.coincidences(0, 2, 70, 130));
+        for (int offset = 0; offset < 140; offset += 13) {
+            int expected = 0;
+            for (int i = 0; i + offset < a.length(); i += 1) {
+                if (a.charAt(i + offset) == b.charAt(i)) {
+                    expected += 1;
+                }
+            }
+            assertEquals(expected, detector.coincidences(0, 1, offset,
+                                                         200 - offset));
+        }
+    }
+
+    @Test
+    public void skipsSingleLetterCorpus() {
+        DepthDetector detector = new DepthDetector(UPPER);
+        for (int k = 0; k < 3; k += 1) {
+            detector.add("A".repeat(200));
+        }
+        assertEquals(1.0, detector.expectedRate(), 0.0);
+        assertTrue(detector.search(1).isEmpty());
+    }
+}
@@ -0,0 +1,245 @@
+package enigma;
+
+import java.util.ArrayList;
+
+import static enigma.EnigmaException.*;
+
+/** The ways a Machine can convert a whole message once its tables are
+ *  made, and the choice between them.
+ *
+ *  TABLES looks up every slot's permutation table for each character;
+ *  it needs nothing computed in advance.  CORE composes the reflector
+ *  and the slots that move only on a turnover into one table (see
+ *  Machine.substituteTrusted), which saves lookups on every character
+ *  but must be recomputed for each setup and each time a core slot
+ *  moves.  SPECIALIZED runs code generated for the setup on top of the
+ *  core (see Specializer), which is fastest per character but takes far
+ *  longer to generate than a short message takes to convert.
+ *
+ *  Left to itself (ADAPTIVE), a machine estimates the cost of each
+ *  engine for each message, from the message's length, the alphabet
+ *  size, the number of slots and how many of them are in the core, how
+ *  often the core has had to be recomputed so far, and a Calibration of
+ *  this JVM, and uses the cheapest.  The calibration comes from a short
+ *  benchmark run once, the first time a message of CALIBRATE_LENGTH or
+ *  more is converted; until then, DEFAULTS are used.  Either way, an
+ *  engine can be imposed instead (see Machine.useEngine), and the engine
+ *  each message used is counted by the machine and reported with the
+ *  message's EnigmaEvents.Message event.
+ *  @author Ryan Chen
+ */
+final class Engines {
+
+    /** Engine numbers. */
+    static final int TABLES = 0, CORE = 1, SPECIALIZED = 2;
+    /** Not an engine: choose one for each message. */
+    static final int ADAPTIVE = -1;
+    /** The number of engines. */
+    static final int COUNT = 3;
+
+    /** Not instantiable. */
+    private Engines() {
+    }
+
+    /** Return the name of ENGINE, an engine number or ADAPTIVE. */
+    static String name(int engine) {
+        return engine == ADAPTIVE ? ADAPTIVE_NAME : NAMES[engine];
+    }
+
+    /** Return the engine number (or ADAPTIVE) named NAME. */
+    static int parse(String name) {
+        if (name.equals(ADAPTIVE_NAME)) {
+            return ADAPTIVE;
+        }
+        for (int e = 0; e < COUNT; e++) {
+            if (NAMES[e].equals(name)) {
+                return e;
+            }
+        }
+        throw error("unknown engine %s", name);
+    }
+
+    /** Measured costs of the engines in this JVM, all in terms of STEP,
+     *  the time to pass a character through one slot's table. */
+    static final class Calibration {
+
+        /** A calibration in which a step takes STEPNANOS nanoseconds, a
+         *  specialized kernel takes KERNELRATIO times as long as the
+         *  table lookups it replaces, and generating one takes
+         *  GENERATENANOS nanoseconds. */
+        Calibration(double stepNanos, double kernelRatio,
+                    double generateNanos) {
+            _stepNanos = stepNanos;
+            _kernelRatio = kernelRatio;
+            _generateNanos = generateNanos;
+        }
+
+        /** Return the time of one step, in nanoseconds. */
+        double stepNanos() {
+            return _stepNanos;
+        }
+
+        /** Return the time of a kernel as a fraction of that of the
+         *  lookups it replaces. */
+        double kernelRatio() {
+            return _kernelRatio;
+        }
+
+        /** Return the time to generate a kernel, in nanoseconds. */
+        double generateNanos() {
+            return _generateNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("step %.2f ns, kernel ratio %.2f, "
+                                 + "generation %.0f us", _stepNanos,
+                                 _kernelRatio, _generateNanos / 1e3);
+        }
+
+        /** The time of a step. */
+        private final double _stepNanos;
+        /** The relative time of a kernel. */
+        private final double _kernelRatio;
+        /** The time to generate a kernel. */
+        private final double _generateNanos;
+    }
+
+    /** Return the engine that CALIBRATION predicts will convert a
+     *  message of LENGTH characters fastest, on a machine whose alphabet
+     *  has SIZE letters and whose NUMROTORS slots include CORESLOTS in
+     *  the core.  CORESTALE is true iff the core must be recomputed
+     *  before the message, TURNOVERRATE is the expected number of times
+     *  it must be recomputed per character, and KERNELREADY is true iff
+     *  a kernel has already been generated for the setup. */
+    static int choose(Calibration calibration, long length, int size,
+                      int numRotors, int coreSlots, boolean coreStale,
+                      double turnoverRate, boolean kernelReady) {
+        double step = calibration.stepNanos();
+        double tablesChar = (2 * numRotors - 1) * step;
+        double coreChar = (2 * (numRotors - coreSlots) + 1) * step;
+        double rebuild = (double) size * (2 * coreSlots - 1) * step;
+        double coreFixed = (coreStale ? rebuild : 0.0)
+            + length * turnoverRate * rebuild;
+        double tables = length * tablesChar;
+        double core = length * coreChar + coreFixed;
+        double special = length * coreChar * calibration.kernelRatio()
+            + coreFixed + (kernelReady ? 0.0 : calibration.generateNanos());
+        if (special < core && special < tables) {
+            return SPECIALIZED;
+        }
+        return core <= tables ? CORE : TABLES;
+    }
+
+    /** Return the calibration of this JVM, running the benchmark if it
+     *  has not yet been run. */
+    static Calibration calibration() {
+        return Measured.CALIBRATION;
+    }
+
+    /** Holds the measured calibration, so that the benchmark runs when
+     *  it is first needed, and only once. */
+    private static final class Measured {
+        /** The calibration of this JVM. */
+        static final Calibration CALIBRATION = measure();
+    }
+
+    /** Run the calibration benchmark, and return its results. */
+    static Calibration measure() {
+        Machine machine = benchmarkMachine();
+        char[] text = new char[BENCHMARK_LENGTH];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = (char) ('A' + (i * 7) % BENCHMARK_SIZE);
+        }
+        double[] perChar = new double[COUNT];
+        for (int e = 0; e < COUNT; e++) {
+            machine.useEngine(e);
+            perChar[e] = Double.MAX_VALUE;
+            for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+                long start = System.nanoTime();
+                machine.convert(text, 0, text.length);
+                double t = (double) (System.nanoTime() - start) / text.length;
+                if (round >= WARMUP_ROUNDS) {
+                    perChar[e] = Math.min(perChar[e], t);
+                }
+            }
+        }
+        double generate = Double.MAX_VALUE;
+        Permutation plugboard = new Permutation("", new Alphabet());
+        // Each new plugboard makes the next conversion generate a kernel.
+        machine.useEngine(SPECIALIZED);
+        for (int round = 0; round < ROUNDS; round++) {
+            machine.setPlugboard(plugboard);
+            long start = System.nanoTime();
+            machine.convert(text, 0, 1);
+            generate = Math.min(generate, System.nanoTime() - start);
+        }
+        int lookupsSaved = 2 * BENCHMARK_CORE - 2;
+        int coreLookups = 2 * (BENCHMARK_SLOTS - BENCHMARK_CORE) + 1;
+        double step = Math.max(MIN_STEP_NANOS,
+                               (perChar[TABLES] - perChar[CORE])
+                               / lookupsSaved);
+        double advance = perChar[CORE] - coreLookups * step;
+        double ratio = (perChar[SPECIALIZED] - advance) / (coreLookups * step);
+        ratio = Math.max(MIN_KERNEL_RATIO, Math.min(MAX_KERNEL_RATIO, ratio));
+        return new Calibration(step, ratio, generate);
+    }
+
+    /** Return a machine of the usual shape, with arbitrary wirings, to
+     *  calibrate with. */
+    private static Machine benchmarkMachine() {
+        Alphabet alphabet = new Alphabet();
+        int n = BENCHMARK_SIZE;
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        int[] reflect = new int[n];
+        for (int i = 0; i < n; i++) {
+            reflect[i] = i ^ 1;
+        }
+        rotors.add(new Reflector("R", new Permutation(reflect, alphabet)));
+        String[] names = new String[BENCHMARK_SLOTS];
+        names[0] = "R";
+        for (int k = 1; k < BENCHMARK_SLOTS; k++) {
+            int[] wiring = new int[n];
+            for (int i = 0; i < n; i++) {
+                wiring[i] = (BENCHMARK_MULTIPLIERS[k] * i + k) % n;
+            }
+            Permutation perm = new Permutation(wiring, alphabet);
+            names[k] = "S" + k;
+            rotors.add(k == 1 ? new FixedRotor(names[k], perm)
+                       : new MovingRotor(names[k], perm, "Q"));
+        }
+        Machine machine = new Machine(alphabet, BENCHMARK_SLOTS,
+                                      BENCHMARK_SLOTS - 2, rotors);
+        machine.insertRotors(names);
+        machine.setPlugboard(new Permutation("", alphabet));
+        return machine;
+    }
+
+    /** The costs used before the calibration benchmark has run: roughly
+     *  what it measures once the JIT has compiled the engines. */
+    static final Calibration DEFAULTS = new Calibration(7.0, 0.9, 1e6);
+
+    /** The length of message at which the calibration benchmark is run, if
+     *  it has not been already.  The benchmark takes tens of
+     *  milliseconds, which only messages about this long justify. */
+    static final long CALIBRATE_LENGTH = 1 << 20;
+
+    /** The names of the engines. */
+    private static final String[] NAMES = {"tables", "core", "specialized"};
+    /** The name of ADAPTIVE. */
+    private static final String ADAPTIVE_NAME = "adaptive";
+
+    /** The shape of the benchmark machine: its alphabet size, its number
+     *  of slots, and the number of those in its core. */
+    private static final int BENCHMARK_SIZE = 26, BENCHMARK_SLOTS = 5,
+        BENCHMARK_CORE = 3;
+    /** Multipliers (prime to 26) for the benchmark wirings. */
+    private static final int[] BENCHMARK_MULTIPLIERS = {1, 3, 5, 7, 9};
+    /** The length of the benchmark message. */
+    private static final int BENCHMARK_LENGTH = 1 << 13;
+    /** The number of untimed and timed runs of each engine. */
+    private static final int WARMUP_ROUNDS = 4, ROUNDS = 3;
+    /** Bounds on measured values, against timing noise. */
+    private static final double MIN_STEP_NANOS = 0.05,
+        MIN_KERNEL_RATIO = 0.1, MAX_KERNEL_RATIO = 2.0;
+}
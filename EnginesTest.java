@@ -0,0 +1,108 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Engines class.
+ *  @author Ryan Chen
+ */
+public class EnginesTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A calibration in which specializing pays off for long messages. */
+    private static final Engines.Calibration CHEAP_KERNELS =
+        new Engines.Calibration(1.0, 0.5, 1e5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testEnginesAgree() {
+        String[][] shapes = {
+            {"B", "Beta", "III", "IV", "I"},
+            {"C", "Gamma", "VI", "II", "VIII", "V"},
+            {"B", "V"},
+        };
+        String[] settings = {"AXLE", "QZKMA", "Q"};
+        for (int k = 0; k < shapes.length; k++) {
+            char[] expected = engineText(shapes[k], settings[k],
+                                         Engines.TABLES);
+            for (int engine : new int[] {Engines.CORE, Engines.SPECIALIZED,
+                                         Engines.ADAPTIVE}) {
+                assertArrayEquals(Engines.name(engine), expected,
+                                  engineText(shapes[k], settings[k],
+                                             engine));
+            }
+        }
+    }
+
+    @Test
+    public void testChooseByLength() {
+        assertEquals(Engines.TABLES,
+                     Engines.choose(CHEAP_KERNELS, 5, 26, 5, 3, true,
+                                    1.0 / 676, false));
+        assertEquals(Engines.CORE,
+                     Engines.choose(CHEAP_KERNELS, 5, 26, 5, 3, false,
+                                    1.0 / 676, false));
+        assertEquals(Engines.CORE,
+                     Engines.choose(CHEAP_KERNELS, 2000, 26, 5, 3, true,
+                                    1.0 / 676, false));
+        assertEquals(Engines.SPECIALIZED,
+                     Engines.choose(CHEAP_KERNELS, 1000000, 26, 5, 3, true,
+                                    1.0 / 676, false));
+        assertEquals(Engines.SPECIALIZED,
+                     Engines.choose(CHEAP_KERNELS, 2000, 26, 5, 3, false,
+                                    1.0 / 676, true));
+    }
+
+    @Test
+    public void testChooseByShape() {
+        assertEquals(Engines.CORE,
+                     Engines.choose(Engines.DEFAULTS, 200, 26, 5, 3, true,
+                                    1.0 / 676, false));
+        assertEquals(Engines.TABLES,
+                     Engines.choose(Engines.DEFAULTS, 200, 256, 5, 3, true,
+                                    1.0 / 676, false));
+        assertEquals(Engines.TABLES,
+                     Engines.choose(Engines.DEFAULTS, 2000, 26, 5, 3, true,
+                                    1.0 / 26, false));
+    }
+
+    @Test
+    public void testMetrics() {
+        Machine m =
+            navalMachine(new String[] {"B", "Beta", "III", "IV", "I"},
+                         "AXLE", Engines.ADAPTIVE);
+        assertEquals(Engines.ADAPTIVE, m.engine());
+        m.convert("HELLO");
+        assertEquals(Engines.TABLES, m.engine());
+        m.convert("HELLOWORLD".repeat(50));
+        assertEquals(Engines.CORE, m.engine());
+        assertEquals(5, m.engineCharacters(Engines.TABLES));
+        assertEquals(500, m.engineCharacters(Engines.CORE));
+        m.useEngine(Engines.SPECIALIZED);
+        m.convert("HELLO");
+        assertEquals(Engines.SPECIALIZED, m.engine());
+        assertEquals(5, m.engineCharacters(Engines.SPECIALIZED));
+    }
+
+    @Test
+    public void testNames() {
+        for (int e = Engines.ADAPTIVE; e < Engines.COUNT; e++) {
+            assertEquals(e, Engines.parse(Engines.name(e)));
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testUnknownName() {
+        Engines.parse("turbo");
+    }
+}
@@ -0,0 +1,203 @@
+package enigma;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+/** Java Flight Recorder events for the simulator.  When no recording
+ *  is running, each event costs little more than an allocation that the
+ *  JIT removes, so they are always left in.  Enable them in a recording
+ *  with, for example, -XX:StartFlightRecording=settings=profile, or by
+ *  enabling the "Enigma" category in a custom settings file.
+ *  @author Ryan Chen
+ */
+final class EnigmaEvents {
+
+    /** Not instantiable. */
+    private EnigmaEvents() {
+    }
+
+    /** Reading (indexing) one configuration file. */
+    @Name("enigma.ConfigLoad")
+    @Label("Config Load")
+    @Category("Enigma")
+    @Description("Reading a configuration file")
+    @StackTrace(false)
+    static class ConfigLoad extends Event {
+        /** The configuration file. */
+        @Label("File")
+        String file;
+        /** Its size. */
+        @Label("Size")
+        @DataAmount
+        long bytes;
+        /** The number of rotor descriptions it contains. */
+        @Label("Rotors")
+        int rotors;
+    }
+
+    /** Processing one settings line. */
+    @Name("enigma.Settings")
+    @Label("Settings Line")
+    @Category("Enigma")
+    @Description("Setting up a machine from a settings line")
+    @StackTrace(false)
+    static class Settings extends Event {
+        /** The settings line. */
+        @Label("Settings")
+        String settings;
+        /** Its line number in the input. */
+        @Label("Line")
+        long line;
+    }
+
+    /** Converting one message line. */
+    @Name("enigma.Message")
+    @Label("Message")
+    @Category("Enigma")
+    @Description("Converting one message line")
+    @StackTrace(false)
+    static class Message extends Event {
+        /** The most recent settings line. */
+        @Label("Settings")
+        String settings;
+        /** The line number of the message in the input. */
+        @Label("Line")
+        long line;
+        /** The number of characters in the line. */
+        @Label("Characters")
+        int characters;
+        /** The engine that converted it (see Engines). */
+        @Label("Engine")
+        String engine;
+    }
+
+    /** Periodic totals of messages and characters converted. */
+    @Name("enigma.Throughput")
+    @Label("Throughput")
+    @Category("Enigma")
+    @Description("Messages and characters converted since the last event")
+    @Period("1 s")
+    @StackTrace(false)
+    static class Throughput extends Event {
+        /** Messages converted in the period. */
+        @Label("Messages")
+        long messages;
+        /** Characters converted in the period. */
+        @Label("Characters")
+        long characters;
+        /** Characters per second over the period. */
+        @Label("Characters per Second")
+        double rate;
+    }
+
+    /** One run of a Pipeline. */
+    @Name("enigma.Pipeline")
+    @Label("Pipeline")
+    @Category("Enigma")
+    @Description("Occupancy of the ring in front of each pipeline stage")
+    @StackTrace(false)
+    static class PipelineRun extends Event {
+        /** The number of slots in the ring. */
+        @Label("Slots")
+        int slots;
+        /** Average slots already filled when the reader filled one. */
+        @Label("Read Occupancy")
+        double readOccupancy;
+        /** Average slots waiting when the converter took one. */
+        @Label("Convert Occupancy")
+        double convertOccupancy;
+        /** Average slots waiting when the formatter took one. */
+        @Label("Format Occupancy")
+        double formatOccupancy;
+        /** Average slots waiting when the writer took one. */
+        @Label("Write Occupancy")
+        double writeOccupancy;
+        /** Times the reader waited for a free slot. */
+        @Label("Read Stalls")
+        long readStalls;
+        /** Times the converter waited for a line. */
+        @Label("Convert Stalls")
+        long convertStalls;
+        /** Times the formatter waited for a message. */
+        @Label("Format Stalls")
+        long formatStalls;
+        /** Times the writer waited for an output line. */
+        @Label("Write Stalls")
+        long writeStalls;
+    }
+
+    /** Record the statistics of the finished pipeline P. */
+    static void pipeline(Pipeline p) {
+        PipelineRun event = new PipelineRun();
+        if (event.shouldCommit()) {
+            event.slots = p.slots();
+            event.readOccupancy = p.occupancy(Pipeline.READ);
+            event.convertOccupancy = p.occupancy(Pipeline.CONVERT);
+            event.formatOccupancy = p.occupancy(Pipeline.FORMAT);
+            event.writeOccupancy = p.occupancy(Pipeline.WRITE);
+            event.readStalls = p.stalls(Pipeline.READ);
+            event.convertStalls = p.stalls(Pipeline.CONVERT);
+            event.formatStalls = p.stalls(Pipeline.FORMAT);
+            event.writeStalls = p.stalls(Pipeline.WRITE);
+            event.commit();
+        }
+    }
+
+    /** Count a message of CHARACTERS characters towards throughput. */
+    static void converted(int characters) {
+        MESSAGES.increment();
+        CHARACTERS.add(characters);
+        if (!_registered && FlightRecorder.isInitialized()) {
+            register();
+        }
+    }
+
+    /** Register the Throughput event once Flight Recorder is running.
+     *  This waits until a recording has started (from the command line or
+     *  by jcmd), since registering earlier would start the recorder in
+     *  every run and add noticeably to startup time. */
+    private static synchronized void register() {
+        if (!_registered) {
+            _registered = true;
+            _lastPeriod = System.nanoTime();
+            MESSAGES.reset();
+            CHARACTERS.reset();
+            FlightRecorder.addPeriodicEvent(Throughput.class,
+                                            EnigmaEvents::emitThroughput);
+        }
+    }
+
+    /** Emit a Throughput event for the period since the previous one. */
+    private static synchronized void emitThroughput() {
+        long now = System.nanoTime();
+        long messages = MESSAGES.sumThenReset();
+        long characters = CHARACTERS.sumThenReset();
+        Throughput event = new Throughput();
+        event.messages = messages;
+        event.characters = characters;
+        event.rate = now == _lastPeriod ? 0.0
+            : characters * NANOS_PER_SECOND / (now - _lastPeriod);
+        _lastPeriod = now;
+        event.commit();
+    }
+
+    /** Messages converted since the last Throughput event. */
+    private static final LongAdder MESSAGES = new LongAdder();
+    /** Characters converted since the last Throughput event. */
+    private static final LongAdder CHARACTERS = new LongAdder();
+    /** Time of the last Throughput event. */
+    private static long _lastPeriod;
+    /** True once the Throughput event has been registered. */
+    private static volatile boolean _registered;
+    /** Nanoseconds in a second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+}
@@ -0,0 +1,117 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+
+/** The suite of all JUnit tests for the EnigmaEvents class.
+ *  @author Ryan Chen
+ */
+public class EnigmaEventsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A configuration file with five rotors. */
+    private static final String CONFIG = String.join("\n",
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ",
+        "5 3",
+        " I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)",
+        " III MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)",
+        " IV MJ     (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)",
+        " Beta N    (ALBEVFCYODJWUGNMQTZSKPR) (HIX)",
+        " B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)",
+        "           (RX) (SZ) (TV)", "");
+
+    /** The settings line of each input. */
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE (YF) (ZH)";
+
+    /** The names of the events checked. */
+    private static final String CONFIG_LOAD = "enigma.ConfigLoad",
+        SETTINGS_EVENT = "enigma.Settings", MESSAGE = "enigma.Message",
+        THROUGHPUT = "enigma.Throughput";
+
+    /** The longest to wait for all the events to arrive. */
+    private static final long WAIT_NANOS = 20_000_000_000L;
+
+    /** Convert SETTINGS followed by the message line TEXT on CONFIG,
+     *  discarding the output. */
+    private static void convert(MachineConfig config, String text) {
+        PrintStream out = new PrintStream(OutputStream.nullOutputStream());
+        new Main(config, new Scanner(SETTINGS + "\n" + text + "\n"), out)
+            .process();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testEvents() throws IOException, InterruptedException {
+        File file = File.createTempFile("enigma", ".conf");
+        file.deleteOnExit();
+        Files.writeString(file.toPath(), CONFIG);
+        Map<String, RecordedEvent> seen = new ConcurrentHashMap<>();
+        try (RecordingStream stream = new RecordingStream()) {
+            stream.enable(CONFIG_LOAD);
+            stream.enable(SETTINGS_EVENT);
+            stream.enable(MESSAGE);
+            stream.enable(THROUGHPUT).withPeriod(Duration.ofMillis(100));
+            stream.onEvent((e) -> {
+                    String name = e.getEventType().getName();
+                    if (!name.equals(THROUGHPUT)
+                        || e.getLong("characters") > 0) {
+                        seen.putIfAbsent(name, e);
+                    }
+                });
+            stream.startAsync();
+            MachineConfig config = Main.readConfig(file);
+            long start = System.nanoTime();
+            while (seen.size() < 4 && System.nanoTime() - start < WAIT_NANOS) {
+                convert(config, "HELLO WORLD");
+                Thread.sleep(100);
+            }
+        }
+
+        RecordedEvent load = seen.get(CONFIG_LOAD);
+        assertNotNull("no ConfigLoad event", load);
+        assertEquals(file.getPath(), load.getString("file"));
+        assertEquals(file.length(), load.getLong("bytes"));
+        assertEquals(5, load.getInt("rotors"));
+
+        RecordedEvent settings = seen.get(SETTINGS_EVENT);
+        assertNotNull("no Settings event", settings);
+        assertEquals(SETTINGS, settings.getString("settings"));
+        assertEquals(1, settings.getLong("line"));
+
+        RecordedEvent message = seen.get(MESSAGE);
+        assertNotNull("no Message event", message);
+        assertEquals(SETTINGS, message.getString("settings"));
+        assertEquals(2, message.getLong("line"));
+        assertEquals(10, message.getInt("characters"));
+        String engine = message.getString("engine");
+        assertEquals(engine, Engines.name(Engines.parse(engine)));
+
+        RecordedEvent throughput = seen.get(THROUGHPUT);
+        assertNotNull("no Throughput event", throughput);
+        assertTrue(throughput.getLong("messages") > 0);
+        assertEquals(0, throughput.getLong("characters") % 10);
+        assertTrue(throughput.getDouble("rate") > 0);
+    }
+}
@@ -0,0 +1,83 @@
+package enigma;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static enigma.EnigmaException.*;
+
+/** An InputStream that converts the bytes of another InputStream with a
+ *  Machine over a byte alphabet as they are read, one alphabet index per
+ *  byte (see Machine.convert(byte[], int, int)).  Bytes are converted in
+ *  place in the caller's array, and the machine's rotors carry over from
+ *  one read to the next.  Skipped bytes are converted too, so that the
+ *  rotors stay in step; marking is not supported.
+ *  @author Ryan Chen
+ */
+final class EnigmaInputStream extends FilterInputStream {
+
+    /** A stream of the bytes of IN converted by MACHINE, whose alphabet
+     *  must be a byte alphabet. */
+    EnigmaInputStream(InputStream in, Machine machine) {
+        super(in);
+        if (!machine.alphabet().isByteAlphabet()) {
+            throw error("Binary conversion needs a byte alphabet");
+        }
+        _machine = machine;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        return b < 0 ? b : _machine.convert(b);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        if (n > 0) {
+            _machine.convert(b, off, off + n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        if (_skipped == null) {
+            _skipped = new byte[EnigmaReader.BUFFER_SIZE];
+        }
+        long left = n;
+        while (left > 0) {
+            int k = read(_skipped, 0, (int) Math.min(left, _skipped.length));
+            if (k < 0) {
+                break;
+            }
+            left -= k;
+        }
+        return n - Math.max(left, 0);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readlimit) {
+        /* Not supported. */
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /** The machine that converts what I read. */
+    private final Machine _machine;
+    /** Where skipped bytes are read, or null until something is
+     *  skipped. */
+    private byte[] _skipped;
+}
@@ -0,0 +1,55 @@
+package enigma;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+
+import static enigma.EnigmaException.*;
+
+/** An OutputStream that converts what is written to it with a Machine
+ *  over a byte alphabet and passes the result on to another
+ *  OutputStream: the writing counterpart of EnigmaInputStream.  Bytes
+ *  are copied a buffer at a time into a buffer of my own and converted
+ *  there, so the caller's array is left as it was, and the machine's
+ *  rotors carry over from one write to the next.
+ *  @author Ryan Chen
+ */
+final class EnigmaOutputStream extends FilterOutputStream {
+
+    /** A stream to OUT of bytes converted by MACHINE, whose alphabet must
+     *  be a byte alphabet. */
+    EnigmaOutputStream(OutputStream out, Machine machine) {
+        super(out);
+        if (!machine.alphabet().isByteAlphabet()) {
+            throw error("Binary conversion needs a byte alphabet");
+        }
+        _machine = machine;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(_machine.convert(b & BYTE_MASK));
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        while (len > 0) {
+            int k = Math.min(len, _buf.length);
+            System.arraycopy(b, off, _buf, 0, k);
+            _machine.convert(_buf, 0, k);
+            out.write(_buf, 0, k);
+            off += k;
+            len -= k;
+        }
+    }
+
+    /** The machine that converts what is written. */
+    private final Machine _machine;
+    /** Where bytes are converted. */
+    private final byte[] _buf = new byte[EnigmaReader.BUFFER_SIZE];
+
+    /** Mask for a byte as an unsigned number. */
+    private static final int BYTE_MASK = 0xff;
+}
@@ -0,0 +1,148 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Objects;
+
+import static enigma.EnigmaException.*;
+
+/** A Reader that converts the characters of another Reader with a
+ *  Machine as they are read, so that a message of any length can be
+ *  converted in constant memory, without first reading it into a String.
+ *  Characters are read from the underlying Reader a buffer at a time and
+ *  converted in bulk with Machine.convert(char[], int, int), and the
+ *  machine's rotors carry over from one read to the next, so the result
+ *  does not depend on how the reads are split up.
+ *
+ *  Whitespace is dropped, as Main drops it from messages; any other
+ *  character outside the machine's alphabet is an error, raised before
+ *  any of the buffer containing it is converted.  If grouping is asked
+ *  for, the converted letters are separated into groups of five by
+ *  single spaces, as Main prints them.
+ *  @author Ryan Chen
+ */
+final class EnigmaReader extends Reader {
+
+    /** A reader of IN converted by MACHINE, grouped into five-letter
+     *  groups iff GROUP. */
+    EnigmaReader(Reader in, Machine machine, boolean group) {
+        super(in);
+        _in = in;
+        _machine = machine;
+        _alphabet = machine.alphabet();
+        _group = group;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, cbuf.length);
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int n = 0;
+        while (n < len && _pos < _end) {
+            if (_group && _sinceSpace == GROUP) {
+                cbuf[off + n] = ' ';
+                n += 1;
+                _sinceSpace = 0;
+                continue;
+            }
+            int k = Math.min(len - n, _end - _pos);
+            if (_group) {
+                k = Math.min(k, GROUP - _sinceSpace);
+                _sinceSpace += k;
+            }
+            System.arraycopy(_buf, _pos, cbuf, off + n, k);
+            _pos += k;
+            n += k;
+        }
+        return n;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        if (_group) {
+            if (_sinceSpace == GROUP) {
+                _sinceSpace = 0;
+                return ' ';
+            }
+            _sinceSpace += 1;
+        }
+        return _buf[_pos++];
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+        return _pos < _end || _in.ready();
+    }
+
+    @Override
+    public void close() throws IOException {
+        _in.close();
+    }
+
+    /** Make sure that there are converted letters in my buffer, reading
+     *  and converting more if need be.  Return false iff the input has
+     *  ended. */
+    private boolean fill() throws IOException {
+        while (_pos == _end) {
+            _pos = _end = 0;
+            int n = _in.read(_buf, 0, _buf.length);
+            if (n < 0) {
+                return false;
+            }
+            n = letters(_alphabet, _buf, 0, n);
+            _machine.convert(_buf, 0, n);
+            _end = n;
+        }
+        return true;
+    }
+
+    /** Move the characters of BUF[START .. END-1] that are in ALPHABET
+     *  to the front of that range, dropping whitespace, and return the
+     *  end of those left.  Any other character is an error. */
+    static int letters(Alphabet alphabet, char[] buf, int start, int end) {
+        int first = alphabet.firstInvalid(buf, start, end);
+        if (first < 0) {
+            return end;
+        }
+        int n = first;
+        for (int i = first; i < end; i++) {
+            char c = buf[i];
+            if (alphabet.contains(c)) {
+                buf[n++] = c;
+            } else if (!Character.isWhitespace(c)) {
+                throw error("This message has a letter that is not "
+                            + "in the Alphabet");
+            }
+        }
+        return n;
+    }
+
+    /** The underlying reader. */
+    private final Reader _in;
+    /** The machine that converts what I read. */
+    private final Machine _machine;
+    /** The machine's alphabet. */
+    private final Alphabet _alphabet;
+    /** True iff my output is in five-letter groups. */
+    private final boolean _group;
+    /** Converted letters, of which _buf[_pos .. _end-1] are not yet
+     *  read. */
+    private final char[] _buf = new char[BUFFER_SIZE];
+    /** The unread part of _buf. */
+    private int _pos, _end;
+    /** The number of letters read since the last group began. */
+    private int _sinceSpace;
+
+    /** The size of a group. */
+    static final int GROUP = 5;
+    /** The size of my buffer. */
+    static final int BUFFER_SIZE = 1 << 13;
+}
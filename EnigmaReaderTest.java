@@ -0,0 +1,132 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the EnigmaReader and
+ *  EnigmaInputStream classes.
+ *  @author Ryan Chen
+ */
+public class EnigmaReaderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Settings used for the tests. */
+    static final String KEY = "* B Beta III IV I AXLE (YF) (ZH)";
+
+    /** Return a machine set up by KEY. */
+    static Machine machine() {
+        return navalMachine(KEY);
+    }
+
+    /** Return LENGTH random upper-case letters from RANDOM, with a space
+     *  or newline after about one in seven. */
+    static String text(Random random, int length) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            result.append((char) ('A' + random.nextInt(26)));
+            if (random.nextInt(7) == 0) {
+                result.append(random.nextBoolean() ? ' ' : '\n');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the result of Machine.convert on TEXT without whitespace,
+     *  in five-letter groups iff GROUP. */
+    static String expected(String text, boolean group) {
+        String letters = machine().convert(text.replaceAll("\\s", ""));
+        return group ? letters.replaceAll("(.{5})(?!$)", "$1 ") : letters;
+    }
+
+    /** Return all of IN, read in pieces of random sizes up to MAXREAD
+     *  chosen by RANDOM, with some single-character reads. */
+    static String readAll(Reader in, Random random, int maxRead)
+        throws IOException {
+        StringBuilder result = new StringBuilder();
+        char[] buf = new char[maxRead + 3];
+        while (true) {
+            if (random.nextInt(5) == 0) {
+                int c = in.read();
+                if (c < 0) {
+                    return result.toString();
+                }
+                result.append((char) c);
+            } else {
+                int n = in.read(buf, 3, 1 + random.nextInt(maxRead));
+                if (n < 0) {
+                    return result.toString();
+                }
+                result.append(buf, 3, n);
+            }
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testReadMatchesConvert() throws IOException {
+        Random random = new Random(47);
+        for (int length : new int[] {0, 1, 4, 5, 6, 999, 30000}) {
+            String text = text(random, length);
+            for (boolean group : new boolean[] {false, true}) {
+                for (int maxRead : new int[] {1, 7, 100000}) {
+                    Reader in = new EnigmaReader(new StringReader(text),
+                                                 machine(), group);
+                    assertEquals(expected(text, group),
+                                 readAll(in, random, maxRead));
+                }
+            }
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testRejectsOtherCharacters() throws IOException {
+        Reader in = new EnigmaReader(new StringReader("HELLO, WORLD"),
+                                     machine(), false);
+        readAll(in, new Random(0), 100);
+    }
+
+    @Test
+    public void testInputStreamMatchesConvert() throws IOException {
+        byte[] plain = new byte[20000];
+        new Random(470).nextBytes(plain);
+        byte[] expected = plain.clone();
+        TestUtils.byteMachine().convert(expected, 0, expected.length);
+        InputStream in = new EnigmaInputStream(
+            new ByteArrayInputStream(plain), TestUtils.byteMachine());
+        byte[] got = new byte[plain.length];
+        got[0] = (byte) in.read();
+        assertEquals(99, in.skip(99));
+        int n = in.readNBytes(got, 100, 4000);
+        assertEquals(4000, n);
+        n = in.readNBytes(got, 4100, plain.length - 4100);
+        assertEquals(plain.length - 4100, n);
+        assertEquals(-1, in.read());
+        assertEquals(expected[0], got[0]);
+        for (int i = 100; i < plain.length; i++) {
+            assertEquals(expected[i], got[i]);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testInputStreamNeedsByteAlphabet() {
+        new EnigmaInputStream(new ByteArrayInputStream(new byte[0]),
+                              machine());
+    }
+}
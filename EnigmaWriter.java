@@ -0,0 +1,134 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Objects;
+
+/** A Writer that converts what is written to it with a Machine and
+ *  passes the result on to another Writer: the writing counterpart of
+ *  EnigmaReader, with the same treatment of whitespace, other characters
+ *  and grouping.  Characters are collected in a buffer and converted in
+ *  bulk when it fills, or when I am flushed or closed, and the machine's
+ *  rotors and the grouping carry over from one write to the next, so the
+ *  output does not depend on how the writes are split up.
+ *  @author Ryan Chen
+ */
+final class EnigmaWriter extends Writer {
+
+    /** A writer to OUT converted by MACHINE, grouped into five-letter
+     *  groups iff GROUP. */
+    EnigmaWriter(Writer out, Machine machine, boolean group) {
+        super(out);
+        _out = out;
+        _machine = machine;
+        _alphabet = machine.alphabet();
+        _group = group;
+        _formatted = group ? new char[BUFFER_SIZE + BUFFER_SIZE / GROUP + 1]
+            : null;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, cbuf.length);
+        while (len > 0) {
+            int k = Math.min(len, _buf.length - _n);
+            System.arraycopy(cbuf, off, _buf, _n, k);
+            add(k);
+            off += k;
+            len -= k;
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, str.length());
+        while (len > 0) {
+            int k = Math.min(len, _buf.length - _n);
+            str.getChars(off, off + k, _buf, _n);
+            add(k);
+            off += k;
+            len -= k;
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        _buf[_n] = (char) c;
+        add(1);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+        _out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!_closed) {
+            _closed = true;
+            try {
+                drain();
+            } finally {
+                _out.close();
+            }
+        }
+    }
+
+    /** Take the K characters just copied to the end of my buffer,
+     *  converting and writing out the buffer if they fill it. */
+    private void add(int k) throws IOException {
+        _n = EnigmaReader.letters(_alphabet, _buf, _n, _n + k);
+        if (_n == _buf.length) {
+            drain();
+        }
+    }
+
+    /** Convert the letters in my buffer and write them out. */
+    private void drain() throws IOException {
+        if (_n == 0) {
+            return;
+        }
+        _machine.convert(_buf, 0, _n);
+        if (!_group) {
+            _out.write(_buf, 0, _n);
+        } else {
+            int k = 0;
+            for (int i = 0; i < _n; i++) {
+                if (_sinceSpace == GROUP) {
+                    _formatted[k++] = ' ';
+                    _sinceSpace = 0;
+                }
+                _formatted[k++] = _buf[i];
+                _sinceSpace += 1;
+            }
+            _out.write(_formatted, 0, k);
+        }
+        _n = 0;
+    }
+
+    /** The underlying writer. */
+    private final Writer _out;
+    /** The machine that converts what is written. */
+    private final Machine _machine;
+    /** The machine's alphabet. */
+    private final Alphabet _alphabet;
+    /** True iff my output is in five-letter groups. */
+    private final boolean _group;
+    /** Letters written but not yet converted, in _buf[0 .. _n-1]. */
+    private final char[] _buf = new char[BUFFER_SIZE];
+    /** The number of letters in _buf. */
+    private int _n;
+    /** Converted letters with the spaces between groups, or null if I do
+     *  not group. */
+    private final char[] _formatted;
+    /** The number of letters written out since the last group began. */
+    private int _sinceSpace;
+    /** True once I am closed. */
+    private boolean _closed;
+
+    /** The size of a group. */
+    private static final int GROUP = EnigmaReader.GROUP;
+    /** The size of my buffer. */
+    private static final int BUFFER_SIZE = EnigmaReader.BUFFER_SIZE;
+}
@@ -0,0 +1,103 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Random;
+
+import static enigma.EnigmaReaderTest.*;
+
+/** The suite of all JUnit tests for the EnigmaWriter and
+ *  EnigmaOutputStream classes.
+ *  @author Ryan Chen
+ */
+public class EnigmaWriterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Write TEXT to OUT in pieces of random sizes chosen by RANDOM, in
+     *  each of the ways a Writer offers, flushing now and then. */
+    private static void writeAll(Writer out, String text, Random random)
+        throws IOException {
+        for (int i = 0; i < text.length(); ) {
+            int n = Math.min(text.length() - i, 1 + random.nextInt(12000));
+            switch (random.nextInt(4)) {
+            case 0:
+                out.write(text.charAt(i));
+                n = 1;
+                break;
+            case 1:
+                out.write(text, i, n);
+                break;
+            case 2:
+                out.write(text.substring(i, i + n).toCharArray());
+                break;
+            default:
+                out.flush();
+                n = 0;
+                break;
+            }
+            i += n;
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testWriteMatchesConvert() throws IOException {
+        Random random = new Random(471);
+        for (int length : new int[] {0, 1, 5, 6, 999, 30000}) {
+            String text = text(random, length);
+            for (boolean group : new boolean[] {false, true}) {
+                StringWriter result = new StringWriter();
+                Writer out = new EnigmaWriter(result, machine(), group);
+                writeAll(out, text, random);
+                out.close();
+                assertEquals(expected(text, group), result.toString());
+            }
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        String text = text(new Random(472), 5000).replaceAll("\\s", "");
+        StringWriter cipher = new StringWriter();
+        try (Writer out = new EnigmaWriter(cipher, machine(), true)) {
+            out.write(text);
+        }
+        StringWriter back = new StringWriter();
+        try (Writer out = new EnigmaWriter(back, machine(), false)) {
+            out.write(cipher.toString());
+        }
+        assertEquals(text, back.toString());
+    }
+
+    @Test
+    public void testOutputStreamMatchesConvert() throws IOException {
+        byte[] plain = new byte[20000];
+        new Random(473).nextBytes(plain);
+        byte[] copy = plain.clone();
+        byte[] expected = plain.clone();
+        TestUtils.byteMachine().convert(expected, 0, expected.length);
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        OutputStream out = new EnigmaOutputStream(result,
+                                                  TestUtils.byteMachine());
+        out.write(plain[0]);
+        out.write(plain, 1, 9999);
+        out.write(plain, 10000, 10000);
+        out.close();
+        assertArrayEquals(expected, result.toByteArray());
+        assertArrayEquals(copy, plain);
+    }
+}
@@ -0,0 +1,535 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** Generates configuration files and inputs for load and soak testing,
+ *  and runs soak tests.  Everything generated depends only on the seed,
+ *  so a failing run can be reproduced exactly, and inputs are written as
+ *  they are generated, so they may be as large as the disk allows.
+ *
+ *  Usage:
+ *  java enigma.Generator config FILE [--size N] [--rotors R] [--slots S]
+ *  [--pawls P] [--notches D] [--seed X] writes a configuration for an
+ *  alphabet of N characters (default 26), with R rotors (default 12),
+ *  S slots and P pawls (default 5 and 3), in which each position of a
+ *  moving rotor is a notch with probability D (default 0.1).
+ *
+ *  java enigma.Generator input CONFIG FILE [--bytes B] [--settings F]
+ *  [--min L] [--max L] [--seed X] writes about B bytes (default 1MB) of
+ *  input for the configuration CONFIG: a settings line, then lines each
+ *  of which is a new settings line with probability F (default 0.01) and
+ *  otherwise a message of L characters for L chosen uniformly from the
+ *  range given (default 1 to 200), in groups of five.
+ *
+ *  java enigma.Generator soak CONFIG INPUT [--repeat N] [--interval MS]
+ *  runs Main on INPUT N times (default 1), discarding the output, and
+ *  prints a line every MS milliseconds (default 1000) with the time
+ *  since the start, the total bytes of output written, and the rate over
+ *  the interval, followed by a summary line.
+ *  @author Ryan Chen
+ */
+final class Generator {
+
+    /** Run the command given by ARGS (see the class comment). */
+    public static void main(String... args) {
+        try {
+            if (args.length < 3) {
+                throw error("Usage: java enigma.Generator "
+                            + "config|input|soak ARGS...");
+            }
+            switch (args[0]) {
+            case "config":
+                options(args, 2, "--size", "--rotors", "--slots", "--pawls",
+                        "--notches", "--seed");
+                writeConfig(new File(args[1]),
+                            intOption(args, 2, "--size", DEFAULT_SIZE),
+                            intOption(args, 2, "--rotors", DEFAULT_ROTORS),
+                            intOption(args, 2, "--slots", DEFAULT_SLOTS),
+                            intOption(args, 2, "--pawls", DEFAULT_PAWLS),
+                            option(args, 2, "--notches", DEFAULT_NOTCHES),
+                            longOption(args, 2, "--seed", 0));
+                break;
+            case "input":
+                options(args, 3, "--bytes", "--settings", "--min", "--max",
+                        "--seed");
+                writeInput(Main.readConfig(new File(args[1])),
+                           new File(args[2]),
+                           longOption(args, 3, "--bytes", DEFAULT_BYTES),
+                           option(args, 3, "--settings", DEFAULT_SETTINGS),
+                           intOption(args, 3, "--min", 1),
+                           intOption(args, 3, "--max", DEFAULT_MAX),
+                           longOption(args, 3, "--seed", 0));
+                break;
+            case "soak":
+                options(args, 3, "--repeat", "--interval");
+                soak(Main.readConfig(new File(args[1])), new File(args[2]),
+                     intOption(args, 3, "--repeat", 1),
+                     longOption(args, 3, "--interval", DEFAULT_INTERVAL),
+                     System.out);
+                break;
+            default:
+                throw error("unknown command %s", args[0]);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Check that ARGS from FROM on are pairs of one of ALLOWED and a
+     *  value. */
+    private static void options(String[] args, int from, String... allowed) {
+        if ((args.length - from) % 2 != 0) {
+            throw error("missing value for %s", args[args.length - 1]);
+        }
+        for (int i = from; i < args.length; i += 2) {
+            if (!List.of(allowed).contains(args[i])) {
+                throw error("unknown option %s", args[i]);
+            }
+        }
+    }
+
+    /** Return the value of option NAME in ARGS from FROM on, or DEFLT. */
+    private static double option(String[] args, int from, String name,
+                                 double deflt) {
+        for (int i = from; i + 1 < args.length; i += 2) {
+            if (args[i].equals(name)) {
+                try {
+                    double result = Double.parseDouble(args[i + 1]);
+                    if (result >= 0) {
+                        return result;
+                    }
+                } catch (NumberFormatException excp) {
+                    /* Fall through. */
+                }
+                throw error("bad value for %s: %s", name, args[i + 1]);
+            }
+        }
+        return deflt;
+    }
+
+    /** Return the value of the whole-number option NAME in ARGS from FROM
+     *  on, or DEFLT.  It is parsed exactly, so that, for example, seeds
+     *  above 2**53 are not rounded. */
+    private static long longOption(String[] args, int from, String name,
+                                   long deflt) {
+        for (int i = from; i + 1 < args.length; i += 2) {
+            if (args[i].equals(name)) {
+                try {
+                    long result = Long.parseLong(args[i + 1]);
+                    if (result >= 0) {
+                        return result;
+                    }
+                } catch (NumberFormatException excp) {
+                    /* Fall through. */
+                }
+                throw error("bad value for %s: %s", name, args[i + 1]);
+            }
+        }
+        return deflt;
+    }
+
+    /** As for longOption, for an option NAME whose value must fit in an
+     *  int. */
+    private static int intOption(String[] args, int from, String name,
+                                 int deflt) {
+        long result = longOption(args, from, name, deflt);
+        if (result > Integer.MAX_VALUE) {
+            throw error("bad value for %s: %d", name, result);
+        }
+        return (int) result;
+    }
+
+    /** Return an alphabet of SIZE characters that the default character
+     *  set can encode, as for alphabet(SIZE, Charset.defaultCharset()).
+     *  Configurations and inputs are written and read in that set. */
+    static String alphabet(int size) {
+        return alphabet(size, Charset.defaultCharset());
+    }
+
+    /** Return an alphabet of SIZE characters, starting with the upper-
+     *  and lower-case Latin letters and the digits, then other letters
+     *  that CHARSET can encode, then ASCII punctuation.  None is
+     *  whitespace or has a meaning in configurations or inputs. */
+    static String alphabet(int size, Charset charset) {
+        CharsetEncoder encoder = charset.newEncoder();
+        StringBuilder result = new StringBuilder();
+        for (char c = 'A'; c <= 'Z'; c++) {
+            result.append(c);
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            result.append(c);
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            result.append(c);
+        }
+        for (char c = FIRST_EXTRA;
+             result.length() < size && c < Character.MAX_VALUE; c++) {
+            if (Character.isLetter(c) && !Character.isSurrogate(c)
+                && encoder.canEncode(c)) {
+                result.append(c);
+            }
+        }
+        for (char c = '!'; result.length() < size && c <= '~'; c++) {
+            if (!Character.isLetterOrDigit(c) && RESERVED.indexOf(c) < 0) {
+                result.append(c);
+            }
+        }
+        if (result.length() < size) {
+            throw error("alphabet too large for %s: %d", charset, size);
+        }
+        return result.substring(0, size);
+    }
+
+    /** Write to FILE a configuration with an alphabet of SIZE characters,
+     *  ROTORS rotors, SLOTS slots and PAWLS pawls, in which each position
+     *  of a moving rotor is a notch with probability NOTCHES, chosen
+     *  using SEED. */
+    static void writeConfig(File file, int size, int rotors, int slots,
+                            int pawls, double notches, long seed) {
+        int reflectors = Math.max(1, rotors / REFLECTOR_SHARE);
+        int fixed = Math.max(slots - 1 - pawls, (rotors - reflectors) / 2
+                             - pawls);
+        int moving = rotors - reflectors - fixed;
+        if (size < 2 || slots < 2 || pawls < 1 || pawls >= slots
+            || moving < pawls || fixed < slots - 1 - pawls) {
+            throw error("cannot make a configuration with those sizes");
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        String chars = alphabet(size);
+        try (Writer out = writer(file)) {
+            out.write(chars + "\n");
+            out.write(slots + " " + pawls + "\n");
+            for (int i = 0; i < rotors; i++) {
+                StringBuilder line = new StringBuilder(" ");
+                int[] map;
+                if (i < reflectors) {
+                    line.append(REFLECTOR).append(i).append(" R");
+                    map = involution(size, random);
+                } else if (i < reflectors + fixed) {
+                    line.append(FIXED).append(i).append(" N");
+                    map = permutation(size, random);
+                } else {
+                    line.append(MOVING).append(i).append(" M");
+                    int start = line.length();
+                    for (int c = 0; c < size; c++) {
+                        if (random.nextDouble() < notches) {
+                            line.append(chars.charAt(c));
+                        }
+                    }
+                    if (line.length() == start) {
+                        line.append(chars.charAt(random.nextInt(size)));
+                    }
+                    map = permutation(size, random);
+                }
+                line.append(' ').append(cycles(map, chars)).append('\n');
+                out.write(line.toString());
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Return a random permutation of 0 .. N-1 chosen using RANDOM. */
+    private static int[] permutation(int n, SplittableRandom random) {
+        int[] result = new int[n];
+        for (int k = 0; k < n; k++) {
+            int j = random.nextInt(k + 1);
+            result[k] = result[j];
+            result[j] = k;
+        }
+        return result;
+    }
+
+    /** Return a random permutation of 0 .. N-1 made of swaps, with at
+     *  most one fixed point, chosen using RANDOM. */
+    private static int[] involution(int n, SplittableRandom random) {
+        int[] order = permutation(n, random);
+        int[] result = new int[n];
+        for (int k = 0; k + 1 < n; k += 2) {
+            result[order[k]] = order[k + 1];
+            result[order[k + 1]] = order[k];
+        }
+        if (n % 2 == 1) {
+            result[order[n - 1]] = order[n - 1];
+        }
+        return result;
+    }
+
+    /** Return MAP in cycle notation over the characters CHARS, leaving
+     *  out fixed points. */
+    private static String cycles(int[] map, String chars) {
+        StringBuilder result = new StringBuilder();
+        boolean[] seen = new boolean[map.length];
+        for (int i = 0; i < map.length; i++) {
+            if (!seen[i] && map[i] != i) {
+                result.append('(');
+                for (int j = i; !seen[j]; j = map[j]) {
+                    seen[j] = true;
+                    result.append(chars.charAt(j));
+                }
+                result.append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Write to FILE about BYTES bytes of input for CONFIG, in which each
+     *  line after the first settings line is a settings line with
+     *  probability SETTINGS, and otherwise a message of MIN to MAX
+     *  characters, chosen using SEED. */
+    static void writeInput(MachineConfig config, File file, long bytes,
+                           double settings, int min, int max, long seed) {
+        if (min > max) {
+            throw error("minimum message length exceeds maximum");
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        Kinds kinds = new Kinds(config);
+        Alphabet alphabet = config.alphabet();
+        Charset charset = Charset.defaultCharset();
+        try (OutputStream out = new BufferedOutputStream(
+                 new FileOutputStream(file), BUFFER_SIZE)) {
+            StringBuilder line = new StringBuilder();
+            for (long written = 0; written == 0 || written < bytes; ) {
+                line.setLength(0);
+                if (written == 0 || random.nextDouble() < settings) {
+                    kinds.settingsLine(line, random);
+                } else {
+                    int length = min + random.nextInt(max - min + 1);
+                    for (int i = 0; i < length; i++) {
+                        if (i > 0 && i % GROUP == 0) {
+                            line.append(' ');
+                        }
+                        line.append(alphabet.toChar(
+                            random.nextInt(alphabet.size())));
+                    }
+                }
+                byte[] encoded = line.append('\n').toString()
+                    .getBytes(charset);
+                out.write(encoded);
+                written += encoded.length;
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** The names of the rotors of a configuration, by kind, for writing
+     *  settings lines. */
+    private static class Kinds {
+
+        /** The kinds of the rotors of CONFIG. */
+        Kinds(MachineConfig config) {
+            _config = config;
+            RotorArena arena = config.arena();
+            for (String name : config.rotorNames()) {
+                char kind = arena != null ? arena.type(arena.index(name))
+                    : config.spec(name).type();
+                (kind == 'M' ? _moving : kind == 'N' ? _fixed
+                 : _reflectors).add(name);
+            }
+            int slots = config.numRotors(), pawls = config.numPawls();
+            if (_reflectors.isEmpty() || _moving.size() < pawls
+                || _fixed.size() < slots - 1 - pawls) {
+                throw error("configuration has too few rotors of some kind");
+            }
+        }
+
+        /** Append a random valid settings line to LINE using RANDOM. */
+        void settingsLine(StringBuilder line, SplittableRandom random) {
+            Alphabet alphabet = _config.alphabet();
+            int slots = _config.numRotors(), pawls = _config.numPawls();
+            line.append("* ").append(pick(_reflectors, 1, random).get(0));
+            for (String name : pick(_fixed, slots - 1 - pawls, random)) {
+                line.append(' ').append(name);
+            }
+            for (String name : pick(_moving, pawls, random)) {
+                line.append(' ').append(name);
+            }
+            int rings = random.nextBoolean() ? 2 : 1;
+            for (int r = 0; r < rings; r++) {
+                line.append(' ');
+                for (int k = 1; k < slots; k++) {
+                    line.append(alphabet.toChar(
+                        random.nextInt(alphabet.size())));
+                }
+            }
+            int[] order = permutation(alphabet.size(), random);
+            int pairs = random.nextInt(Math.min(MAX_PLUGS,
+                                                alphabet.size() / 2) + 1);
+            for (int p = 0; p < pairs; p++) {
+                line.append(" (").append(alphabet.toChar(order[2 * p]))
+                    .append(alphabet.toChar(order[2 * p + 1])).append(')');
+            }
+        }
+
+        /** Return N distinct names from NAMES chosen using RANDOM. */
+        private static List<String> pick(List<String> names, int n,
+                                         SplittableRandom random) {
+            ArrayList<String> result = new ArrayList<>();
+            while (result.size() < n) {
+                String name = names.get(random.nextInt(names.size()));
+                if (!result.contains(name)) {
+                    result.add(name);
+                }
+            }
+            return result;
+        }
+
+        /** The configuration. */
+        private final MachineConfig _config;
+        /** The names of the reflectors, fixed and moving rotors. */
+        private final ArrayList<String> _reflectors = new ArrayList<>(),
+            _fixed = new ArrayList<>(), _moving = new ArrayList<>();
+    }
+
+    /** Run Main with CONFIG on INPUT REPEAT times, discarding the output,
+     *  and report the bytes of output and their rate to REPORT every
+     *  INTERVAL milliseconds and, once the reports have stopped, at the
+     *  end. */
+    static void soak(MachineConfig config, File input, int repeat,
+                     long interval, PrintStream report) {
+        CountingStream sink =
+            new CountingStream(OutputStream.nullOutputStream());
+        PrintStream output = new PrintStream(sink, false);
+        long start = System.nanoTime();
+        AtomicLong lastCount = new AtomicLong();
+        Thread sampler = new Thread(() -> {
+            long last = start;
+            try {
+                while (true) {
+                    Thread.sleep(Math.max(1, interval));
+                    long now = System.nanoTime();
+                    long count = sink.count();
+                    report.printf("%.1f s %d bytes %.2f MB/s%n",
+                                  (now - start) / NANOS_PER_SECOND, count,
+                                  (count - lastCount.getAndSet(count))
+                                  / MEGA / ((now - last) / NANOS_PER_SECOND));
+                    last = now;
+                }
+            } catch (InterruptedException excp) {
+                return;
+            }
+        });
+        sampler.setDaemon(true);
+        sampler.start();
+        try {
+            for (int r = 0; r < repeat; r++) {
+                try (Scanner in = new Scanner(new FileInputStream(input),
+                                              Charset.defaultCharset())) {
+                    new Main(config, in, output).process();
+                } catch (IOException excp) {
+                    throw error("could not open %s", input);
+                }
+                output.flush();
+            }
+        } finally {
+            sampler.interrupt();
+            try {
+                sampler.join();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / NANOS_PER_SECOND;
+        report.printf("total %.1f s %d bytes %.2f MB/s%n", seconds,
+                      sink.count(), sink.count() / MEGA / seconds);
+    }
+
+    /** Return a writer to FILE in the default character set. */
+    private static Writer writer(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(file), Charset.defaultCharset()),
+            BUFFER_SIZE);
+    }
+
+    /** An output stream that counts the bytes written to it. */
+    private static class CountingStream extends OutputStream {
+
+        /** A stream writing to OUT. */
+        CountingStream(OutputStream out) {
+            _out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            _out.write(b);
+            _count += 1;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            _out.write(b, off, len);
+            _count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            _out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            _out.close();
+        }
+
+        /** Return the number of bytes written. */
+        long count() {
+            return _count;
+        }
+
+        /** The stream written to. */
+        private final OutputStream _out;
+        /** The number of bytes written. */
+        private volatile long _count;
+    }
+
+    /** Name prefixes of generated reflectors, fixed and moving rotors. */
+    static final String REFLECTOR = "R", FIXED = "F", MOVING = "M";
+    /** One in this many rotors is a reflector. */
+    private static final int REFLECTOR_SHARE = 6;
+    /** Characters with a meaning in configurations or inputs. */
+    private static final String RESERVED = "()*";
+    /** The first character tried after the Latin letters and digits. */
+    private static final char FIRST_EXTRA = '\u00c0';
+    /** Default sizes. */
+    private static final int DEFAULT_SIZE = 26, DEFAULT_ROTORS = 12,
+        DEFAULT_SLOTS = 5, DEFAULT_PAWLS = 3, DEFAULT_MAX = 200;
+    /** Default notch probability. */
+    private static final double DEFAULT_NOTCHES = 0.1;
+    /** Default input size. */
+    private static final long DEFAULT_BYTES = 1 << 20;
+    /** Default probability of a settings line. */
+    private static final double DEFAULT_SETTINGS = 0.01;
+    /** Default soak reporting interval, in milliseconds. */
+    private static final long DEFAULT_INTERVAL = 1000;
+    /** The most plugboard pairs in a generated settings line. */
+    private static final int MAX_PLUGS = 10;
+    /** Characters per group in generated messages. */
+    private static final int GROUP = 5;
+    /** Size of output buffers. */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** Nanoseconds per second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+    /** Bytes per megabyte. */
+    private static final double MEGA = 1 << 20;
+}
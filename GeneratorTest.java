@@ -0,0 +1,91 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Scanner;
+
+/** The suite of all JUnit tests for the Generator class.
+ *  @author Ryan Chen
+ */
+public class GeneratorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void generatedInputRuns() throws IOException {
+        File config = File.createTempFile("enigma", ".conf");
+        File input = File.createTempFile("enigma", ".in");
+        File again = File.createTempFile("enigma", ".in");
+        try {
+            Generator.writeConfig(config, 70, 20, 6, 4, 0.2, 39);
+            MachineConfig parsed = Main.readConfig(config);
+            assertEquals(70, parsed.alphabet().size());
+            assertEquals(20, parsed.rotorNames().size());
+            assertEquals(6, parsed.numRotors());
+            assertEquals(4, parsed.numPawls());
+
+            Generator.writeInput(parsed, input, 100000, 0.05, 0, 80, 40);
+            Generator.writeInput(parsed, again, 100000, 0.05, 0, 80, 40);
+            byte[] bytes = Files.readAllBytes(input.toPath());
+            assertTrue(bytes.length >= 100000 && bytes.length < 101000);
+            assertArrayEquals(bytes, Files.readAllBytes(again.toPath()));
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            new Main(parsed, new Scanner(input), new PrintStream(output))
+                .process();
+            assertTrue(output.size() > 0);
+        } finally {
+            config.delete();
+            input.delete();
+            again.delete();
+        }
+    }
+
+    @Test
+    public void alphabets() {
+        assertEquals("ABC", Generator.alphabet(3));
+        String large = Generator.alphabet(1000, StandardCharsets.UTF_8);
+        assertEquals(1000, large.length());
+        assertEquals(1000, large.chars().distinct().count());
+        new Alphabet(large);
+        String ascii = Generator.alphabet(80, StandardCharsets.US_ASCII);
+        assertEquals(80, ascii.chars().distinct().count());
+        assertTrue(StandardCharsets.US_ASCII.newEncoder().canEncode(ascii));
+        assertEquals(-1, ascii.indexOf('('));
+        assertEquals(-1, ascii.indexOf('*'));
+    }
+
+    @Test
+    public void soakReportsLast() throws IOException {
+        File config = File.createTempFile("enigma", ".conf");
+        File input = File.createTempFile("enigma", ".in");
+        try {
+            Generator.writeConfig(config, 26, 8, 5, 3, 0.1, 3);
+            MachineConfig parsed = Main.readConfig(config);
+            Generator.writeInput(parsed, input, 20000, 0.05, 1, 80, 4);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            PrintStream report = new PrintStream(bytes, true);
+            Generator.soak(parsed, input, 20, 1, report);
+            String[] lines = bytes.toString().split("\n");
+            String last = lines[lines.length - 1];
+            assertTrue(last, last.startsWith("total "));
+            assertTrue(last, last.contains(" bytes "));
+        } finally {
+            config.delete();
+            input.delete();
+        }
+    }
+}
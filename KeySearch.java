@@ -0,0 +1,636 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static enigma.EnigmaException.*;
+
+/** Exhaustive search of a key space (see KeySpace) for the keys that
+ *  best decrypt a ciphertext, spread over several worker processes on
+ *  one host.  A key is scored by the number of letters of a known crib
+ *  it reproduces at the crib's offset in the message (by default the
+ *  start; see CribFinder for finding offsets) if a crib is given, and by
+ *  the index of coincidence of its decryption otherwise.
+ *
+ *  The coordinator splits the keys into units (ranges of key numbers),
+ *  listens on a loopback socket, and starts the workers, each of which
+ *  is this class run with --worker PORT and the same search arguments.
+ *  Each worker repeatedly asks for a unit, searches it, and sends back
+ *  the best keys it found.  A unit held by a worker whose connection
+ *  drops (because the process died), or that has not reported on its
+ *  unit within the deadline (because it hung, in which case it is
+ *  killed), goes back to the queue, and a replacement worker is started,
+ *  so the search finishes as long as workers do not keep failing.  Each
+ *  worker names itself (by its process id) when it asks for work, so
+ *  that the coordinator knows which one to kill.  The coordinator
+ *  merges the results.
+ *
+ *  Usage: java enigma.KeySearch CONFIG CIPHER [--slots S] [--plugboard P]
+ *  [--crib C] [--crib-offset D] [--workers N] [--units U] [--top K]
+ *  [--deadline T].
+ *  CIPHER is a file of ciphertext; characters not in the alphabet are
+ *  ignored.  S gives the rotors allowed in each slot, as comma-separated
+ *  names, with slots separated by colons (for example, B,C:Beta,Gamma:
+ *  I,II,III:I,II,III:I,II,III); by default any rotor may go in any slot.
+ *  P is a plugboard (default none).  T is the most seconds a worker may
+ *  spend on one unit (default 600; 0 for no limit).  With --workers 0
+ *  the search runs in this process.
+ *  @author Ryan Chen
+ */
+final class KeySearch {
+
+    /** Run a search, or a worker, as described by ARGS (see the class
+     *  comment), printing the best keys found on the standard output. */
+    public static void main(String... args) {
+        try {
+            if (args.length > 1 && args[0].equals(WORKER_OPTION)) {
+                int port = number(args[1]);
+                work(port, ProcessHandle.current().pid(),
+                     parse(Arrays.copyOfRange(args, 2, args.length)));
+                return;
+            }
+            KeySearch search = parse(args);
+            List<Result> best;
+            if (search._workers == 0) {
+                best = search.search(0, search.space().size(), search._top);
+            } else {
+                best = search.coordinate(new ProcessLauncher(args),
+                                         search._workers, search._units,
+                                         search._top, search._deadline);
+            }
+            print(best, System.out);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the search described by ARGS (see the class comment). */
+    static KeySearch parse(String[] args) {
+        if (args.length < 2 || args.length % 2 != 0) {
+            throw error("Usage: java enigma.KeySearch CONFIG CIPHER "
+                        + "[--slots S] [--plugboard P] [--crib C] "
+                        + "[--crib-offset D] [--workers N] [--units U] "
+                        + "[--top K] [--deadline T]");
+        }
+        MachineConfig config = Main.readConfig(new File(args[0]));
+        String cipher;
+        try {
+            cipher = new String(Files.readAllBytes(new File(args[1]).toPath()),
+                                StandardCharsets.UTF_8);
+        } catch (IOException excp) {
+            throw error("could not read %s", args[1]);
+        }
+        String slots = null, plugboard = "", crib = "";
+        int workers = Runtime.getRuntime().availableProcessors();
+        int units = -1, top = DEFAULT_TOP, cribOffset = 0;
+        int deadline = DEFAULT_DEADLINE_SECONDS * MILLIS_PER_SECOND;
+        for (int i = 2; i < args.length; i += 2) {
+            switch (args[i]) {
+            case "--slots":
+                slots = args[i + 1];
+                break;
+            case "--plugboard":
+                plugboard = args[i + 1];
+                break;
+            case "--crib":
+                crib = args[i + 1];
+                break;
+            case "--crib-offset":
+                cribOffset = number(args[i + 1]);
+                break;
+            case "--workers":
+                workers = number(args[i + 1]);
+                break;
+            case "--units":
+                units = Math.max(1, number(args[i + 1]));
+                break;
+            case "--top":
+                top = Math.max(1, number(args[i + 1]));
+                break;
+            case "--deadline":
+                deadline = (int) Math.min(Integer.MAX_VALUE,
+                                          (long) MILLIS_PER_SECOND
+                                          * number(args[i + 1]));
+                break;
+            default:
+                throw error("unknown option %s", args[i]);
+            }
+        }
+        KeySearch result = new KeySearch(config, choices(config, slots),
+                                         plugboard, cipher, crib,
+                                         cribOffset);
+        result._workers = workers;
+        result._units = units < 0 ? Math.max(1, UNITS_PER_WORKER * workers)
+            : units;
+        result._top = top;
+        result._deadline = deadline;
+        return result;
+    }
+
+    /** Return the rotor choices for each slot of CONFIG described by
+     *  SLOTS (see the class comment), or every rotor for every slot if
+     *  SLOTS is null. */
+    private static String[][] choices(MachineConfig config, String slots) {
+        String[][] result;
+        if (slots == null) {
+            result = new String[config.numRotors()][];
+            Arrays.fill(result, config.rotorNames().toArray(new String[0]));
+        } else {
+            String[] parts = slots.split(":");
+            result = new String[parts.length][];
+            for (int k = 0; k < parts.length; k++) {
+                result[k] = parts[k].split(",");
+            }
+        }
+        return result;
+    }
+
+    /** Return the non-negative number NUM. */
+    private static int number(String num) {
+        try {
+            int result = Integer.parseInt(num);
+            if (result >= 0) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through. */
+        }
+        throw error("bad number: %s", num);
+    }
+
+    /** A search of the keys of machines described by CONFIG with the
+     *  rotors allowed by CHOICES (as for KeySpace) and plugboard
+     *  PLUGBOARD, for the best decryptions of CIPHER, scored against CRIB
+     *  if it is not empty. */
+    KeySearch(MachineConfig config, String[][] choices, String plugboard,
+              String cipher, String crib) {
+        this(config, choices, plugboard, cipher, crib, 0);
+    }
+
+    /** As for KeySearch(CONFIG, CHOICES, PLUGBOARD, CIPHER, CRIB), but
+     *  with CRIB lying CRIBOFFSET characters into CIPHER (as found by
+     *  CribFinder). */
+    KeySearch(MachineConfig config, String[][] choices, String plugboard,
+              String cipher, String crib, int cribOffset) {
+        _space = new KeySpace(config, choices, plugboard);
+        Alphabet alphabet = config.alphabet();
+        _cipher = indices(cipher, alphabet);
+        _crib = indices(crib, alphabet);
+        _cribOffset = cribOffset;
+        _size = alphabet.size();
+        if (cribOffset + _crib.length > _cipher.length) {
+            throw error("crib runs past the end of the ciphertext");
+        }
+    }
+
+    /** Return the alphabet indices of the characters of TEXT that are in
+     *  ALPHABET. */
+    private static int[] indices(String text, Alphabet alphabet) {
+        int[] result = new int[text.length()];
+        int n = 0;
+        for (int i = 0; i < text.length(); i++) {
+            int c = alphabet.toInt(text.charAt(i));
+            if (c >= 0) {
+                result[n++] = c;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Return my key space. */
+    KeySpace space() {
+        return _space;
+    }
+
+    /** Return the TOP best keys numbered FROM .. TO-1, best first. */
+    List<Result> search(long from, long to, int top) {
+        Best best = new Best(top);
+        KeySpace.Cursor cursor = _space.cursor(from, to);
+        int length = _crib.length > 0 ? _cribOffset + _crib.length
+            : _cipher.length;
+        int[] plain = new int[length];
+        int[] counts = new int[_size];
+        while (cursor.next()) {
+            cursor.decrypt(_cipher, length, plain);
+            double score = score(plain, counts);
+            if (score >= best.threshold()) {
+                best.offer(new Result(score, cursor.rank(),
+                                      cursor.settings()));
+            }
+        }
+        return best.sorted();
+    }
+
+    /** Return the score of the decryption PLAIN, using COUNTS as scratch
+     *  space: the number of letters of my crib it matches if I have one,
+     *  and its index of coincidence otherwise. */
+    private double score(int[] plain, int[] counts) {
+        if (_crib.length > 0) {
+            int result = 0;
+            for (int i = 0; i < _crib.length; i++) {
+                if (plain[_cribOffset + i] == _crib[i]) {
+                    result += 1;
+                }
+            }
+            return result;
+        }
+        Arrays.fill(counts, 0);
+        for (int c : plain) {
+            counts[c] += 1;
+        }
+        long pairs = 0;
+        for (int count : counts) {
+            pairs += (long) count * (count - 1);
+        }
+        long n = plain.length;
+        return n < 2 ? 0 : (double) pairs / (n * (n - 1));
+    }
+
+    /** Search my key space in UNITS units with WORKERS workers started
+     *  by LAUNCHER, returning the TOP best keys, best first.  A worker that
+     *  takes more than DEADLINE milliseconds (if positive) over a unit is
+     *  presumed hung: it is killed, its unit is requeued and a
+     *  replacement started. */
+    List<Result> coordinate(Launcher launcher, int workers, int units,
+                            int top, int deadline) {
+        long total = _space.size();
+        units = (int) Math.min(units, Math.max(1, total));
+        workers = Math.max(1, workers);
+        LinkedBlockingDeque<long[]> queue = new LinkedBlockingDeque<>();
+        for (int u = 0; u < units; u++) {
+            queue.add(new long[] {
+                u, total / units * u + Math.min(u, total % units),
+                total / units * (u + 1) + Math.min(u + 1, total % units) });
+        }
+        Best best = new Best(top);
+        AtomicInteger remaining = new AtomicInteger(units);
+        int restarts = 0;
+        try (ServerSocket server = new ServerSocket(
+                 0, 0, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(POLL_MILLIS);
+            for (int w = 0; w < workers; w++) {
+                launcher.launch(server.getLocalPort());
+            }
+            while (remaining.get() > 0) {
+                try {
+                    Socket socket = server.accept();
+                    socket.setSoTimeout(deadline);
+                    Thread handler = new Thread(
+                        () -> serve(socket, launcher, queue, remaining,
+                                    best));
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (SocketTimeoutException excp) {
+                    /* Check on the workers below. */
+                }
+                int missing = workers - launcher.alive();
+                for (; missing > 0 && remaining.get() > 0; missing -= 1) {
+                    if (restarts == MAX_RESTARTS) {
+                        throw error("workers keep failing; giving up");
+                    }
+                    restarts += 1;
+                    launcher.launch(server.getLocalPort());
+                }
+            }
+        } catch (IOException excp) {
+            throw error("coordinator failed: %s", excp.getMessage());
+        } finally {
+            launcher.stop();
+        }
+        return best.sorted();
+    }
+
+    /** Hand units from QUEUE to the worker on SOCKET until none remain,
+     *  offering its results to BEST and counting down REMAINING as each
+     *  unit finishes.  If the worker goes away, or a read from SOCKET
+     *  times out, the unit it holds goes back on QUEUE; in the second case
+     *  the worker is presumed hung, and killed through LAUNCHER. */
+    private void serve(Socket socket, Launcher launcher,
+                       LinkedBlockingDeque<long[]> queue,
+                       AtomicInteger remaining, Best best) {
+        long[] unit = null;
+        long id = -1;
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(
+                 s.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                 s.getOutputStream(), StandardCharsets.UTF_8), true)) {
+            while (true) {
+                String ready = in.readLine();
+                if (ready == null || !ready.startsWith(READY + " ")) {
+                    return;
+                }
+                id = Long.parseLong(ready.substring(READY.length() + 1));
+                while (unit == null && remaining.get() > 0) {
+                    unit = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                if (unit == null) {
+                    out.println(DONE);
+                    return;
+                }
+                out.printf("%s %d %d %d%n", UNIT, unit[0], unit[1], unit[2]);
+                String header = in.readLine();
+                if (header == null) {
+                    break;
+                }
+                String[] fields = header.split(" ");
+                int count = Integer.parseInt(fields[2]);
+                ArrayList<Result> results = new ArrayList<>();
+                for (int i = 0; i < count; i++) {
+                    String line = in.readLine();
+                    if (line == null) {
+                        break;
+                    }
+                    results.add(Result.parse(line));
+                }
+                if (results.size() < count) {
+                    break;
+                }
+                for (Result r : results) {
+                    best.offer(r);
+                }
+                unit = null;
+                remaining.decrementAndGet();
+            }
+        } catch (SocketTimeoutException excp) {
+            if (id >= 0) {
+                launcher.kill(id);
+            }
+        } catch (IOException | RuntimeException excp) {
+            /* The worker is gone; its unit is requeued below. */
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (unit != null) {
+                queue.addFirst(unit);
+            }
+        }
+    }
+
+    /** Act as a worker named ID (see Launcher.kill) for the coordinator
+     *  listening on loopback port PORT, searching with SEARCH until told
+     *  there is no more work. */
+    static void work(int port, long id, KeySearch search) {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                        port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(
+                 socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                 socket.getOutputStream(), StandardCharsets.UTF_8), true)) {
+            while (true) {
+                out.println(READY + " " + id);
+                String line = in.readLine();
+                if (line == null || !line.startsWith(UNIT)) {
+                    return;
+                }
+                String[] fields = line.split(" ");
+                List<Result> best = search.search(Long.parseLong(fields[2]),
+                                                  Long.parseLong(fields[3]),
+                                                  search._top);
+                StringBuilder reply = new StringBuilder();
+                reply.append(RESULT).append(' ').append(fields[1])
+                    .append(' ').append(best.size()).append('\n');
+                for (Result r : best) {
+                    reply.append(r).append('\n');
+                }
+                out.print(reply);
+                out.flush();
+            }
+        } catch (IOException excp) {
+            throw error("worker lost its coordinator: %s", excp.getMessage());
+        }
+    }
+
+    /** Print RESULTS to OUT, one per line: score, key number and
+     *  settings line. */
+    static void print(List<Result> results, PrintStream out) {
+        for (Result r : results) {
+            out.printf("%.4f %d %s%n", r.score(), r.rank(), r.settings());
+        }
+    }
+
+    /** Starts worker processes. */
+    interface Launcher {
+        /** Start a worker for the coordinator on loopback port PORT. */
+        void launch(int port) throws IOException;
+
+        /** Return the number of workers started that are still running,
+         *  not counting any that have been killed. */
+        int alive();
+
+        /** Kill the worker named ID (for a process, its process id), if
+         *  it is still running. */
+        void kill(long id);
+
+        /** Stop any workers still running. */
+        void stop();
+    }
+
+    /** A Launcher that runs each worker as a new JVM with this one's
+     *  class path. */
+    static class ProcessLauncher implements Launcher {
+
+        /** A launcher of workers for the search described by ARGS. */
+        ProcessLauncher(String[] args) {
+            _args = args;
+        }
+
+        @Override
+        public synchronized void launch(int port) throws IOException {
+            ArrayList<String> command = new ArrayList<>();
+            command.add(new File(System.getProperty("java.home"), "bin/java")
+                        .getPath());
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(KeySearch.class.getName());
+            command.add(WORKER_OPTION);
+            command.add(Integer.toString(port));
+            command.addAll(Arrays.asList(_args));
+            _processes.add(new ProcessBuilder(command)
+                           .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                           .redirectError(ProcessBuilder.Redirect.INHERIT)
+                           .start());
+        }
+
+        @Override
+        public synchronized int alive() {
+            _processes.removeIf(p -> !p.isAlive());
+            return _processes.size();
+        }
+
+        @Override
+        public synchronized void kill(long id) {
+            _processes.removeIf(p -> {
+                if (p.pid() != id) {
+                    return false;
+                }
+                p.destroyForcibly();
+                return true;
+            });
+        }
+
+        @Override
+        public synchronized void stop() {
+            for (Process p : _processes) {
+                p.destroy();
+            }
+        }
+
+        /** The search arguments. */
+        private final String[] _args;
+        /** The workers started. */
+        private final ArrayList<Process> _processes = new ArrayList<>();
+    }
+
+    /** A scored key. */
+    static class Result {
+
+        /** The key numbered RANK, with settings line SETTINGS, scoring
+         *  SCORE. */
+        Result(double score, long rank, String settings) {
+            _score = score;
+            _rank = rank;
+            _settings = settings;
+        }
+
+        /** Return the result written as LINE by toString. */
+        static Result parse(String line) {
+            String[] fields = line.split(" ", 3);
+            return new Result(Double.parseDouble(fields[0]),
+                              Long.parseLong(fields[1]), fields[2]);
+        }
+
+        /** Return my score. */
+        double score() {
+            return _score;
+        }
+
+        /** Return my key number. */
+        long rank() {
+            return _rank;
+        }
+
+        /** Return my settings line. */
+        String settings() {
+            return _settings;
+        }
+
+        @Override
+        public String toString() {
+            return _score + " " + _rank + " " + _settings;
+        }
+
+        /** The score. */
+        private final double _score;
+        /** The key number. */
+        private final long _rank;
+        /** The settings line. */
+        private final String _settings;
+    }
+
+    /** The K best results offered to it, from any number of threads.
+     *  Equal scores are ordered by key number, so that the results do
+     *  not depend on how the work was divided. */
+    static class Best {
+
+        /** An empty collection keeping the best K results. */
+        Best(int k) {
+            _k = k;
+        }
+
+        /** Return a score that a result must at least reach to be kept. */
+        double threshold() {
+            return _threshold;
+        }
+
+        /** Keep RESULT if it is among the best so far. */
+        synchronized void offer(Result result) {
+            _heap.add(result);
+            if (_heap.size() > _k) {
+                _heap.poll();
+            }
+            if (_heap.size() == _k) {
+                _threshold = _heap.peek().score();
+            }
+        }
+
+        /** Return the results kept, best first. */
+        synchronized List<Result> sorted() {
+            Result[] result = _heap.toArray(new Result[0]);
+            Arrays.sort(result, WORST_FIRST.reversed());
+            return Arrays.asList(result);
+        }
+
+        /** The number of results kept. */
+        private final int _k;
+        /** The kept results, worst first. */
+        private final PriorityQueue<Result> _heap =
+            new PriorityQueue<>(WORST_FIRST);
+        /** The score of the worst kept result once there are K. */
+        private volatile double _threshold = Double.NEGATIVE_INFINITY;
+    }
+
+    /** Orders results from worst to best. */
+    private static final Comparator<Result> WORST_FIRST =
+        (x, y) -> x.score() != y.score() ? Double.compare(x.score(), y.score())
+            : Long.compare(y.rank(), x.rank());
+
+    /** The keys searched. */
+    private final KeySpace _space;
+    /** The ciphertext, as alphabet indices. */
+    private final int[] _cipher;
+    /** The crib, as alphabet indices, or empty. */
+    private final int[] _crib;
+    /** The offset of the crib in the ciphertext. */
+    private final int _cribOffset;
+    /** The alphabet size. */
+    private final int _size;
+    /** The number of workers. */
+    private int _workers = 1;
+    /** The number of units the keys are divided into. */
+    private int _units = 1;
+    /** The number of results kept. */
+    private int _top = DEFAULT_TOP;
+    /** The most milliseconds a worker may spend on one unit, or 0. */
+    private int _deadline = DEFAULT_DEADLINE_SECONDS * MILLIS_PER_SECOND;
+
+    /** Argument that makes this process a worker. */
+    static final String WORKER_OPTION = "--worker";
+    /** Protocol messages. */
+    private static final String READY = "READY", UNIT = "UNIT",
+        RESULT = "RESULT", DONE = "DONE";
+    /** Default number of results reported. */
+    static final int DEFAULT_TOP = 10;
+    /** Default number of units per worker. */
+    static final int UNITS_PER_WORKER = 16;
+    /** How long the coordinator waits for events before checking on its
+     *  workers, in milliseconds. */
+    private static final int POLL_MILLIS = 200;
+    /** Default limit on the time spent on one unit, in seconds. */
+    static final int DEFAULT_DEADLINE_SECONDS = 600;
+    /** Milliseconds in a second. */
+    private static final int MILLIS_PER_SECOND = 1000;
+    /** The most workers started to replace ones that died or hung. */
+    private static final int MAX_RESTARTS = 16;
+}
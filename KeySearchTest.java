@@ -0,0 +1,194 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySearch class.
+ *  @author Ryan Chen
+ */
+public class KeySearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The plaintext. */
+    private static final String PLAIN =
+        "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOODMADEOFSLIDING";
+
+    /** The settings line that enciphers it. */
+    private static final String KEY = "* B I III II QEW";
+
+    /** Return a search for PLAIN enciphered under KEY, with CRIB. */
+    private KeySearch search(String crib) {
+        return search(crib, 0);
+    }
+
+    /** Return a search for PLAIN enciphered under KEY, with CRIB at
+     *  OFFSET. */
+    private KeySearch search(String crib, int offset) {
+        String cipher = machineFor(navalConfig(4, 3), KEY).convert(PLAIN);
+        return new KeySearch(navalConfig(4, 3), new String[][] {
+                { "B" }, { "I" }, { "II", "III" }, { "II", "III" } },
+            "", cipher, crib, offset);
+    }
+
+    /** A launcher that runs workers as threads of this process for
+     *  SEARCH, the first FAILURES of which take one unit and then drop
+     *  their connection, and the next HANGS of which take one unit and
+     *  then never answer, running until they are killed.  Each worker is
+     *  named by its position in the order started. */
+    private static class ThreadLauncher implements KeySearch.Launcher {
+
+        ThreadLauncher(KeySearch search, int failures, int hangs) {
+            _search = search;
+            _failures = failures;
+            _hangs = hangs;
+        }
+
+        @Override
+        public synchronized void launch(int port) {
+            Thread worker;
+            long id = _all.size();
+            if (_failures > 0) {
+                _failures -= 1;
+                worker = new Thread(() -> fail(port, id, false));
+            } else if (_hangs > 0) {
+                _hangs -= 1;
+                worker = new Thread(() -> fail(port, id, true));
+            } else {
+                worker = new Thread(() -> KeySearch.work(port, id, _search));
+            }
+            worker.setDaemon(true);
+            _all.add(worker);
+            _threads.add(worker);
+            worker.start();
+        }
+
+        /** As worker ID, ask the coordinator on PORT for a unit and then
+         *  vanish, or, if HANG, ignore it until killed. */
+        private void fail(int port, long id, boolean hang) {
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                            port)) {
+                socket.getOutputStream()
+                    .write(("READY " + id + "\n").getBytes());
+                InputStream in = socket.getInputStream();
+                while (in.read() != '\n') {
+                    continue;
+                }
+                if (!hang) {
+                    _dropped += 1;
+                    return;
+                }
+                _hung += 1;
+                while (true) {
+                    Thread.sleep(Long.MAX_VALUE);
+                }
+            } catch (IOException excp) {
+                return;
+            } catch (InterruptedException excp) {
+                _killed += 1;
+            }
+        }
+
+        @Override
+        public synchronized int alive() {
+            _threads.removeIf(t -> !t.isAlive());
+            return _threads.size();
+        }
+
+        @Override
+        public synchronized void kill(long id) {
+            Thread worker = _all.get((int) id);
+            worker.interrupt();
+            _threads.remove(worker);
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        private final KeySearch _search;
+        private int _failures;
+        private int _hangs;
+        private volatile int _dropped;
+        private volatile int _hung;
+        private volatile int _killed;
+        private final ArrayList<Thread> _all = new ArrayList<>();
+        private final ArrayList<Thread> _threads = new ArrayList<>();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void cribFindsKey() {
+        KeySearch search = search("FROMHISSHOULDER");
+        List<KeySearch.Result> best =
+            search.search(0, search.space().size(), 3);
+        assertEquals(KEY, best.get(0).settings());
+        assertEquals(15.0, best.get(0).score(), 0.0);
+        assertTrue(best.get(1).score() < 15.0);
+    }
+
+    @Test
+    public void cribAtOffsetFindsKey() {
+        KeySearch search = search("HIAWATHATOOK", 15);
+        List<KeySearch.Result> best =
+            search.search(0, search.space().size(), 3);
+        assertEquals(KEY, best.get(0).settings());
+        assertEquals(12.0, best.get(0).score(), 0.0);
+    }
+
+    @Test
+    public void coordinatorSurvivesDeadWorkers() {
+        KeySearch search = search("FROMHIS");
+        List<KeySearch.Result> local =
+            search.search(0, search.space().size(), 5);
+        assertEquals(KEY, local.get(0).settings());
+        ThreadLauncher launcher = new ThreadLauncher(search, 2, 0);
+        List<KeySearch.Result> merged =
+            search.coordinate(launcher, 3, 20, 5, 0);
+        assertEquals(2, launcher._dropped);
+        assertEquals(local.size(), merged.size());
+        for (int i = 0; i < local.size(); i++) {
+            assertEquals(local.get(i).toString(), merged.get(i).toString());
+        }
+    }
+
+    @Test
+    public void coordinatorRequeuesHungUnits() {
+        KeySearch search = search("FROMHIS");
+        List<KeySearch.Result> local =
+            search.search(0, search.space().size(), 5);
+        ThreadLauncher launcher = new ThreadLauncher(search, 0, 2);
+        List<KeySearch.Result> merged =
+            search.coordinate(launcher, 2, 20, 5, 2000);
+        assertEquals(2, launcher._hung);
+        for (Thread worker : launcher._all.subList(0, 2)) {
+            try {
+                worker.join(1000);
+            } catch (InterruptedException excp) {
+                fail("interrupted");
+            }
+            assertFalse(worker.isAlive());
+        }
+        assertEquals(2, launcher._killed);
+        assertEquals(local.size(), merged.size());
+        for (int i = 0; i < local.size(); i++) {
+            assertEquals(local.get(i).toString(), merged.get(i).toString());
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** A space of machine keys to be searched: every valid rotor order drawn
+ *  from given choices for each slot, combined with every starting
+ *  position of the rotors, under a fixed plugboard.  (A ring setting only
+ *  shifts the starting position of its rotor, as Main.ring applies it, so
+ *  the starting positions already cover every ring setting.)
+ *
+ *  Keys are numbered from 0 to size()-1.  Within one rotor order, the
+ *  positions are visited in reflected Gray-code order, so consecutive
+ *  keys differ by one step of a single rotor, and the rightmost rotor
+ *  changes most often.  Orders are visited in reflected Gray-code order
+ *  of their slot choices (skipping invalid ones), so consecutive orders
+ *  usually differ in one slot.  A Cursor walks a range of keys, keeping
+ *  the composed "core" table of the reflector and all but the rightmost
+ *  rotor up to date by recomputing only the part of it that depends on
+ *  the rotor that changed.  Disjoint ranges may be handed to different
+ *  threads or processes (see split).
+ *  @author Ryan Chen
+ */
+final class KeySpace {
+
+    /** The keys of machines described by CONFIG whose slot K holds one
+     *  of the rotors named in CHOICES[K], with the plugboard whose cycles
+     *  are PLUGBOARD. */
+    KeySpace(MachineConfig config, String[][] choices, String plugboard) {
+        _config = config;
+        _slots = config.numRotors();
+        _size = config.alphabet().size();
+        _plugboard = plugboard;
+        if (choices.length != _slots) {
+            throw error("need rotor choices for each of %d slots", _slots);
+        }
+        _orders = validOrders(choices);
+        if (_orders.isEmpty()) {
+            throw error("no valid rotor orders");
+        }
+        _positionsPerOrder = 1;
+        for (int k = 1; k < _slots; k++) {
+            if (_positionsPerOrder > Long.MAX_VALUE / _size / _orders.size()) {
+                throw error("key space too large");
+            }
+            _positionsPerOrder *= _size;
+        }
+    }
+
+    /** Return the rotor orders drawn from CHOICES that a machine accepts,
+     *  in reflected Gray-code order of their indices in CHOICES. */
+    private List<String[]> validOrders(String[][] choices) {
+        ArrayList<String[]> result = new ArrayList<>();
+        long total = 1;
+        for (String[] choice : choices) {
+            total *= choice.length;
+        }
+        int[] radix = new int[_slots];
+        for (int k = 0; k < _slots; k++) {
+            radix[k] = choices[k].length;
+        }
+        for (long r = 0; r < total; r++) {
+            int[] digits = grayDigits(r, radix);
+            String[] order = new String[_slots];
+            for (int k = 0; k < _slots; k++) {
+                order[k] = choices[k][digits[k]];
+            }
+            try {
+                _config.newMachine().insertRotors(order);
+                result.add(order);
+            } catch (EnigmaException excp) {
+                /* Not a valid order; skip it. */
+            }
+        }
+        return result;
+    }
+
+    /** Return the digits of the reflected mixed-radix Gray code of rank
+     *  R, where digit K has radix RADIX[K] and the last digit changes
+     *  fastest. */
+    static int[] grayDigits(long r, int[] radix) {
+        int[] digits = new int[radix.length];
+        long block = 1;
+        for (int k = radix.length - 1; k >= 0; k--) {
+            long higher = r / block / radix[k];
+            int d = (int) (r / block % radix[k]);
+            digits[k] = (higher & 1) == 0 ? d : radix[k] - 1 - d;
+            block *= radix[k];
+        }
+        return digits;
+    }
+
+    /** Return the number of keys. */
+    long size() {
+        return _orders.size() * _positionsPerOrder;
+    }
+
+    /** Return the number of valid rotor orders. */
+    int orders() {
+        return _orders.size();
+    }
+
+    /** Return a cursor over keys FROM .. TO-1. */
+    Cursor cursor(long from, long to) {
+        if (from < 0 || to > size() || from > to) {
+            throw error("bad key range %d..%d", from, to);
+        }
+        return new Cursor(from, to);
+    }
+
+    /** Return PARTS cursors over disjoint ranges of nearly equal size that
+     *  together cover all keys. */
+    List<Cursor> split(int parts) {
+        ArrayList<Cursor> result = new ArrayList<>();
+        long total = size();
+        for (int p = 0; p < parts; p++) {
+            result.add(cursor(total / parts * p + Math.min(p, total % parts),
+                              total / parts * (p + 1)
+                              + Math.min(p + 1, total % parts)));
+        }
+        return result;
+    }
+
+    /** A walk over a range of keys.  Call next() to move to each key in
+     *  turn; the machine, core table and settings then describe it. */
+    final class Cursor {
+
+        /** A cursor over keys FROM .. TO-1, before the first of them. */
+        private Cursor(long from, long to) {
+            _rank = from - 1;
+            _end = to;
+            _positions = new int[_slots];
+            _inner = new int[_slots][_size];
+            _work = new int[_slots][_size];
+            _current = new int[_slots][];
+        }
+
+        /** Move to the next key in my range, returning false if there is
+         *  none. */
+        boolean next() {
+            if (_rank + 1 >= _end) {
+                return false;
+            }
+            _rank += 1;
+            int orderIndex = (int) (_rank / _positionsPerOrder);
+            long within = _rank % _positionsPerOrder;
+            if (_machine == null || orderIndex != _orderIndex || within == 0) {
+                seek(orderIndex, within);
+                _changed = 0;
+            } else {
+                _changed = step(within);
+            }
+            return true;
+        }
+
+        /** Set up the key at position rank WITHIN of order ORDERINDEX from
+         *  scratch. */
+        private void seek(int orderIndex, long within) {
+            if (_machine == null || orderIndex != _orderIndex) {
+                _orderIndex = orderIndex;
+                _machine = _config.newMachine();
+                _machine.insertRotors(_orders.get(orderIndex));
+                _plug = new Permutation(_plugboard, _config.alphabet());
+                _machine.setPlugboard(_plug);
+                _rotors = _machine.getRotorSlots().toArray(new Rotor[0]);
+            }
+            int[] radix = new int[_slots - 1];
+            Arrays.fill(radix, _size);
+            int[] digits = grayDigits(within, radix);
+            for (int k = 1; k < _slots; k++) {
+                _positions[k] = digits[k - 1];
+            }
+            rebuild(0);
+        }
+
+        /** Move from the key before position rank WITHIN to it, and return
+         *  the slot whose rotor moved. */
+        private int step(long within) {
+            int slot = _slots - 1;
+            long block = 1;
+            while (within % (block * _size) == 0) {
+                block *= _size;
+                slot -= 1;
+            }
+            long higher = within / block / _size;
+            _positions[slot] += (higher & 1) == 0 ? 1 : -1;
+            rebuild(slot);
+            return slot;
+        }
+
+        /** Bring my rotors and core tables up to date with _positions,
+         *  given that slots before FROM have not changed. */
+        private void rebuild(int from) {
+            for (int k = Math.max(1, from); k < _slots; k++) {
+                _rotors[k].set(_positions[k]);
+            }
+            for (int k = from; k < _slots - 1; k++) {
+                compose(k, _positions[k], k == 0 ? null : _inner[k - 1],
+                        _inner[k]);
+            }
+        }
+
+        /** Fill OUT with the composition of the rotor in slot K at setting
+         *  SETTING, traversed forward, then INNER (the composition of the
+         *  slots before K, or nothing if K is 0), then the rotor backward. */
+        private void compose(int k, int setting, int[] inner, int[] out) {
+            Permutation perm = _rotors[k].permutation();
+            int[] forward = perm.forwardTable(), inverse = perm.inverseTable();
+            int n = _size;
+            for (int x = 0; x < n; x++) {
+                int y = forward[(x + setting) % n] - setting;
+                if (y < 0) {
+                    y += n;
+                }
+                if (inner != null) {
+                    y = inner[y] + setting;
+                    if (y >= n) {
+                        y -= n;
+                    }
+                    y = inverse[y] - setting;
+                    if (y < 0) {
+                        y += n;
+                    }
+                }
+                out[x] = y;
+            }
+        }
+
+        /** Return the number of my current key. */
+        long rank() {
+            return _rank;
+        }
+
+        /** Return the slot whose rotor moved to reach the current key from
+         *  the previous one, or 0 if everything was recomputed. */
+        int changedSlot() {
+            return _changed;
+        }
+
+        /** Return the names of the rotors of the current key. */
+        String[] order() {
+            return _orders.get(_orderIndex).clone();
+        }
+
+        /** Return the starting setting of the rotor in each slot. */
+        int[] positions() {
+            return _positions.clone();
+        }
+
+        /** Return the machine, set to the current key.  Converting with
+         *  it moves its rotors; next() or decrypt() puts them back. */
+        Machine machine() {
+            return _machine;
+        }
+
+        /** Return the composed table of the reflector and every rotor but
+         *  the rightmost at the current key.  It must not be modified. */
+        int[] core() {
+            return _inner[_slots - 2];
+        }
+
+        /** Return a settings line (as for Main) for the current key. */
+        String settings() {
+            StringBuilder result = new StringBuilder("*");
+            for (String name : _orders.get(_orderIndex)) {
+                result.append(' ').append(name);
+            }
+            result.append(' ');
+            for (int k = 1; k < _slots; k++) {
+                result.append(_config.alphabet().toChar(_positions[k]));
+            }
+            if (!_plugboard.isEmpty()) {
+                result.append(' ').append(_plugboard);
+            }
+            return result.toString();
+        }
+
+        /** Decrypt the first LENGTH indices of CIPHER into PLAIN under
+         *  the current key.  Only the rightmost rotor, the core table and
+         *  the plugboard are consulted per character; the core is
+         *  recomputed, from the slot that moved, only when a rotor other
+         *  than the rightmost one steps. */
+        void decrypt(int[] cipher, int length, int[] plain) {
+            for (int k = 1; k < _slots; k++) {
+                _rotors[k].set(_positions[k]);
+            }
+            for (int k = 0; k < _slots - 1; k++) {
+                _current[k] = _inner[k];
+            }
+            int[] plug = _plug.forwardTable();
+            int fast = _slots - 1, n = _size;
+            Permutation perm = _rotors[fast].permutation();
+            int[] forward = perm.forwardTable(), inverse = perm.inverseTable();
+            int[] settings = _positions.clone();
+            for (int i = 0; i < length; i++) {
+                _machine.advanceMachine();
+                int moved = fast;
+                for (int k = fast - 1; k >= 1; k--) {
+                    int now = _rotors[k].setting();
+                    if (now != settings[k]) {
+                        settings[k] = now;
+                        moved = k;
+                    }
+                }
+                for (int k = moved; k < fast; k++) {
+                    compose(k, settings[k], _current[k - 1], _work[k]);
+                    _current[k] = _work[k];
+                }
+                int s = _rotors[fast].setting();
+                int x = plug[cipher[i]] + s;
+                if (x >= n) {
+                    x -= n;
+                }
+                x = forward[x] - s;
+                if (x < 0) {
+                    x += n;
+                }
+                x = _current[fast - 1][x] + s;
+                if (x >= n) {
+                    x -= n;
+                }
+                x = inverse[x] - s;
+                if (x < 0) {
+                    x += n;
+                }
+                plain[i] = plug[x];
+            }
+            for (int k = 1; k < _slots; k++) {
+                _rotors[k].set(_positions[k]);
+            }
+        }
+
+        /** The current key number. */
+        private long _rank;
+        /** One past the last key number in my range. */
+        private final long _end;
+        /** The index of the current rotor order. */
+        private int _orderIndex = -1;
+        /** The slot changed by the most recent step. */
+        private int _changed;
+        /** The machine for the current rotor order. */
+        private Machine _machine;
+        /** Its plugboard. */
+        private Permutation _plug;
+        /** The rotors in its slots. */
+        private Rotor[] _rotors;
+        /** The starting setting of each slot. */
+        private final int[] _positions;
+        /** _inner[K] is the composition of slots 0..K at the current key. */
+        private final int[][] _inner;
+        /** Scratch compositions used while decrypting. */
+        private final int[][] _work;
+        /** The compositions in effect while decrypting. */
+        private final int[][] _current;
+    }
+
+    /** The configuration. */
+    private final MachineConfig _config;
+    /** The number of slots. */
+    private final int _slots;
+    /** The alphabet size. */
+    private final int _size;
+    /** The plugboard cycles. */
+    private final String _plugboard;
+    /** The valid rotor orders. */
+    private final List<String[]> _orders;
+    /** The number of starting positions for each order. */
+    private long _positionsPerOrder;
+}
@@ -0,0 +1,95 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySpace class.
+ *  @author Ryan Chen
+ */
+public class KeySpaceTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Rotor choices for a four-slot naval machine. */
+    private static final String[][] CHOICES = {
+        { "B", "C" }, { "I", "II", "III" }, { "I", "II", "III" },
+        { "I", "II", "III" },
+    };
+
+    /** A key space over CHOICES with a small plugboard. */
+    private KeySpace space() {
+        return new KeySpace(navalConfig(4, 3), CHOICES, "(AQ) (EP)");
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void visitsEveryKeyOnce() {
+        KeySpace space = space();
+        assertEquals(12, space.orders());
+        assertEquals(12 * 26 * 26 * 26, space.size());
+        HashSet<String> seen = new HashSet<>();
+        KeySpace.Cursor cursor = space.cursor(0, space.size());
+        int[] last = null;
+        while (cursor.next()) {
+            assertTrue(seen.add(cursor.settings()));
+            int[] now = cursor.positions();
+            if (last != null && cursor.changedSlot() != 0) {
+                int slot = cursor.changedSlot();
+                for (int k = 1; k < now.length; k++) {
+                    assertEquals(k == slot ? 1 : 0,
+                                 Math.abs(now[k] - last[k]));
+                }
+            }
+            last = now;
+        }
+        assertEquals(space.size(), seen.size());
+    }
+
+    @Test
+    public void splitCoversRange() {
+        KeySpace space = space();
+        List<KeySpace.Cursor> parts = space.split(7);
+        long expected = 0;
+        for (KeySpace.Cursor part : parts) {
+            while (part.next()) {
+                assertEquals(expected, part.rank());
+                expected += 1;
+            }
+        }
+        assertEquals(space.size(), expected);
+    }
+
+    @Test
+    public void matchesMachine() {
+        KeySpace space = space();
+        String plain = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD"
+            + "MADEOFSLIDINGFOLDINGROSEWOODNEATLYPUTITALLTOGETHER";
+        int[] cipher = new int[plain.length()], out = new int[plain.length()];
+        for (int i = 0; i < plain.length(); i++) {
+            cipher[i] = UPPER.toInt(plain.charAt(i));
+        }
+        KeySpace.Cursor cursor = space.cursor(space.size() / 3,
+                                              space.size() / 3 + 2000);
+        while (cursor.next()) {
+            String expected =
+                machineFor(navalConfig(4, 3), cursor.settings()).convert(plain);
+            cursor.decrypt(cipher, cipher.length, out);
+            for (int i = 0; i < out.length; i++) {
+                assertEquals(cursor.settings(), expected.charAt(i),
+                             UPPER.toChar(out[i]));
+            }
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+
+/** A precomputed, memory-mapped table of the substitutions a machine
+ *  makes at each of a range of positions after a settings line.  Entry
+ *  (P, C) is what the machine turns C into as the Pth character after
+ *  the settings line, plugboard included.  Tables are written once by
+ *  build (or by running this class as a program) and opened read-only,
+ *  so every process that opens the same file shares one copy of it in
+ *  the page cache, and Machine.useKeystream turns encryption into a
+ *  lookup in that copy.
+ *
+ *  A table is used only for a run whose settings line and configuration
+ *  are those it was built for.  Since two configurations may have rotors
+ *  of the same names, the header records a fingerprint of the machine as
+ *  set up by the settings line (see fingerprint), and a table whose
+ *  settings line matches a run's but whose fingerprint does not is an
+ *  error rather than a source of wrong output.
+ *
+ *  The file is a header (magic number, version, alphabet size, entry
+ *  width, number of positions, fingerprint, and the settings line in
+ *  UTF-8), padded
+ *  to a multiple of 8 bytes, followed by the entries in position order,
+ *  one byte each for alphabets of at most 256 characters and two bytes
+ *  each otherwise.
+ *  @author Ryan Chen
+ */
+final class KeystreamTable {
+
+    /** Build a table from the arguments CONFIG SETTINGS COUNT FILE:
+     *  COUNT positions after the settings line SETTINGS, for the
+     *  configuration in file CONFIG, written to FILE. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 4) {
+                throw error("Usage: java enigma.KeystreamTable CONFIG "
+                            + "SETTINGS COUNT FILE");
+            }
+            long count;
+            try {
+                count = Long.parseLong(args[2]);
+            } catch (NumberFormatException excp) {
+                throw error("bad position count: %s", args[2]);
+            }
+            build(Main.readConfig(new File(args[0])), args[1], count,
+                  new File(args[3]));
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Write to FILE the table of COUNT positions following the settings
+     *  line SETTINGS for the machine described by CONFIG.  The file is
+     *  written under a temporary name and then renamed, so that readers
+     *  never see a partial table. */
+    static void build(MachineConfig config, String settings, long count,
+                      File file) {
+        int size = config.alphabet().size();
+        int width = size <= BYTE_LIMIT ? 1 : 2;
+        if (count < 0 || count * size * width
+            > Integer.MAX_VALUE - MAX_HEADER) {
+            throw error("keystream table too large");
+        }
+        Main main = new Main(config, null, null);
+        main.start();
+        main.processLine(settings);
+        Machine machine = main.machine();
+        File temp = new File(file.getPath() + ".tmp");
+        byte[] key = settings.getBytes(StandardCharsets.UTF_8);
+        long fingerprint = fingerprint(machine);
+        try (FileOutputStream stream = new FileOutputStream(temp)) {
+            DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            out.writeInt(width);
+            out.writeLong(count);
+            out.writeLong(fingerprint);
+            out.writeInt(key.length);
+            out.write(key);
+            for (int pad = headerSize(key.length) - FIXED_HEADER - key.length;
+                 pad > 0; pad -= 1) {
+                out.write(0);
+            }
+            for (long p = 0; p < count; p += 1) {
+                machine.advanceMachine();
+                for (int c = 0; c < size; c += 1) {
+                    if (width == 1) {
+                        out.write(machine.substitute(c));
+                    } else {
+                        out.writeShort(machine.substitute(c));
+                    }
+                }
+            }
+            out.flush();
+            stream.getChannel().force(true);
+        } catch (IOException excp) {
+            throw error("could not write %s", temp);
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw error("could not rename %s", temp);
+        }
+    }
+
+    /** Return the table stored in FILE, mapped read-only. */
+    static KeystreamTable open(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            MappedByteBuffer map = raf.getChannel()
+                .map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            return new KeystreamTable(file, map);
+        } catch (IOException excp) {
+            throw error("could not open %s", file);
+        }
+    }
+
+    /** A table read from MAP, the contents of FILE. */
+    private KeystreamTable(File file, MappedByteBuffer map) {
+        map.order(ByteOrder.BIG_ENDIAN);
+        if (map.capacity() < FIXED_HEADER || map.getInt(0) != MAGIC
+            || map.getInt(4) != VERSION) {
+            throw error("%s is not a keystream table", file);
+        }
+        _size = map.getInt(8);
+        _width = map.getInt(12);
+        _count = map.getLong(16);
+        _fingerprint = map.getLong(24);
+        int keyLength = map.getInt(32);
+        if (keyLength < 0 || keyLength > map.capacity() - FIXED_HEADER) {
+            throw error("%s is not a keystream table", file);
+        }
+        byte[] key = new byte[keyLength];
+        for (int i = 0; i < keyLength; i += 1) {
+            key[i] = map.get(FIXED_HEADER + i);
+        }
+        _settings = new String(key, StandardCharsets.UTF_8);
+        _base = headerSize(keyLength);
+        if (_width != 1 && _width != 2
+            || _base + _count * _size * _width != map.capacity()) {
+            throw error("%s is truncated or corrupt", file);
+        }
+        _map = map;
+    }
+
+    /** Return the size of a header holding a key of KEYLENGTH bytes. */
+    private static int headerSize(int keyLength) {
+        return (FIXED_HEADER + keyLength + 7) & ~7;
+    }
+
+    /** Return the settings line this table was built for. */
+    String settings() {
+        return _settings;
+    }
+
+    /** Return true iff this table was built for the settings line
+     *  SETTINGS, ignoring surrounding whitespace, and for MACHINE, which
+     *  has just been set up by SETTINGS.  It is an error for SETTINGS to
+     *  match while MACHINE does not. */
+    boolean matches(String settings, Machine machine) {
+        if (!_settings.trim().equals(settings.trim())) {
+            return false;
+        } else if (_size != machine.alphabet().size()
+                   || _fingerprint != fingerprint(machine)) {
+            throw error("keystream table for %s was built for a different "
+                        + "configuration", _settings.trim());
+        }
+        return true;
+    }
+
+    /** Return a fingerprint of MACHINE: a CRC of its alphabet, and of the
+     *  kind, notches, wiring and setting of each rotor in its slots, its
+     *  rings, and its plugboard, which together determine its
+     *  substitutions from its current position on. */
+    static long fingerprint(Machine machine) {
+        CRC32 crc = new CRC32();
+        crc.update(machine.alphabet().getChars()
+                   .getBytes(StandardCharsets.UTF_8));
+        for (Rotor rotor : machine.getRotorSlots()) {
+            update(crc, rotor.reflecting() ? 'R' : rotor.rotates() ? 'M'
+                   : 'N');
+            if (rotor instanceof MovingRotor) {
+                crc.update(((MovingRotor) rotor).getNotches()
+                           .getBytes(StandardCharsets.UTF_8));
+            }
+            for (int k : rotor.permutation().forwardTable()) {
+                update(crc, k);
+            }
+            update(crc, rotor.setting());
+        }
+        for (int ring : machine.rings()) {
+            update(crc, ring);
+        }
+        for (int k : machine.plugboard().forwardTable()) {
+            update(crc, k);
+        }
+        return crc.getValue();
+    }
+
+    /** Add the four bytes of V to CRC. */
+    private static void update(CRC32 crc, int v) {
+        for (int shift = Integer.SIZE - Byte.SIZE; shift >= 0;
+             shift -= Byte.SIZE) {
+            crc.update(v >>> shift);
+        }
+    }
+
+    /** Return the size of the alphabet this table is for. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the number of positions in this table. */
+    long count() {
+        return _count;
+    }
+
+    /** Return the substitution for C at position POSITION, where
+     *  0 <= POSITION < count(). */
+    int substitute(long position, int c) {
+        int index = (int) (position * _size + c);
+        if (_width == 1) {
+            return _map.get(_base + index) & BYTE_MASK;
+        }
+        return _map.getShort(_base + 2 * index) & SHORT_MASK;
+    }
+
+    /** The mapped file. */
+    private final MappedByteBuffer _map;
+    /** The settings line the table was built for. */
+    private final String _settings;
+    /** The alphabet size. */
+    private final int _size;
+    /** The number of bytes per entry. */
+    private final int _width;
+    /** The number of positions. */
+    private final long _count;
+    /** The fingerprint of the machine the table was built for. */
+    private final long _fingerprint;
+    /** The offset of the first entry. */
+    private final int _base;
+
+    /** Magic number at the start of a table file ("ENKS"). */
+    private static final int MAGIC = 0x454e4b53;
+    /** Current file format version. */
+    private static final int VERSION = 2;
+    /** The size of the header before the key. */
+    private static final int FIXED_HEADER = 36;
+    /** A bound on the size of the header. */
+    private static final int MAX_HEADER = 1 << 16;
+    /** The largest alphabet whose entries fit in a byte. */
+    private static final int BYTE_LIMIT = 256;
+    /** Masks that convert signed bytes and shorts to unsigned values. */
+    private static final int BYTE_MASK = 0xff, SHORT_MASK = 0xffff;
+}
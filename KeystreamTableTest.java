@@ -0,0 +1,94 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeystreamTable class.
+ *  @author Ryan Chen
+ */
+public class KeystreamTableTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The settings line the tables are built for. */
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** A message longer than the tables. */
+    private static final String MESSAGE =
+        "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void tableMatchesMachine() throws IOException {
+        MachineConfig config = navalConfig(5, 3);
+        File file = File.createTempFile("enigma", ".tbl");
+        file.deleteOnExit();
+        KeystreamTable.build(config, SETTINGS, 20, file);
+        KeystreamTable table = KeystreamTable.open(file);
+        assertEquals(20, table.count());
+        assertEquals(26, table.size());
+        assertTrue(table.matches(" " + SETTINGS, machineFor(config, SETTINGS)));
+        assertFalse(table.matches("* B Beta III IV I AAAA",
+                                  machineFor(config, SETTINGS)));
+
+        Machine plain = machineFor(config, SETTINGS);
+        Machine fast = machineFor(config, SETTINGS);
+        fast.useKeystream(table);
+        assertEquals(plain.convert(MESSAGE), fast.convert(MESSAGE));
+        for (int k = 0; k < 5; k += 1) {
+            assertEquals(plain.getRotorSlots().get(k).setting(),
+                         fast.getRotorSlots().get(k).setting());
+        }
+    }
+
+    @Test
+    public void rotorsCatchUp() throws IOException {
+        MachineConfig config = navalConfig(5, 3);
+        File file = File.createTempFile("enigma", ".tbl");
+        file.deleteOnExit();
+        KeystreamTable.build(config, SETTINGS, 20, file);
+        Machine plain = machineFor(config, SETTINGS);
+        Machine fast = machineFor(config, SETTINGS);
+        fast.useKeystream(KeystreamTable.open(file));
+        assertEquals(plain.convert("HELLO"), fast.convert("HELLO"));
+        assertEquals(plain.getRotorSlots().get(4).setting(),
+                     fast.getRotorSlots().get(4).setting());
+        assertEquals(plain.convert("WORLD"), fast.convert("WORLD"));
+    }
+
+    @Test
+    public void rejectsOtherConfiguration() throws IOException {
+        File file = File.createTempFile("enigma", ".tbl");
+        file.deleteOnExit();
+        KeystreamTable.build(navalConfig(5, 3), SETTINGS, 20, file);
+        KeystreamTable table = KeystreamTable.open(file);
+        ArrayList<RotorSpec> specs = new ArrayList<>();
+        for (RotorSpec spec : navalConfig(5, 3).specs()) {
+            specs.add(!spec.name().equals("I") ? spec
+                      : new RotorSpec("I", 'M', "Q",
+                                      new Permutation(NAVALA.get("II"),
+                                                      UPPER)));
+        }
+        MachineConfig other = new MachineConfig(UPPER, 5, 3, specs);
+        try {
+            table.matches(SETTINGS, machineFor(other, SETTINGS));
+            fail("table used with a different configuration");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("different"));
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+import static enigma.LongSet.*;
+
+/** A map from longs, such as packed machine states (see MachineState),
+ *  to longs, stored without boxing in parallel arrays with open
+ *  addressing and linear probing, like LongSet.  Any long may be a key
+ *  or a value, but put and remove report an absent key by returning
+ *  MISSING, so a map that may hold the value MISSING must use
+ *  containsKey to tell the two apart.  Not thread-safe.
+ *  @author Ryan Chen
+ */
+final class LongLongMap {
+
+    /** An empty map. */
+    LongLongMap() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /** An empty map with room for about EXPECTED entries. */
+    LongLongMap(long expected) {
+        int capacity = capacityFor(expected);
+        _keys = new long[capacity];
+        _values = new long[capacity];
+        Arrays.fill(_keys, FREE);
+    }
+
+    /** Map KEY to VALUE, returning the previous value for KEY, or
+     *  MISSING if there was none. */
+    long put(long key, long value) {
+        if (key == FREE) {
+            long result = _hasFree ? _freeValue : MISSING;
+            _hasFree = true;
+            _freeValue = value;
+            return result;
+        }
+        int mask = _keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            long cell = _keys[i];
+            if (cell == key) {
+                long result = _values[i];
+                _values[i] = value;
+                return result;
+            } else if (cell == FREE) {
+                _keys[i] = key;
+                _values[i] = value;
+                _used += 1;
+                if (_used > _keys.length * LOAD) {
+                    grow();
+                }
+                return MISSING;
+            }
+        }
+    }
+
+    /** Return the value for KEY, or DEFLT if there is none. */
+    long get(long key, long deflt) {
+        if (key == FREE) {
+            return _hasFree ? _freeValue : deflt;
+        }
+        int mask = _keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            long cell = _keys[i];
+            if (cell == key) {
+                return _values[i];
+            } else if (cell == FREE) {
+                return deflt;
+            }
+        }
+    }
+
+    /** Return true iff KEY has a value. */
+    boolean containsKey(long key) {
+        if (key == FREE) {
+            return _hasFree;
+        }
+        int mask = _keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            long cell = _keys[i];
+            if (cell == key) {
+                return true;
+            } else if (cell == FREE) {
+                return false;
+            }
+        }
+    }
+
+    /** Remove KEY, returning its value, or MISSING if it had none. */
+    long remove(long key) {
+        if (key == FREE) {
+            long result = _hasFree ? _freeValue : MISSING;
+            _hasFree = false;
+            return result;
+        }
+        int mask = _keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            long cell = _keys[i];
+            if (cell == FREE) {
+                return MISSING;
+            } else if (cell == key) {
+                long result = _values[i];
+                shiftBack(i);
+                _used -= 1;
+                return result;
+            }
+        }
+    }
+
+    /** Empty cell HOLE, moving later entries of its probe run back so
+     *  that each stays reachable from its starting cell. */
+    private void shiftBack(int hole) {
+        int mask = _keys.length - 1;
+        for (int i = (hole + 1) & mask; _keys[i] != FREE;
+             i = (i + 1) & mask) {
+            int home = slot(_keys[i], mask);
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                _keys[hole] = _keys[i];
+                _values[hole] = _values[i];
+                hole = i;
+            }
+        }
+        _keys[hole] = FREE;
+    }
+
+    /** Call ACTION on each entry, in no particular order.  ACTION must
+     *  not change me. */
+    void forEach(Entry action) {
+        if (_hasFree) {
+            action.accept(FREE, _freeValue);
+        }
+        for (int i = 0; i < _keys.length; i++) {
+            if (_keys[i] != FREE) {
+                action.accept(_keys[i], _values[i]);
+            }
+        }
+    }
+
+    /** Receives the entries of a map. */
+    interface Entry {
+        /** Take the entry mapping KEY to VALUE. */
+        void accept(long key, long value);
+    }
+
+    /** Return the number of entries. */
+    long size() {
+        return _used + (_hasFree ? 1 : 0);
+    }
+
+    /** Remove all entries, keeping the current capacity. */
+    void clear() {
+        Arrays.fill(_keys, FREE);
+        _used = 0;
+        _hasFree = false;
+    }
+
+    /** Double the number of cells. */
+    private void grow() {
+        long[] oldKeys = _keys, oldValues = _values;
+        if (oldKeys.length >= MAX_CAPACITY) {
+            throw error("too many entries for a table: %d", _used);
+        }
+        _keys = new long[2 * oldKeys.length];
+        _values = new long[2 * oldKeys.length];
+        Arrays.fill(_keys, FREE);
+        int mask = _keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != FREE) {
+                int i = slot(oldKeys[j], mask);
+                while (_keys[i] != FREE) {
+                    i = (i + 1) & mask;
+                }
+                _keys[i] = oldKeys[j];
+                _values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /** The keys, each FREE or in use. */
+    private long[] _keys;
+    /** The value for each key in use. */
+    private long[] _values;
+    /** The number of keys in use in _keys. */
+    private int _used;
+    /** True iff FREE has a value. */
+    private boolean _hasFree;
+    /** The value of FREE, if it has one. */
+    private long _freeValue;
+
+    /** The result of put and remove for a key that had no value.  It is
+     *  also a legal value (see the class comment). */
+    static final long MISSING = Long.MIN_VALUE;
+}
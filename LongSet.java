@@ -0,0 +1,166 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A set of longs, such as packed machine states (see MachineState),
+ *  stored without boxing in one array with open addressing and linear
+ *  probing.  The value FREE marks empty cells, so whether FREE itself is
+ *  in the set is kept separately.  The table doubles when it is more
+ *  than LOAD full, up to MAX_CAPACITY cells.  Not thread-safe.
+ *  @author Ryan Chen
+ */
+final class LongSet {
+
+    /** An empty set. */
+    LongSet() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /** An empty set with room for about EXPECTED elements. */
+    LongSet(long expected) {
+        _cells = new long[capacityFor(expected)];
+        Arrays.fill(_cells, FREE);
+    }
+
+    /** Return a power-of-two capacity that holds EXPECTED elements. */
+    static int capacityFor(long expected) {
+        long needed = Math.max(INITIAL_CAPACITY,
+                               (long) Math.ceil(expected / LOAD));
+        if (needed > MAX_CAPACITY) {
+            throw error("too many elements for a table: %d", expected);
+        }
+        return Integer.highestOneBit((int) needed - 1) << 1;
+    }
+
+    /** Return the starting cell for KEY in a table of MASK+1 cells. */
+    static int slot(long key, int mask) {
+        long h = key * MIX;
+        return (int) (h ^ (h >>> Integer.SIZE)) & mask;
+    }
+
+    /** Add KEY, returning true iff it was not already present. */
+    boolean add(long key) {
+        if (key == FREE) {
+            boolean result = !_hasFree;
+            _hasFree = true;
+            return result;
+        }
+        int mask = _cells.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            long cell = _cells[i];
+            if (cell == key) {
+                return false;
+            } else if (cell == FREE) {
+                _cells[i] = key;
+                _used += 1;
+                if (_used > _cells.length * LOAD) {
+                    grow();
+                }
+                return true;
+            }
+        }
+    }
+
+    /** Return true iff KEY is present. */
+    boolean contains(long key) {
+        if (key == FREE) {
+            return _hasFree;
+        }
+        int mask = _cells.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            long cell = _cells[i];
+            if (cell == key) {
+                return true;
+            } else if (cell == FREE) {
+                return false;
+            }
+        }
+    }
+
+    /** Remove KEY, returning true iff it was present. */
+    boolean remove(long key) {
+        if (key == FREE) {
+            boolean result = _hasFree;
+            _hasFree = false;
+            return result;
+        }
+        int mask = _cells.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            long cell = _cells[i];
+            if (cell == FREE) {
+                return false;
+            } else if (cell == key) {
+                shiftBack(i);
+                _used -= 1;
+                return true;
+            }
+        }
+    }
+
+    /** Empty cell HOLE, moving later members of its probe run back so
+     *  that each stays reachable from its starting cell. */
+    private void shiftBack(int hole) {
+        int mask = _cells.length - 1;
+        for (int i = (hole + 1) & mask; _cells[i] != FREE;
+             i = (i + 1) & mask) {
+            int home = slot(_cells[i], mask);
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                _cells[hole] = _cells[i];
+                hole = i;
+            }
+        }
+        _cells[hole] = FREE;
+    }
+
+    /** Return the number of elements. */
+    long size() {
+        return _used + (_hasFree ? 1 : 0);
+    }
+
+    /** Remove all elements, keeping the current capacity. */
+    void clear() {
+        Arrays.fill(_cells, FREE);
+        _used = 0;
+        _hasFree = false;
+    }
+
+    /** Double the number of cells. */
+    private void grow() {
+        long[] old = _cells;
+        if (old.length >= MAX_CAPACITY) {
+            throw error("too many elements for a table: %d", _used);
+        }
+        _cells = new long[2 * old.length];
+        Arrays.fill(_cells, FREE);
+        int mask = _cells.length - 1;
+        for (long key : old) {
+            if (key != FREE) {
+                int i = slot(key, mask);
+                while (_cells[i] != FREE) {
+                    i = (i + 1) & mask;
+                }
+                _cells[i] = key;
+            }
+        }
+    }
+
+    /** The cells, each FREE or an element. */
+    private long[] _cells;
+    /** The number of elements in _cells. */
+    private int _used;
+    /** True iff FREE is an element. */
+    private boolean _hasFree;
+
+    /** The value of an empty cell. */
+    static final long FREE = Long.MIN_VALUE;
+    /** The largest fraction of cells in use before the table grows. */
+    static final double LOAD = 0.6;
+    /** The smallest capacity. */
+    static final int INITIAL_CAPACITY = 16;
+    /** The largest capacity (the largest power of two an array allows). */
+    static final int MAX_CAPACITY = 1 << 30;
+    /** Odd multiplier (from the golden ratio) that spreads keys. */
+    private static final long MIX = 0x9e3779b97f4a7c15L;
+}
@@ -1,6 +1,9 @@
 package enigma;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Collection;
 import java.util.ArrayList;
 
@@ -28,10 +31,19 @@ class Machine {
 
         _allRotors = allRotors;
         _notchStatus = new boolean[_numRotors];
+        _rings = new int[_numRotors];
         _rotorSlots = new ArrayList<>();
         setRotorKey();
     }
 
+    /** A new Enigma machine as described by CONFIG, which makes rotors
+     *  from CONFIG only as insertRotors asks for them. */
+    Machine(MachineConfig config) {
+        this(config.alphabet(), config.numRotors(), config.numPawls(),
+             new ArrayList<>());
+        _config = config;
+    }
+
     /** Set a HashMap with the name of the rotor as the key and
      * the corresponding rotor as the value. */
     void setRotorKey() {
@@ -68,6 +80,12 @@ class Machine {
         }
         Rotor currentRotor; numMove = 0;
         for (int i = 0; i < rotors.length; i++) {
+            if (_config != null && !rotorKey.containsKey(rotors[i])) {
+                Rotor made = _config.newRotor(rotors[i]);
+                if (made != null) {
+                    rotorKey.put(rotors[i], made);
+                }
+            }
             if (!(rotorKey.containsKey(rotors[i]))) {
                 throw error("Rotor is not in the rotor slot");
             }
@@ -85,6 +103,8 @@ class Machine {
                         + "cannot exceed that of the pawls");
             }
             _rotorSlots.add(currentRotor);
+            _slotForward = null;
+            _orderBits = -1;
         }
         noMoreMove = false;
         for (int k = rotors.length - 1; k >= 0; k--) {
@@ -103,6 +123,11 @@ class Machine {
 
     /** Empty the rotor slots. */
     void emptyRotors() {
+        _slotForward = null;
+        _orderBits = -1;
+        Arrays.fill(_rings, 0);
+        _keystream = null;
+        _lag = 0;
         _rotorSlots.clear();
     }
 
@@ -110,6 +135,8 @@ class Machine {
      *  numRotors()-1 characters in my alphabet. The first letter refers
      *  to the leftmost rotor setting (not counting the reflector).  */
     public void setRotors(String setting) {
+        _keystream = null;
+        _lag = 0;
         if (numRotors() - 1 != setting.length()) {
             throw error("Setting length is not equal to the number of rotors");
         }
@@ -127,16 +154,142 @@ class Machine {
         }
     }
 
+    /** Record RINGS[K] as the ring setting of slot K, for K >= 1.  The
+     *  positions of my rotors already include their rings (see Main.ring),
+     *  so this only affects what snapshot() reports. */
+    void setRings(int[] rings) {
+        for (int k = 1; k < _numRotors && k < rings.length; k++) {
+            _rings[k] = rings[k];
+        }
+    }
+
+    /** Return the ring setting of each slot. */
+    int[] rings() {
+        return _rings.clone();
+    }
+
+    /** Return the layout of my packed states: slot orders are indices
+     *  into the names of all the rotors I can be given. */
+    MachineState stateLayout() {
+        if (_stateLayout == null) {
+            List<String> names = new ArrayList<>();
+            if (_config != null) {
+                names = _config.rotorNames();
+            } else {
+                for (Rotor rotor : _allRotors) {
+                    if (!names.contains(rotor.name())) {
+                        names.add(rotor.name());
+                    }
+                }
+            }
+            _stateLayout = new MachineState(names,
+                                            _numRotors, _alphabet.size());
+        }
+        return _stateLayout;
+    }
+
+    /** Return my rotor order, positions and rings packed into a long
+     *  (see MachineState).  My slots must be filled. */
+    long snapshot() {
+        catchUp();
+        MachineState layout = stateLayout();
+        if (_orderBits == -1) {
+            if (_rotorSlots.size() != _numRotors) {
+                throw error("Machine has no rotors to snapshot");
+            }
+            long order = 0;
+            for (int k = 0; k < _numRotors; k++) {
+                order = layout.withOrder(order, k, layout.index(
+                        _rotorSlots.get(k).name()));
+            }
+            _orderBits = order;
+        }
+        long result = _orderBits;
+        for (int k = 1; k < _numRotors; k++) {
+            result = layout.withPosition(result, k,
+                                         _rotorSlots.get(k).setting());
+            result = layout.withRing(result, k, _rings[k]);
+        }
+        return result;
+    }
+
+    /** Put my rotors into the order, positions and rings of STATE, a
+     *  value returned by snapshot() for a machine with my configuration.
+     *  The plugboard is unchanged, and any keystream table is dropped. */
+    void restore(long state) {
+        MachineState layout = stateLayout();
+        _keystream = null;
+        _lag = 0;
+        if (_orderBits == -1 || _orderBits != layout.orderBits(state)) {
+            emptyRotors();
+            insertRotors(layout.names(state));
+            _orderBits = layout.orderBits(state);
+        }
+        for (int k = 1; k < _numRotors; k++) {
+            _rotorSlots.get(k).set(layout.position(state, k));
+            _rings[k] = layout.ring(state, k);
+        }
+    }
+
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
+        _slotForward = null;
         _plugboard = plugboard;
     }
 
+    /** Returns my plugboard, or null if it has not been set. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
+    /** Generate code specialized to each setup of my slots and
+     *  plugboard, and use it for all bulk conversions, iff ON (see
+     *  Specializer); otherwise choose how to convert each message as
+     *  useEngine(Engines.ADAPTIVE) does. */
+    void specialize(boolean on) {
+        useEngine(on ? Engines.SPECIALIZED : Engines.ADAPTIVE);
+    }
+
+    /** Convert messages in bulk with ENGINE (see Engines), or, if it is
+     *  Engines.ADAPTIVE, with whichever engine should be fastest for each
+     *  message. */
+    void useEngine(int engine) {
+        if (engine < Engines.ADAPTIVE || engine >= Engines.COUNT) {
+            throw error("bad engine number: %d", engine);
+        }
+        _engineChoice = engine;
+    }
+
+    /** Returns the engine the last bulk conversion used, or
+     *  Engines.ADAPTIVE if there has been none. */
+    int engine() {
+        return _engine;
+    }
+
+    /** Returns the number of characters converted in bulk with
+     *  ENGINE. */
+    long engineCharacters(int engine) {
+        return _engineChars[engine];
+    }
+
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
+        if (_keystream != null) {
+            if (_keystreamPosition < _keystream.count()) {
+                _lag += 1;
+                return _keystream.substitute(_keystreamPosition++, c);
+            }
+            useKeystream(null);
+        }
         advanceMachine();
+        return substitute(c);
+    }
+
+    /** Returns the result of converting C with the rotors where they
+     *  are now, without advancing the machine. */
+    int substitute(int c) {
         int output = _plugboard.permute(c);
         for (int i = _numRotors - 1; i >= 0; i--) {
             output = _rotorSlots.get(i).convertForward(output);
@@ -147,6 +300,28 @@ class Machine {
         return _plugboard.permute(output);
     }
 
+    /** Take the substitutions for my next characters from TABLE, which
+     *  must have been built for my current settings and plugboard, until
+     *  it runs out.  While the table is in use my rotors are not moved;
+     *  they catch up whenever they are looked at, when the table runs
+     *  out, or when TABLE is replaced.  A null TABLE stops using one. */
+    void useKeystream(KeystreamTable table) {
+        catchUp();
+        if (table != null && table.size() != _alphabet.size()) {
+            throw error("Keystream table is for a different alphabet");
+        }
+        _keystream = table;
+        _keystreamPosition = 0;
+    }
+
+    /** Make the advances to my rotors that were deferred while
+     *  substitutions came from a keystream table. */
+    private void catchUp() {
+        for (; _lag > 0; _lag -= 1) {
+            advanceMachine();
+        }
+    }
+
     /** Advances the Machine. */
     void advanceMachine() {
         updateNotchStatus();
@@ -158,6 +333,10 @@ class Machine {
                 _rotorSlots.get(i).setHasMoved(true);
                 _rotorSlots.get(i - 1).advance();
                 _rotorSlots.get(i - 1).setHasMoved(true);
+                if (i - 1 < _coreSlots) {
+                    _coreStale = true;
+                    _coreTurnovers += 1;
+                }
             }
         }
         for (int i = numRotors() - 1; i > 0; i--) {
@@ -175,22 +354,323 @@ class Machine {
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String msgCopy = msg.replaceAll(" ", "");
-        String[] msgArray = new String [msgCopy.length()];
-        for (int i = 0; i < msgCopy.length(); i++) {
-            if (!(_alphabet.contains(msgCopy.charAt(i)))) {
-                throw error("This message has a letter that is not "
-                        + "in the Alphabet");
+        char[] buf = new char[msg.length()];
+        int n = 0;
+        for (int i = 0; i < buf.length; i++) {
+            char c = msg.charAt(i);
+            if (c != ' ') {
+                buf[n++] = c;
             }
-            int input = _alphabet.toInt(msgCopy.charAt(i));
-            int output = convert(input);
-            msgArray[i] = Character.toString(_alphabet.toChar(output));
         }
-        String result = "";
-        for (int j = 0; j < msgArray.length; j++) {
-            result += msgArray[j];
+        convert(buf, 0, n);
+        return new String(buf, 0, n);
+    }
+
+    /** Encode or decode BUF[START .. END-1] in place, updating the state
+     *  of the rotors accordingly.  The whole range is checked against my
+     *  alphabet before any of it is converted, so that the conversion
+     *  itself can run without checks. */
+    void convert(char[] buf, int start, int end) {
+        if (_alphabet.firstInvalid(buf, start, end) >= 0) {
+            throw error("This message has a letter that is not "
+                    + "in the Alphabet");
         }
-        return result;
+        if (start == end) {
+            return;
+        }
+        if (_keystream != null || !trusted()) {
+            for (int i = start; i < end; i++) {
+                buf[i] = _alphabet.toChar(convert(_alphabet.toInt(buf[i])));
+            }
+            return;
+        }
+        select(end - start);
+        for (int i = start; i < end; i++) {
+            advanceMachine();
+            buf[i] = _alphabet.toChar(substituteTrusted(
+                    _alphabet.toInt(buf[i])));
+        }
+    }
+
+    /** Returns the encoding/decoding of MSG normalized by NORM, updating
+     *  the state of the rotors accordingly.  Normalization and conversion
+     *  happen in one pass over MSG; if NORM rejects unknown characters,
+     *  MSG is first checked as a whole, so that a rejected message leaves
+     *  the rotors where they were. */
+    String convert(Normalizer norm, String msg) {
+        char[] in = msg.toCharArray();
+        if (norm.firstRejected(in, 0, in.length) >= 0) {
+            throw error("This message has a letter that is not "
+                    + "in the Alphabet");
+        }
+        char[] out = new char[in.length * norm.longest()];
+        int n = 0;
+        boolean trusted = _keystream == null && trusted();
+        if (trusted) {
+            select(in.length);
+        }
+        for (char c : in) {
+            int code = norm.code(c);
+            if (code >= 0) {
+                out[n++] = _alphabet.toChar(trusted ? convertTrusted(code)
+                                            : convert(code));
+            } else if (code <= Normalizer.EXPANSION) {
+                for (int x : norm.expansion(code)) {
+                    out[n++] = _alphabet.toChar(trusted ? convertTrusted(x)
+                                                : convert(x));
+                }
+            }
+        }
+        return new String(out, 0, n);
+    }
+
+    /** Returns convert(C) for an index C known to be in range, when my
+     *  tables are current and no keystream table is in use. */
+    private int convertTrusted(int c) {
+        advanceMachine();
+        return substituteTrusted(c);
+    }
+
+    /** Return true iff my slots are filled and my plugboard is set,
+     *  filling in the tables used by substituteTrusted if they are not
+     *  already current.  Since rotors may have been set directly since
+     *  the last call, the core is checked against them here, once per
+     *  call rather than once per character. */
+    private boolean trusted() {
+        if (_slotForward != null) {
+            for (int k = 1; k < _coreSlots; k++) {
+                if (_slots[k].setting() != _coreSettings[k]) {
+                    _coreStale = true;
+                }
+            }
+            return true;
+        }
+        if (_rotorSlots.size() != _numRotors || _plugboard == null) {
+            return false;
+        }
+        _slots = _rotorSlots.toArray(new Rotor[_numRotors]);
+        _slotForward = new int[_numRotors][];
+        _slotInverse = new int[_numRotors][];
+        for (int i = 0; i < _numRotors; i++) {
+            _slotForward[i] = _slots[i].permutation().forwardTable();
+            _slotInverse[i] = _slots[i].permutation().inverseTable();
+        }
+        _plugboardTable = _plugboard.forwardTable();
+        int core = Math.max(1, _numRotors - 2);
+        while (core < _numRotors - 1 && !_slots[core].rotates()) {
+            core += 1;
+        }
+        _coreSlots = core;
+        _core = new int[_plugboardTable.length];
+        _coreSettings = new int[core];
+        _coreStale = true;
+        _kernel = null;
+        return true;
+    }
+
+    /** Choose the engine for a bulk conversion of LENGTH characters, once
+     *  trusted() has returned true, generating a kernel if it is
+     *  needed and recording the choice. */
+    private void select(long length) {
+        int engine = _engineChoice;
+        if (engine == Engines.ADAPTIVE) {
+            Engines.Calibration calibration =
+                length >= Engines.CALIBRATE_LENGTH ? Engines.calibration()
+                : Engines.DEFAULTS;
+            engine = Engines.choose(calibration, length,
+                                    _plugboardTable.length, _numRotors,
+                                    _coreSlots, _coreStale, turnoverRate(),
+                                    _kernel != null);
+        }
+        if (engine == Engines.SPECIALIZED && _kernel == null) {
+            _kernel = Specializer.specialize(_slots, _coreSlots, _core,
+                                             _plugboardTable, _slotForward,
+                                             _slotInverse);
+        }
+        _engine = engine;
+        _engineChars[engine] += length;
+        _observedChars += length;
+    }
+
+    /** Returns the expected number of times per character that a core
+     *  slot moves: as observed, once enough characters have been
+     *  converted, and otherwise as the shape of my slots suggests (about
+     *  once per alphabet size squared characters if the leftmost slot
+     *  of the core moves, as in the usual machine). */
+    private double turnoverRate() {
+        if (_observedChars >= OBSERVED_MINIMUM) {
+            return (double) _coreTurnovers / _observedChars;
+        }
+        if (!_slots[_coreSlots - 1].rotates()) {
+            return 0.0;
+        }
+        double n = _plugboardTable.length;
+        return 1.0 / (n * n);
+    }
+
+    /** Recompute _core, the composition of my first _coreSlots slots
+     *  (the reflector and the rotors that move only on a turnover),
+     *  traversed forward and then backward, at their current settings. */
+    private void rebuildCore() {
+        int n = _core.length;
+        for (int k = 1; k < _coreSlots; k++) {
+            _coreSettings[k] = _slots[k].setting();
+        }
+        for (int c = 0; c < n; c++) {
+            int x = c;
+            for (int i = _coreSlots - 1; i >= 0; i--) {
+                int s = _coreSettings[i];
+                x += s;
+                if (x >= n) {
+                    x -= n;
+                }
+                x = _slotForward[i][x] - s;
+                if (x < 0) {
+                    x += n;
+                }
+            }
+            for (int j = 1; j < _coreSlots; j++) {
+                int s = _coreSettings[j];
+                x += s;
+                if (x >= n) {
+                    x -= n;
+                }
+                x = _slotInverse[j][x] - s;
+                if (x < 0) {
+                    x += n;
+                }
+            }
+            _core[c] = x;
+        }
+        _coreStale = false;
+    }
+
+    /** Returns substitute(C) for an index C known to be in range, using
+     *  the permutation tables of my slots directly with the engine
+     *  select() chose.  With the core, only the slots to the right of it
+     *  are traversed one by one; the rest are looked up at once in
+     *  _core. */
+    private int substituteTrusted(int c) {
+        if (_engine == Engines.TABLES) {
+            return substituteTables(c);
+        }
+        if (_coreStale) {
+            rebuildCore();
+        }
+        if (_engine == Engines.SPECIALIZED) {
+            return _kernel.substitute(c);
+        }
+        int n = _plugboardTable.length;
+        int x = _plugboardTable[c];
+        for (int i = _numRotors - 1; i >= _coreSlots; i--) {
+            int s = _slots[i].setting();
+            x += s;
+            if (x >= n) {
+                x -= n;
+            }
+            x = _slotForward[i][x] - s;
+            if (x < 0) {
+                x += n;
+            }
+        }
+        x = _core[x];
+        for (int j = _coreSlots; j < _numRotors; j++) {
+            int s = _slots[j].setting();
+            x += s;
+            if (x >= n) {
+                x -= n;
+            }
+            x = _slotInverse[j][x] - s;
+            if (x < 0) {
+                x += n;
+            }
+        }
+        return _plugboardTable[x];
+    }
+
+    /** Returns substitute(C) for an index C known to be in range, looking
+     *  up the table of every slot in turn. */
+    private int substituteTables(int c) {
+        int n = _plugboardTable.length;
+        int x = _plugboardTable[c];
+        for (int i = _numRotors - 1; i >= 0; i--) {
+            int s = _slots[i].setting();
+            x += s;
+            if (x >= n) {
+                x -= n;
+            }
+            x = _slotForward[i][x] - s;
+            if (x < 0) {
+                x += n;
+            }
+        }
+        for (int j = 1; j < _numRotors; j++) {
+            int s = _slots[j].setting();
+            x += s;
+            if (x >= n) {
+                x -= n;
+            }
+            x = _slotInverse[j][x] - s;
+            if (x < 0) {
+                x += n;
+            }
+        }
+        return _plugboardTable[x];
+    }
+
+    /** Encrypt the bytes remaining in IN into OUT, one alphabet index per
+     *  byte, updating the state of the rotors accordingly.  My alphabet
+     *  must be a byte alphabet.  Either buffer may be direct or
+     *  memory-mapped; bytes are read and written in place, and the
+     *  positions of both buffers are advanced past the bytes handled. */
+    void convert(ByteBuffer in, ByteBuffer out) {
+        if (!_alphabet.isByteAlphabet()) {
+            throw error("Binary conversion needs a byte alphabet");
+        }
+        int n = in.remaining();
+        if (out.remaining() < n) {
+            throw error("Output buffer is too small");
+        }
+        int src = in.position(), dst = out.position();
+        if (_keystream == null && trusted()) {
+            select(n);
+            for (int i = 0; i < n; i++) {
+                advanceMachine();
+                out.put(dst + i, (byte) substituteTrusted(
+                        in.get(src + i) & BYTE_MASK));
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                out.put(dst + i, (byte) convert(in.get(src + i) & BYTE_MASK));
+            }
+        }
+        in.position(src + n);
+        out.position(dst + n);
+    }
+
+    /** Encrypt the bytes BUF[START .. END-1] in place, one alphabet index
+     *  per byte, updating the state of the rotors accordingly.  My
+     *  alphabet must be a byte alphabet. */
+    void convert(byte[] buf, int start, int end) {
+        if (!_alphabet.isByteAlphabet()) {
+            throw error("Binary conversion needs a byte alphabet");
+        }
+        if (_keystream == null && trusted()) {
+            select(end - start);
+            for (int i = start; i < end; i++) {
+                advanceMachine();
+                buf[i] = (byte) substituteTrusted(buf[i] & BYTE_MASK);
+            }
+        } else {
+            for (int i = start; i < end; i++) {
+                buf[i] = (byte) convert(buf[i] & BYTE_MASK);
+            }
+        }
+    }
+
+    /** Returns my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
     }
 
     /** A function to return the rotorKey. */
@@ -199,6 +679,7 @@ class Machine {
     }
     /** A function to return rotorSlots. */
     public ArrayList<Rotor> getRotorSlots() {
+        catchUp();
         return _rotorSlots;
     }
     /** Common alphabet of my rotors. */
@@ -221,5 +702,54 @@ class Machine {
     private boolean noMoreMove;
     /** The int representing the number of moving rotors. */
     private int numMove;
+    /** The configuration I make rotors from, or null if I was given
+     *  all my rotors. */
+    private MachineConfig _config;
+    /** My slots, for substituteTrusted. */
+    private Rotor[] _slots;
+    /** The forward and inverse permutation tables of my slots, or null
+     *  if they must be recomputed. */
+    private int[][] _slotForward, _slotInverse;
+    /** The permutation table of my plugboard. */
+    private int[] _plugboardTable;
+    /** The number of slots, starting with the reflector, whose rotors
+     *  move only on a turnover (or not at all) and so are composed into
+     *  _core; 0 until the tables of my slots are made. */
+    private int _coreSlots;
+    /** The composition of my first _coreSlots slots, forward and back. */
+    private int[] _core;
+    /** The settings of the core slots that _core was computed for. */
+    private int[] _coreSettings;
+    /** True iff a core slot has moved since _core was computed. */
+    private boolean _coreStale;
+    /** The engine bulk conversions use, or Engines.ADAPTIVE to choose
+     *  one for each. */
+    private int _engineChoice = Engines.ADAPTIVE;
+    /** The engine the last bulk conversion used, or Engines.ADAPTIVE. */
+    private int _engine = Engines.ADAPTIVE;
+    /** The number of characters converted in bulk with each engine. */
+    private final long[] _engineChars = new long[Engines.COUNT];
+    /** The number of characters converted in bulk, and the number of
+     *  times a core slot moved, for turnoverRate. */
+    private long _observedChars, _coreTurnovers;
+    /** The code generated for my setup, or null if none has been. */
+    private Specializer.Kernel _kernel;
+    /** The keystream table in use, or null. */
+    private KeystreamTable _keystream;
+    /** The position in _keystream of the next character. */
+    private long _keystreamPosition;
+    /** The number of advances not yet made to my rotors. */
+    private long _lag;
+    /** The ring setting of each slot. */
+    private int[] _rings;
+    /** The layout of my packed states, or null if not yet made. */
+    private MachineState _stateLayout;
+    /** The order bits of my packed state, or -1 if not yet computed. */
+    private long _orderBits = -1;
+    /** Mask that converts a signed byte to its unsigned value. */
+    private static final int BYTE_MASK = 0xff;
+    /** The number of characters that must be converted before the
+     *  observed turnover rate is trusted. */
+    private static final long OBSERVED_MINIMUM = 1 << 16;
 }
 
@@ -0,0 +1,119 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/** A parsed machine configuration: an alphabet, the number of rotor
+ *  slots and pawls, and descriptions of all available rotors.  A
+ *  MachineConfig is never modified after it is read, so it may be
+ *  shared among any number of machines and threads; each machine gets
+ *  its own Rotor objects from newRotor(), made only for the rotors it
+ *  actually uses.
+ *  @author Ryan Chen
+ */
+class MachineConfig {
+
+    /** A configuration over ALPHABET with NUMROTORS slots, NUMPAWLS pawls
+     *  and the rotors described by SPECS. */
+    MachineConfig(Alphabet alphabet, int numRotors, int numPawls,
+                  List<RotorSpec> specs) {
+        _alphabet = alphabet;
+        _numRotors = numRotors;
+        _numPawls = numPawls;
+        _specs = Collections.unmodifiableList(new ArrayList<>(specs));
+        for (RotorSpec spec : specs) {
+            _byName.put(spec.name(), spec);
+        }
+        _arena = null;
+    }
+
+    /** A configuration over ALPHABET with NUMROTORS slots, NUMPAWLS pawls
+     *  and the rotors stored in ARENA.  It has no RotorSpecs; rotors are
+     *  made directly from the arena. */
+    MachineConfig(Alphabet alphabet, int numRotors, int numPawls,
+                  RotorArena arena) {
+        _alphabet = alphabet;
+        _numRotors = numRotors;
+        _numPawls = numPawls;
+        _specs = Collections.emptyList();
+        _arena = arena;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return the number of pawls. */
+    int numPawls() {
+        return _numPawls;
+    }
+
+    /** Return the descriptions of all my rotors, in configuration order. */
+    List<RotorSpec> specs() {
+        return _specs;
+    }
+
+    /** Return the names of all my rotors, without repeats, in
+     *  configuration order. */
+    List<String> rotorNames() {
+        if (_arena != null) {
+            return _arena.names();
+        }
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        for (RotorSpec spec : _specs) {
+            result.add(spec.name());
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Return the arena my rotors are stored in, or null if they are
+     *  described by RotorSpecs. */
+    RotorArena arena() {
+        return _arena;
+    }
+
+    /** Return the description of the rotor named NAME, or null if there
+     *  is none.  When names are repeated, the last description wins. */
+    RotorSpec spec(String name) {
+        return _byName.get(name);
+    }
+
+    /** Return a new rotor named NAME in its 0 setting, or null if there
+     *  is no such rotor. */
+    Rotor newRotor(String name) {
+        if (_arena != null) {
+            int index = _arena.index(name);
+            return index < 0 ? null : _arena.newRotor(index);
+        }
+        RotorSpec spec = _byName.get(name);
+        return spec == null ? null : spec.newRotor();
+    }
+
+    /** Return a new machine with no rotors inserted, which makes its own
+     *  rotors from my descriptions as insertRotors asks for them. */
+    Machine newMachine() {
+        return new Machine(this);
+    }
+
+    /** The alphabet. */
+    private final Alphabet _alphabet;
+    /** The number of rotor slots. */
+    private final int _numRotors;
+    /** The number of pawls. */
+    private final int _numPawls;
+    /** The rotor descriptions. */
+    private final List<RotorSpec> _specs;
+    /** The rotor descriptions, by name. */
+    private final HashMap<String, RotorSpec> _byName = new HashMap<>();
+    /** The arena holding my rotors, or null. */
+    private final RotorArena _arena;
+}
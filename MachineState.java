@@ -0,0 +1,153 @@
+package enigma;
+
+import java.util.HashMap;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** The layout of a machine state packed into one long: the rotor in
+ *  each slot (as an index into a fixed list of rotor names), and the
+ *  position and ring setting of each slot after the reflector.  Each
+ *  field takes just enough bits for its range, slots in order, orders
+ *  first, then positions, then rings, starting at bit 0.  Every state a
+ *  machine can be in has exactly one packed form, so packed states may
+ *  be compared, hashed and stored as plain longs (see LongSet and
+ *  LongLongMap).  The plugboard is not part of the state.
+ *  @author Ryan Chen
+ */
+final class MachineState {
+
+    /** A layout for machines with NUMROTORS slots whose rotors are drawn
+     *  from NAMES, over an alphabet of SIZE characters. */
+    MachineState(List<String> names, int numRotors, int size) {
+        _names = names.toArray(new String[0]);
+        for (int i = 0; i < _names.length; i++) {
+            _index.putIfAbsent(_names[i], i);
+        }
+        _slots = numRotors;
+        _orderWidth = width(_names.length);
+        _positionWidth = width(size);
+        _positionsAt = _slots * _orderWidth;
+        _ringsAt = _positionsAt + (_slots - 1) * _positionWidth;
+        if (_ringsAt + (_slots - 1) * _positionWidth > Long.SIZE) {
+            throw error("machine state does not fit in %d bits", Long.SIZE);
+        }
+    }
+
+    /** Return the number of bits needed for values 0 .. N-1. */
+    private static int width(int n) {
+        return n <= 1 ? 0 : Integer.SIZE - Integer.numberOfLeadingZeros(n - 1);
+    }
+
+    /** Return the index of the rotor named NAME. */
+    int index(String name) {
+        Integer result = _index.get(name);
+        if (result == null) {
+            throw error("rotor %s is not in the state layout", name);
+        }
+        return result;
+    }
+
+    /** Return the name of the rotor with index INDEX. */
+    String name(int index) {
+        return _names[index];
+    }
+
+    /** Return the number of slots. */
+    int slots() {
+        return _slots;
+    }
+
+    /** Return the index of the rotor in slot K of STATE. */
+    int order(long state, int k) {
+        return (int) field(state, k * _orderWidth, _orderWidth);
+    }
+
+    /** Return the bits of STATE that give its rotor order. */
+    long orderBits(long state) {
+        return state & mask(_positionsAt);
+    }
+
+    /** Return the position of slot K (1 <= K) in STATE. */
+    int position(long state, int k) {
+        return (int) field(state, _positionsAt + (k - 1) * _positionWidth,
+                           _positionWidth);
+    }
+
+    /** Return the ring setting of slot K (1 <= K) in STATE. */
+    int ring(long state, int k) {
+        return (int) field(state, _ringsAt + (k - 1) * _positionWidth,
+                           _positionWidth);
+    }
+
+    /** Return STATE with the rotor in slot K set to index INDEX. */
+    long withOrder(long state, int k, int index) {
+        return withField(state, k * _orderWidth, _orderWidth, index);
+    }
+
+    /** Return STATE with slot K (1 <= K) at position POSN. */
+    long withPosition(long state, int k, int posn) {
+        return withField(state, _positionsAt + (k - 1) * _positionWidth,
+                         _positionWidth, posn);
+    }
+
+    /** Return STATE with the ring of slot K (1 <= K) set to RING. */
+    long withRing(long state, int k, int ring) {
+        return withField(state, _ringsAt + (k - 1) * _positionWidth,
+                         _positionWidth, ring);
+    }
+
+    /** Return the state whose rotors are those named ORDER, at
+     *  POSITIONS, with rings RINGS (each indexed by slot; entry 0 of
+     *  POSITIONS and RINGS is ignored). */
+    long pack(String[] order, int[] positions, int[] rings) {
+        long result = 0;
+        for (int k = 0; k < _slots; k++) {
+            result = withOrder(result, k, index(order[k]));
+        }
+        for (int k = 1; k < _slots; k++) {
+            result = withPosition(result, k, positions[k]);
+            result = withRing(result, k, rings[k]);
+        }
+        return result;
+    }
+
+    /** Return the names of the rotors of STATE, by slot. */
+    String[] names(long state) {
+        String[] result = new String[_slots];
+        for (int k = 0; k < _slots; k++) {
+            result[k] = _names[order(state, k)];
+        }
+        return result;
+    }
+
+    /** Return the WIDTH-bit field of STATE starting at bit AT. */
+    private static long field(long state, int at, int width) {
+        return (state >>> at) & mask(width);
+    }
+
+    /** Return STATE with the WIDTH-bit field at bit AT set to VALUE. */
+    private static long withField(long state, int at, int width, long value) {
+        long m = mask(width);
+        if (value < 0 || value > m) {
+            throw error("state field out of range: %d", value);
+        }
+        return (state & ~(m << at)) | (value << at);
+    }
+
+    /** Return a mask of the low WIDTH bits. */
+    private static long mask(int width) {
+        return width == Long.SIZE ? -1L : (1L << width) - 1;
+    }
+
+    /** The rotor names, by index. */
+    private final String[] _names;
+    /** The rotor indices, by name. */
+    private final HashMap<String, Integer> _index = new HashMap<>();
+    /** The number of slots. */
+    private final int _slots;
+    /** The widths of an order index and of a position or ring. */
+    private final int _orderWidth, _positionWidth;
+    /** The first bits of the positions and of the rings. */
+    private final int _positionsAt, _ringsAt;
+}
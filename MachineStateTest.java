@@ -0,0 +1,104 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for MachineState, Machine.snapshot and
+ *  Machine.restore, LongSet and LongLongMap.
+ *  @author Ryan Chen
+ */
+public class MachineStateTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void snapshotRestoresState() {
+        Machine m = navalMachine("* B Beta III IV I AXLE BCDF (HQ) (EX)");
+        assertArrayEquals(new int[] {0, 1, 2, 3, 5}, m.rings());
+        m.convert("HELLOWORLD");
+        long state = m.snapshot();
+        String expected = m.convert("FROMHISSHOULDERHIAWATHA");
+
+        Machine other = navalMachine("* C Gamma I II III AAAA (HQ) (EX)");
+        other.restore(state);
+        assertEquals(state, other.snapshot());
+        assertArrayEquals(m.rings(), other.rings());
+        assertEquals(expected, other.convert("FROMHISSHOULDERHIAWATHA"));
+
+        m.restore(state);
+        assertEquals(expected, m.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    @Test
+    public void statesAreDistinct() {
+        Machine m = navalMachine("* B Beta III IV I AAAA");
+        HashSet<Long> seen = new HashSet<>();
+        LongSet set = new LongSet();
+        for (int i = 0; i < 26 * 26 * 3; i++) {
+            long state = m.snapshot();
+            assertEquals(seen.add(state), set.add(state));
+            m.advanceMachine();
+        }
+        assertEquals(seen.size(), set.size());
+        MachineState layout = m.stateLayout();
+        long state = m.snapshot();
+        assertEquals("Beta", layout.names(state)[1]);
+        assertEquals(m.getRotorSlots().get(4).setting(),
+                     layout.position(state, 4));
+    }
+
+    @Test
+    public void setAndMapAgreeWithJava() {
+        Random random = new Random(35);
+        LongSet set = new LongSet();
+        LongLongMap map = new LongLongMap();
+        HashSet<Long> expectedSet = new HashSet<>();
+        HashMap<Long, Long> expectedMap = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            long key = i % 7 == 0 ? LongSet.FREE : random.nextInt(5000) - 2500;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expectedSet.remove(key), set.remove(key));
+                Long old = expectedMap.remove(key);
+                assertEquals(old == null ? LongLongMap.MISSING : old,
+                             map.remove(key));
+            } else {
+                assertEquals(expectedSet.add(key), set.add(key));
+                Long old = expectedMap.put(key, (long) i);
+                assertEquals(old == null ? LongLongMap.MISSING : old,
+                             map.put(key, i));
+            }
+            assertEquals(expectedSet.size(), set.size());
+            assertEquals(expectedMap.size(), map.size());
+        }
+        for (long key = -2500; key < 2500; key++) {
+            assertEquals(expectedSet.contains(key), set.contains(key));
+            assertEquals(expectedMap.containsKey(key), map.containsKey(key));
+            assertEquals((long) expectedMap.getOrDefault(key, -1L),
+                         map.get(key, -1));
+        }
+    }
+
+    @Test
+    public void mapHoldsMissingAsValue() {
+        LongLongMap map = new LongLongMap();
+        assertEquals(LongLongMap.MISSING, map.put(3, LongLongMap.MISSING));
+        assertTrue(map.containsKey(3));
+        assertFalse(map.containsKey(4));
+        assertEquals(LongLongMap.MISSING, map.get(3, 0));
+        assertEquals(1, map.size());
+        assertEquals(LongLongMap.MISSING, map.remove(3));
+        assertFalse(map.containsKey(3));
+    }
+}
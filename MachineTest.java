@@ -2,7 +2,9 @@ package enigma;
 import org.junit.Test;
 import org.junit.Rule;
 import org.junit.rules.Timeout;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import static org.junit.Assert.*;
 
 
 /** The suite of all JUnit tests for the Alphabet class.
@@ -82,4 +84,53 @@ public class MachineTest {
         System.out.println(testMachine.convert(14));
         System.out.println(testMachine.convert("NICE"));
     }
+
+    @Test
+    public void convertByteBuffers() {
+        byte[] plain = new byte[1000];
+        for (int i = 0; i < plain.length; i++) {
+            plain[i] = (byte) (i * 31);
+        }
+        ByteBuffer in = ByteBuffer.allocateDirect(plain.length);
+        in.put(plain).flip();
+        ByteBuffer cipher = ByteBuffer.allocateDirect(plain.length);
+        Machine m = TestUtils.byteMachine();
+        m.convert(in, cipher);
+        assertEquals(0, in.remaining());
+        cipher.flip();
+        ByteBuffer back = ByteBuffer.allocate(plain.length);
+        m = TestUtils.byteMachine();
+        m.convert(cipher, back);
+        assertArrayEquals(plain, back.array());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void convertByteBuffersNeedsByteAlphabet() {
+        rotorList.add(rotor1);
+        rotorList.add(rotor3);
+        Machine m = new Machine(alph, 2, 1, rotorList);
+        m.convert(ByteBuffer.allocate(1), ByteBuffer.allocate(1));
+    }
+
+    @Test
+    public void convertCollapsesCoreAcrossTurnovers() {
+        String[] slots = {"B", "Beta", "III", "IV", "I"};
+        char[] text = new char[3000];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = (char) ('A' + (i * 7) % 26);
+        }
+        Machine bulk = TestUtils.navalMachine(slots, "AXLE", Engines.CORE);
+        Machine single = TestUtils.navalMachine(slots, "AXLE", Engines.CORE);
+        char[] buf = text.clone();
+        bulk.convert(buf, 0, 1500);
+        bulk.getRotorSlots().get(2).set(5);
+        bulk.convert(buf, 1500, buf.length);
+        for (int i = 0; i < text.length; i++) {
+            if (i == 1500) {
+                single.getRotorSlots().get(2).set(5);
+            }
+            assertEquals("at " + i, text[i] = alph.toChar(
+                single.convert(alph.toInt(text[i]))), buf[i]);
+        }
+    }
 }
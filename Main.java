@@ -1,11 +1,14 @@
 package enigma;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.NoSuchElementException;
+import java.util.Arrays;
 import java.util.Scanner;
 import java.util.regex.Pattern;
 import static enigma.EnigmaException.*;
@@ -23,10 +26,96 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.  If ARGS[0] is --batch, the remaining
+     *  arguments describe many files to be processed at once (see
+     *  Batch).  If it is --spool, files are processed as they arrive in
+     *  a directory, until the process is killed (see Spool).  If it is
+     *  --checkpoint, a single large input is processed
+     *  so that it can be resumed after a crash (see Checkpoint).  If it
+     *  is --keystream TABLE, the remaining arguments are as usual, and
+     *  messages after the settings line TABLE was built for are looked
+     *  up in TABLE (see KeystreamTable).  Any of these may be preceded by
+     *  --normalize SPEC, which cleans up messages as they are converted
+     *  (see Normalizer), and by --engine NAME, which converts every
+     *  message with engine NAME instead of choosing one for each (see
+     *  Engines); --specialize is short for --engine specialized.  In the
+     *  usual case and with --keystream, they may also be preceded by
+     *  --pipeline, which reads, converts and writes on separate threads
+     *  (see Pipeline), or by --parallel, which converts the sections
+     *  begun by settings lines on all processors at once (see Sections),
+     *  and by --reload, which watches the configuration file and sets up
+     *  each settings line with its latest contents (see ConfigSource).
+     *  These three are errors with --batch, --spool and --checkpoint, and
+     *  --pipeline and --parallel exclude each other. */
     public static void main(String... args) {
         try {
-            new Main(args).process();
+            String normalize = null;
+            int engine = Engines.ADAPTIVE;
+            boolean pipeline = false, parallel = false, reload = false;
+            while (args.length > 0) {
+                if (args.length > 1 && args[0].equals(NORMALIZE_OPTION)) {
+                    normalize = args[1];
+                    args = Arrays.copyOfRange(args, 2, args.length);
+                } else if (args.length > 1
+                           && args[0].equals(ENGINE_OPTION)) {
+                    engine = Engines.parse(args[1]);
+                    args = Arrays.copyOfRange(args, 2, args.length);
+                } else if (args[0].equals(SPECIALIZE_OPTION)) {
+                    engine = Engines.SPECIALIZED;
+                    args = Arrays.copyOfRange(args, 1, args.length);
+                } else if (args[0].equals(PIPELINE_OPTION)) {
+                    pipeline = true;
+                    args = Arrays.copyOfRange(args, 1, args.length);
+                } else if (args[0].equals(RELOAD_OPTION)) {
+                    reload = true;
+                    args = Arrays.copyOfRange(args, 1, args.length);
+                } else if (args[0].equals(PARALLEL_OPTION)) {
+                    parallel = true;
+                    args = Arrays.copyOfRange(args, 1, args.length);
+                } else {
+                    break;
+                }
+            }
+            String mode = args.length > 0 ? args[0] : "";
+            if ((mode.equals(BATCH_OPTION) || mode.equals(SPOOL_OPTION)
+                 || mode.equals(CHECKPOINT_OPTION))
+                && (pipeline || parallel || reload)) {
+                throw error("%s cannot be combined with %s, %s or %s", mode,
+                            PIPELINE_OPTION, PARALLEL_OPTION, RELOAD_OPTION);
+            } else if (pipeline && parallel) {
+                throw error("%s cannot be combined with %s", PIPELINE_OPTION,
+                            PARALLEL_OPTION);
+            }
+            KeystreamTable keystream = null;
+            if (mode.equals(BATCH_OPTION)) {
+                if (!Batch.run(args, normalize, engine)) {
+                    System.exit(1);
+                }
+                return;
+            } else if (mode.equals(SPOOL_OPTION)) {
+                Spool.run(args, normalize, engine);
+                return;
+            } else if (mode.equals(CHECKPOINT_OPTION)) {
+                Checkpoint.run(args, normalize, engine);
+                return;
+            } else if (args.length > 1 && mode.equals(KEYSTREAM_OPTION)) {
+                keystream = KeystreamTable.open(new File(args[1]));
+                args = Arrays.copyOfRange(args, 2, args.length);
+            }
+            Main main = new Main(args);
+            main._keystream = keystream;
+            main.normalize(normalize);
+            main.useEngine(engine);
+            main._pipeline = pipeline;
+            if (parallel) {
+                main._threads = Runtime.getRuntime().availableProcessors();
+            }
+            if (reload) {
+                ConfigSource source = new ConfigSource(main._config);
+                source.watch(System.err);
+                main.reload(source);
+            }
+            main.process();
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
@@ -39,8 +128,12 @@ public final class Main {
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
-        _config = getInput(args[0]);
+        _config = new File(args[0]);
+        if (!_config.canRead()) {
+            throw error("could not open %s", args[0]);
+        }
         if (args.length > 1) {
+            _inputFile = new File(args[1]);
             _input = getInput(args[1]);
         } else {
             _input = new Scanner(System.in);
@@ -52,6 +145,15 @@ public final class Main {
         }
     }
 
+    /** Apply the already-parsed configuration DEFINITION to the messages
+     *  in INPUT, sending the results to OUTPUT.  Each such Main has its
+     *  own rotors, so several may run at once on one DEFINITION. */
+    Main(MachineConfig definition, Scanner input, PrintStream output) {
+        _definition = definition;
+        _input = input;
+        _output = output;
+    }
+
     /** Return a Scanner reading from the file named NAME. */
     private Scanner getInput(String name) {
         try {
@@ -61,6 +163,20 @@ public final class Main {
         }
     }
 
+    /** Return a Reader for my input file, or the standard input if I
+     *  was given none, decoded as my Scanner decodes it. */
+    private Reader inputReader() {
+        if (_inputFile == null) {
+            return new InputStreamReader(System.in, Charset.defaultCharset());
+        }
+        try {
+            return new InputStreamReader(new FileInputStream(_inputFile),
+                                         Charset.defaultCharset());
+        } catch (IOException excp) {
+            throw error("could not open %s", _inputFile);
+        }
+    }
+
     /** Return a PrintStream writing to the file named NAME. */
     private PrintStream getOutput(String name) {
         try {
@@ -73,68 +189,254 @@ public final class Main {
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
      *  results to _output. */
-    private void process() {
+    void process() {
+        if (_threads > 1) {
+            new Sections(this, _threads).run(_input, _output);
+            return;
+        } else if (_pipeline) {
+            new Pipeline(this, Pipeline.DEFAULT_SLOTS).run(inputReader(),
+                                                           _output);
+            return;
+        }
+        start();
+        while (_input.hasNextLine()) {
+            processLine(_input.nextLine());
+        }
+    }
+
+    /** Take my configuration from SOURCE, picking up whatever it holds
+     *  at each settings line, or read it only once if SOURCE is null.
+     *  Must be called before start(). */
+    void reload(ConfigSource source) {
+        _source = source;
+    }
+
+    /** Clean up messages as described by SPEC (see Normalizer) from the
+     *  next call to start() on, or not at all if SPEC is null. */
+    void normalize(String spec) {
+        _normalize = spec;
+        _normalizer = null;
+    }
+
+    /** Convert messages with ENGINE, an engine number or Engines.ADAPTIVE,
+     *  from the next settings line on. */
+    void useEngine(int engine) {
+        _engine = engine;
+    }
+
+    /** Configure my machine, before the first call to processLine. */
+    void start() {
         _machine = readConfig();
-        String message; String setting;
+        if (_normalize != null && _normalizer == null) {
+            _normalizer = Normalizer.parse(_normalize, _alphabet);
+        }
         hasSetUp = false;
-        while (_input.hasNextLine()) {
-            setting = _input.nextLine();
-            if (setting.matches("(\\s*)?")) {
-                message = _machine.convert(setting);
-                printMessageLine((message));
-            } else if (setting.charAt(0) == '*') {
-                hasSetUp = true;
-                _machine = setUp(_machine, setting);
-            } else if (hasSetUp) {
-                message = _machine.convert(setting);
-                printMessageLine((message));
-            } else {
-                throw error("The input is incorrectly formatted");
+        _settings = null;
+        _lineNumber = 0;
+    }
+
+    /** Apply my machine to the input line SETTING, which is either a
+     *  settings line or a message, sending any result to _output. */
+    void processLine(String setting) {
+        _lineNumber += 1;
+        if (setting.matches("(\\s*)?")) {
+            convertLine(setting);
+        } else if (setting.charAt(0) == '*') {
+            settingsLine(setting);
+        } else if (hasSetUp) {
+            convertLine(setting);
+        } else {
+            throw error("The input is incorrectly formatted");
+        }
+    }
+
+    /** Apply my machine to the input line in BUF[0 .. LENGTH-1] as
+     *  processLine does, but leave any converted message (ungrouped) at
+     *  the start of BUF instead of printing it.  BUF must have room for
+     *  LENGTH * expansion() characters.  Return the length of the
+     *  message, or -1 if the line was a settings line. */
+    int processLine(char[] buf, int length) {
+        _lineNumber += 1;
+        boolean blank = true;
+        for (int i = 0; i < length && blank; i++) {
+            blank = WHITESPACE.indexOf(buf[i]) >= 0;
+        }
+        if (!blank && buf[0] == '*') {
+            settingsLine(new String(buf, 0, length));
+            return -1;
+        } else if (!blank && !hasSetUp) {
+            throw error("The input is incorrectly formatted");
+        }
+        EnigmaEvents.Message event = new EnigmaEvents.Message();
+        event.begin();
+        int n;
+        if (_normalizer != null) {
+            String message = _machine.convert(_normalizer,
+                                              new String(buf, 0, length));
+            n = message.length();
+            message.getChars(0, n, buf, 0);
+        } else {
+            n = 0;
+            for (int i = 0; i < length; i++) {
+                if (buf[i] != ' ') {
+                    buf[n++] = buf[i];
+                }
             }
+            _machine.convert(buf, 0, n);
+        }
+        EnigmaEvents.converted(n);
+        if (event.shouldCommit()) {
+            event.settings = _settings;
+            event.line = _lineNumber;
+            event.characters = n;
+            event.engine = Engines.name(_machine.engine());
+            event.commit();
+        }
+        return n;
+    }
+
+    /** Return the most characters any one input character of a message
+     *  can become. */
+    int expansion() {
+        return _normalizer == null ? 1 : _normalizer.longest();
+    }
+
+    /** Set up my machine as described by the settings line SETTING. */
+    private void settingsLine(String setting) {
+        hasSetUp = true;
+        EnigmaEvents.Settings event = new EnigmaEvents.Settings();
+        event.begin();
+        if (_source != null && _source.current() != _definition) {
+            adopt(_source.current());
+        }
+        _machine = setUp(_machine, setting);
+        _settings = setting;
+        if (_keystream != null && _keystream.matches(setting, _machine)) {
+            _machine.useKeystream(_keystream);
+        }
+        if (event.shouldCommit()) {
+            event.settings = setting;
+            event.line = _lineNumber;
+            event.commit();
+        }
+    }
+
+    /** Use DEFINITION, a reloaded configuration, from now on.  Anything
+     *  built from the old one is dropped: a keystream table no longer
+     *  matches its rotors, and the normalizer is rebuilt for its
+     *  alphabet. */
+    private void adopt(MachineConfig definition) {
+        _definition = definition;
+        _alphabet = definition.alphabet();
+        numRotors = definition.numRotors();
+        numPawls = definition.numPawls();
+        _keystream = null;
+        if (_normalize != null) {
+            _normalizer = Normalizer.parse(_normalize, _alphabet);
+        }
+    }
+
+    /** Convert the message line LINE and print the result. */
+    private void convertLine(String line) {
+        EnigmaEvents.Message event = new EnigmaEvents.Message();
+        event.begin();
+        String message = _normalizer == null ? _machine.convert(line)
+            : _machine.convert(_normalizer, line);
+        printMessageLine((message));
+        EnigmaEvents.converted(message.length());
+        if (event.shouldCommit()) {
+            event.settings = _settings;
+            event.line = _lineNumber;
+            event.characters = message.length();
+            event.engine = Engines.name(_machine.engine());
+            event.commit();
+        }
+    }
+
+    /** Return the configuration a settings line read now would be set
+     *  up with: the latest from my source, if I have one, and otherwise
+     *  the one start() read. */
+    MachineConfig definition() {
+        return _source != null ? _source.current() : _definition;
+    }
+
+    /** Return a Main that processes lines as I do, with my options, but
+     *  with the configuration DEFINITION (as returned by definition() when
+     *  its lines were read) and its own machines, sending results to
+     *  OUTPUT.  It does not follow my source, so that lines converted out
+     *  of order still see the configurations in input order.  start()
+     *  must already have been called. */
+    Main worker(PrintStream output, MachineConfig definition) {
+        Main result = new Main(definition, null, output);
+        if (definition == _definition) {
+            result._keystream = _keystream;
+            result._normalizer = _normalizer;
+        }
+        result._normalize = _normalize;
+        result._engine = _engine;
+        return result;
+    }
+
+    /** Number the next line given to processLine LINE. */
+    void nextLine(long line) {
+        _lineNumber = line - 1;
+    }
+
+    /** Return the most recent settings line, or null if there has been
+     *  none since start(). */
+    String settings() {
+        return _settings;
+    }
+
+    /** Return my current machine. */
+    Machine machine() {
+        return _machine;
+    }
+
+    /** Continue as if SETTINGS had been the most recent settings line and
+     *  the rotors had then moved to POSITIONS, where POSITIONS[K] is the
+     *  setting of the rotor in slot K. */
+    void resume(String settings, int[] positions) {
+        processLine(settings);
+        ArrayList<Rotor> slots = _machine.getRotorSlots();
+        if (positions.length != slots.size()) {
+            throw error("wrong number of rotor positions");
+        }
+        for (int k = 1; k < positions.length; k++) {
+            slots.get(k).set(positions[k]);
         }
     }
 
     /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
+     *  file _config, or from the configuration I was given. */
     private Machine readConfig() {
-        try {
-            _alphabet = new Alphabet(_config.nextLine());
-            numRotors = _config.nextInt(); numPawls = _config.nextInt();
-            allRotors = new ArrayList<Rotor>();
-            while (_config.hasNext(Pattern.compile("[^()*\\s]*"))) {
-                allRotors.add(readRotor());
-            }
-            _machine = new Machine(_alphabet, numRotors, numPawls, allRotors);
-            return _machine;
-        } catch (NoSuchElementException excp) {
-            throw error("configuration file truncated");
+        if (_source != null && _definition == null) {
+            _definition = _source.current();
+        } else if (_definition == null) {
+            _definition = readConfig(_config);
         }
+        _alphabet = _definition.alphabet();
+        numRotors = _definition.numRotors();
+        numPawls = _definition.numPawls();
+        _machine = _definition.newMachine();
+        return _machine;
     }
 
-    /** Return a rotor, reading its description from _config. */
-    private Rotor readRotor() {
-        try {
-            String name = _config.next("[^()*\\s]*");
-            String info = _config.next("[^()*\\s]*");
-            String cycles = "";
-            while (_config.hasNext(Pattern.compile("(\\([^()*\\s]*\\))*"))) {
-                cycles += _config.next(Pattern.compile("(\\([^()*\\s]*\\))*"));
-            }
-            _permutation = new Permutation(cycles, _alphabet);
-            if (info.charAt(0) == 'M') {
-                info = info.substring(1);
-                rotor = new MovingRotor(name, _permutation, info);
-            } else if (info.charAt(0) == 'N') {
-                info = info.substring(1);
-                rotor = new FixedRotor(name, _permutation);
-            } else {
-                info = info.substring(1);
-                rotor = new Reflector(name, _permutation);
-            }
-        } catch (NoSuchElementException excp) {
-            throw error("bad rotor description");
+    /** Return the configuration in the file CONFIG.  Rotor descriptions
+     *  are only indexed here; each is compiled when first used. */
+    static MachineConfig readConfig(File config) {
+        EnigmaEvents.ConfigLoad event = new EnigmaEvents.ConfigLoad();
+        event.begin();
+        MachineConfig result = RotorArena.isArena(config)
+            ? RotorArena.open(config).config() : ConfigReader.read(config);
+        if (event.shouldCommit()) {
+            event.file = config.getPath();
+            event.bytes = config.length();
+            event.rotors = result.arena() != null ? result.arena().count()
+                : result.specs().size();
+            event.commit();
         }
-        return rotor;
+        return result;
     }
 
     /** Return M according to the specification given on SETTINGS,
@@ -168,7 +470,8 @@ public final class Main {
             plug += setup.next("(\\([^()*\\s]*\\))*");
         }
         plugboard = new Permutation(plug, _alphabet);
-        _machine = new Machine(_alphabet, numRotors, numPawls, allRotors);
+        _machine = _definition.newMachine();
+        _machine.useEngine(_engine);
         _machine.insertRotors(rotors);
         _machine.setRotors(setting);
         _machine.setPlugboard(plugboard);
@@ -193,9 +496,12 @@ public final class Main {
     public void ring(String ringSetting) {
         char[] ringArray = ringSetting.toCharArray();
         int[] setting = new int[ringSetting.length()];
+        int[] rings = new int[ringSetting.length() + 1];
         for (int i = 0; i < ringArray.length; i++) {
             setting[i] = _alphabet.toInt(ringArray[i]);
+            rings[i + 1] = setting[i];
         }
+        _machine.setRings(rings);
         for (int i = 1; i < numRotors; i++) {
             Rotor current = _machine.getRotorSlots().get(i);
             int currentSetting = current.setting();
@@ -209,7 +515,7 @@ public final class Main {
     /** Source of input messages. */
     private Scanner _input;
     /** Source of machine configuration. */
-    private Scanner _config;
+    private File _config;
     /** File for encoded/decoded messages. */
     private PrintStream _output;
     /** The machine. */
@@ -218,16 +524,58 @@ public final class Main {
     private int numRotors;
     /** The number of pawls. */
     private int numPawls;
-    /** A collection of all rotors. */
-    private Collection<Rotor> allRotors;
-    /** The permutation of a rotor. */
-    private Permutation _permutation;
-    /** A rotor. */
-    private Rotor rotor;
     /** A string array of rotor names. */
     private String[] rotors;
     /** A permutation representing the plugboard. */
     private Permutation plugboard;
     /** A boolean that tells if a machine has been set up yet. */
     private boolean hasSetUp;
+    /** The parsed configuration. */
+    private MachineConfig _definition;
+    /** The most recent settings line. */
+    private String _settings;
+    /** The number of input lines processed since start(). */
+    private long _lineNumber;
+    /** A keystream table to use after its settings line, or null. */
+    private KeystreamTable _keystream;
+    /** The normalization spec given to normalize(), or null. */
+    private String _normalize;
+    /** The normalizer built from _normalize by start(), or null if none
+     *  has been built. */
+    private Normalizer _normalizer;
+    /** The engine my machines convert with (see Engines). */
+    private int _engine = Engines.ADAPTIVE;
+    /** True iff process() runs as a Pipeline. */
+    private boolean _pipeline;
+    /** The number of threads process() converts sections on. */
+    private int _threads = 1;
+    /** My input file, or null if I read the standard input or was given
+     *  a Scanner. */
+    private File _inputFile;
+    /** The source of my latest configuration, or null if it is read only
+     *  once. */
+    private ConfigSource _source;
+
+    /** The first argument that gives a normalization spec. */
+    static final String NORMALIZE_OPTION = "--normalize";
+    /** The first argument that selects parallel processing. */
+    static final String PARALLEL_OPTION = "--parallel";
+    /** The first argument that selects pipelined processing. */
+    static final String PIPELINE_OPTION = "--pipeline";
+    /** The first argument that selects reloading the configuration. */
+    static final String RELOAD_OPTION = "--reload";
+    /** The first argument that names the engine to convert with. */
+    static final String ENGINE_OPTION = "--engine";
+    /** The first argument that selects specialized conversion. */
+    static final String SPECIALIZE_OPTION = "--specialize";
+    /** The characters that count as whitespace in a blank line. */
+    private static final String WHITESPACE = " \t\n\u000b\f\r";
+    /** The first argument that selects batch mode (see Batch). */
+    static final String BATCH_OPTION = "--batch";
+    /** The first argument that selects spool mode (see Spool). */
+    static final String SPOOL_OPTION = "--spool";
+    /** The first argument that selects checkpointed mode. */
+    static final String CHECKPOINT_OPTION = "--checkpoint";
+    /** The first argument that selects a keystream table. */
+    static final String KEYSTREAM_OPTION = "--keystream";
 }
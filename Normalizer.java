@@ -0,0 +1,139 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static enigma.EnigmaException.*;
+
+/** Normalizes message text for a machine as it is converted, in place of
+ *  a separate cleaning pass.  A table built once from the alphabet gives
+ *  the class of every character: a letter of the alphabet (possibly
+ *  after folding case), whitespace to skip, a character to transliterate
+ *  into a sequence of letters, or any other character, which is either
+ *  dropped or rejected.  Machine.convert(Normalizer, String) looks each
+ *  character up as it converts, so a message is read only once.
+ *
+ *  A normalizer is described by a comma-separated list of options:
+ *  "fold" folds case, "drop" drops characters not otherwise handled
+ *  (rather than rejecting the message), and C=TEXT transliterates the
+ *  character C into TEXT.  For example, fold,drop,1=ONE,2=TWO.
+ *  @author Ryan Chen
+ */
+final class Normalizer {
+
+    /** A normalizer for ALPHABET that folds case if FOLD, drops (rather
+     *  than rejects) unknown characters if DROP, and replaces each key of
+     *  TRANSLITERATIONS with its value. */
+    Normalizer(Alphabet alphabet, boolean fold, boolean drop,
+               Map<Character, String> transliterations) {
+        _table = new int[Character.MAX_VALUE + 1];
+        _drop = drop;
+        int other = drop ? DROP : REJECT;
+        for (int c = 0; c < _table.length; c++) {
+            _table[c] = Character.isWhitespace(c) ? SKIP : other;
+        }
+        if (fold) {
+            for (int c = 0; c < _table.length; c++) {
+                int upper = alphabet.toInt(Character.toUpperCase((char) c));
+                int lower = alphabet.toInt(Character.toLowerCase((char) c));
+                if (upper >= 0) {
+                    _table[c] = upper;
+                } else if (lower >= 0) {
+                    _table[c] = lower;
+                }
+            }
+        }
+        for (int i = 0; i < alphabet.size(); i++) {
+            _table[alphabet.toChar(i)] = i;
+        }
+        int longest = 1;
+        for (Map.Entry<Character, String> e : transliterations.entrySet()) {
+            String text = e.getValue();
+            int[] expansion = new int[text.length()];
+            for (int i = 0; i < text.length(); i++) {
+                expansion[i] = _table[text.charAt(i)];
+                if (expansion[i] < 0) {
+                    throw error("transliteration of %c is not in the "
+                                + "alphabet", e.getKey());
+                }
+            }
+            _table[e.getKey()] = EXPANSION - _expansions.size();
+            _expansions.add(expansion);
+            longest = Math.max(longest, expansion.length);
+        }
+        _longest = longest;
+    }
+
+    /** Return the normalizer for ALPHABET described by SPEC (see the
+     *  class comment). */
+    static Normalizer parse(String spec, Alphabet alphabet) {
+        boolean fold = false, drop = false;
+        TreeMap<Character, String> transliterations = new TreeMap<>();
+        for (String option : spec.split(",")) {
+            if (option.equals("fold")) {
+                fold = true;
+            } else if (option.equals("drop")) {
+                drop = true;
+            } else if (option.length() >= 2 && option.charAt(1) == '=') {
+                transliterations.put(option.charAt(0), option.substring(2));
+            } else if (!option.isEmpty()) {
+                throw error("unknown normalization option %s", option);
+            }
+        }
+        return new Normalizer(alphabet, fold, drop, transliterations);
+    }
+
+    /** Return the class of C: its alphabet index if it stands for one
+     *  letter, and otherwise SKIP, DROP, REJECT, or an expansion code (at
+     *  most EXPANSION). */
+    int code(char c) {
+        return _table[c];
+    }
+
+    /** Return the letters that expansion code CODE stands for. */
+    int[] expansion(int code) {
+        return _expansions.get(EXPANSION - code);
+    }
+
+    /** Return the most letters any character becomes. */
+    int longest() {
+        return _longest;
+    }
+
+    /** Return true iff characters not otherwise handled are dropped. */
+    boolean drops() {
+        return _drop;
+    }
+
+    /** Return the index of the first character of TEXT[START .. END-1]
+     *  that is rejected, or -1 if there is none. */
+    int firstRejected(char[] text, int start, int end) {
+        if (!_drop) {
+            for (int i = start; i < end; i++) {
+                if (_table[text[i]] == REJECT) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /** Class of characters that are ignored. */
+    static final int SKIP = -1;
+    /** Class of unknown characters when they are dropped. */
+    static final int DROP = -2;
+    /** Class of unknown characters when they are rejected. */
+    static final int REJECT = -3;
+    /** The first expansion code; later ones count down from it. */
+    static final int EXPANSION = -4;
+
+    /** The class of each character. */
+    private final int[] _table;
+    /** The letters each expansion code stands for, by code. */
+    private final ArrayList<int[]> _expansions = new ArrayList<>();
+    /** The length of the longest expansion (at least 1). */
+    private final int _longest;
+    /** True iff unknown characters are dropped. */
+    private final boolean _drop;
+}
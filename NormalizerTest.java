@@ -0,0 +1,69 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Map;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Normalizer class.
+ *  @author Ryan Chen
+ */
+public class NormalizerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return a machine set up as in the sample input. */
+    private Machine machine() {
+        return navalMachine("* B Beta III IV I AXLE (YF) (ZH)");
+    }
+
+    @Test
+    public void testClasses() {
+        Alphabet alpha = new Alphabet();
+        Normalizer norm = new Normalizer(alpha, true, false,
+                                         Map.of('1', "ONE"));
+        assertEquals(0, norm.code('A'));
+        assertEquals(0, norm.code('a'));
+        assertEquals(Normalizer.SKIP, norm.code(' '));
+        assertEquals(Normalizer.REJECT, norm.code('!'));
+        assertArrayEquals(new int[] {14, 13, 4},
+                          norm.expansion(norm.code('1')));
+        assertEquals(3, norm.longest());
+        assertEquals(Normalizer.DROP,
+                     Normalizer.parse("drop", alpha).code('!'));
+        assertEquals(Normalizer.REJECT,
+                     Normalizer.parse("", alpha).code('a'));
+    }
+
+    @Test
+    public void testConvert() {
+        Normalizer norm = Normalizer.parse("fold,drop,1=ONE",
+                                           new Alphabet());
+        assertEquals(machine().convert("FROMHISSHOULDERONE"),
+                     machine().convert(norm, "From his-shoulder, 1!"));
+    }
+
+    @Test
+    public void testReject() {
+        Normalizer norm = Normalizer.parse("fold", new Alphabet());
+        Machine m = machine();
+        try {
+            m.convert(norm, "ok so far!");
+            fail("expected a rejected message");
+        } catch (EnigmaException excp) {
+            assertEquals(machine().convert("OKSOFAR"),
+                         m.convert(norm, "ok so far"));
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadSpec() {
+        Normalizer.parse("fold,squash", new Alphabet());
+    }
+}
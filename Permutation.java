@@ -4,7 +4,7 @@ import static enigma.EnigmaException.*;
 
 import java.util.Scanner;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 /** Represents a permutation of a range of integers starting at 0 corresponding
  *  to the characters of an alphabet.
  *  @author Ryan Chen
@@ -18,37 +18,61 @@ class Permutation {
      *  Whitespace is ignored. */
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
-        for (int i = 0; i < _alphabet.size(); i++) {
-            charMap.put(Character.valueOf(_alphabet.get(i)),
-                    Character.valueOf(_alphabet.get(i)));
-            reverseCharMap.put(Character.valueOf(_alphabet.get(i)),
-                    Character.valueOf(_alphabet.get(i)));
-        }
+        _forward = identity(size());
+        _inverse = identity(size());
         cycleList = splitCycles(cycles);
         for (int i = 0; i < cycleList.size(); i++) {
             this.addCycle(cycleList.get(i));
         }
     }
 
+    /** Set this Permutation to the one that maps index K of ALPHABET to
+     *  index MAP[K].  MAP must contain each index of ALPHABET exactly once.
+     *  This is the form used for alphabets (such as the byte alphabet)
+     *  whose characters cannot be written in cycle notation, and for
+     *  wirings stored as tables (see RotorArena).  MAP is copied. */
+    Permutation(int[] map, Alphabet alphabet) {
+        _alphabet = alphabet;
+        if (map.length != _alphabet.size()) {
+            throw error("Permutation table has the wrong size");
+        }
+        _forward = map.clone();
+        _inverse = new int[map.length];
+        Arrays.fill(_inverse, -1);
+        for (int i = 0; i < map.length; i++) {
+            if (map[i] < 0 || map[i] >= map.length || _inverse[map[i]] >= 0) {
+                throw error("Permutation table is not a permutation");
+            }
+            _inverse[map[i]] = i;
+        }
+    }
+
+    /** Return the identity table of size N. */
+    private static int[] identity(int n) {
+        int[] result = new int[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = i;
+        }
+        return result;
+    }
+
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     *  c0c1...cm.
+     *  c0c1...cm.  Characters not in my alphabet are ignored as sources.
      *  @param cycle Cycle to be added to the permutation*/
     private void addCycle(String cycle) {
         if (cycle.length() == 1) {
             return;
-        } else {
-            for (int i = 0; i < cycle.length() - 1; i++) {
-                charMap.replace((cycle.charAt(i)),
-                        (cycle.charAt(i + 1)));
+        }
+        int m = cycle.length();
+        for (int i = 0; i < m; i++) {
+            int from = _alphabet.toInt(cycle.charAt(i));
+            int to = _alphabet.toInt(cycle.charAt((i + 1) % m));
+            if (from >= 0) {
+                _forward[from] = to;
             }
-            charMap.replace((cycle.charAt(cycle.length() - 1)),
-                    (cycle.charAt(0)));
-            for (int i = cycle.length() - 1; i > 0; i--) {
-                reverseCharMap.replace((cycle.charAt(i)),
-                        (cycle.charAt(i - 1)));
+            if (to >= 0) {
+                _inverse[to] = from;
             }
-            reverseCharMap.replace((cycle.charAt(0)),
-                    (cycle.charAt(cycle.length() - 1)));
         }
     }
 
@@ -86,26 +110,36 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        int r = wrap(p);
-        return _alphabet.toInt(permute(_alphabet.toChar(r)));
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        int r = wrap(c);
-        return _alphabet.toInt(this.invert(_alphabet.toChar(r)));
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        return charMap.get(p);
+        return _alphabet.get(_forward[_alphabet.toInt(p)]);
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-        return reverseCharMap.get(c);
+        return _alphabet.get(_inverse[_alphabet.toInt(c)]);
+    }
+
+    /** Return the table of permute(K) for each index K.  The result is
+     *  shared, and must not be modified. */
+    int[] forwardTable() {
+        return _forward;
+    }
+
+    /** Return the table of invert(K) for each index K.  The result is
+     *  shared, and must not be modified. */
+    int[] inverseTable() {
+        return _inverse;
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -116,8 +150,8 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        for (int i = 0; i < cycleList.size(); i++) {
-            if (cycleList.get(i).length() == 1) {
+        for (int i = 0; i < size(); i++) {
+            if (_forward[i] == i) {
                 return false;
             }
         }
@@ -126,11 +160,12 @@ class Permutation {
 
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
-    /** Hashmap that maps the permutation forward. */
-    private HashMap<Character, Character> charMap = new HashMap<>();
-    /** Hashmap that maps the permutation backwards. */
-    private HashMap<Character, Character> reverseCharMap = new HashMap<>();
-    /** ArrayList that contains all the cycles. */
+    /** ArrayList that contains all the cycles, or null if I was built
+     *  from a table. */
     private ArrayList<String> cycleList;
+    /** Index table: _forward[K] is permute(K). */
+    private int[] _forward;
+    /** Index table: _inverse[K] is invert(K). */
+    private int[] _inverse;
 }
 
@@ -92,7 +92,25 @@ public class PermutationTest {
     public void testDerangement() {
         Alphabet hello = new Alphabet();
         Permutation p = new Permutation("(PNH) (ABDFIKLZYXW) (JC)", hello);
-        assert (p.derangement());
+        assertFalse(p.derangement());
+        p = new Permutation("(PNH) (ABDFIKLZYXW) (JC) (EGMOQRSTUV)", hello);
+        assertTrue(p.derangement());
+        assertFalse(new Permutation("(AB) (C)", new Alphabet("ABC"))
+                    .derangement());
+    }
+
+    @Test
+    public void testTableConstructor() {
+        Alphabet abcd = new Alphabet("ABCD");
+        perm = new Permutation(new int[] {1, 0, 2, 3}, abcd);
+        checkPerm("table", "ABCD", "BACD");
+        assertFalse(perm.derangement());
+        perm = new Permutation(new int[] {1, 2, 3, 0}, abcd);
+        assert (perm.derangement());
     }
-}
 
+    @Test(expected = EnigmaException.class)
+    public void testTableNotPermutation() {
+        new Permutation(new int[] {1, 1, 2, 3}, new Alphabet("ABCD"));
+    }
+}
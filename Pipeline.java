@@ -0,0 +1,326 @@
+package enigma;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static enigma.EnigmaException.*;
+
+/** Pipelined processing for Main: reading lines, converting them,
+ *  grouping the results into five-letter groups, and writing them each
+ *  run on their own thread, so that waiting for input or output does not
+ *  hold up conversion.  The output, and the point at which an error stops
+ *  it, are exactly as for Main.process.
+ *
+ *  The stages share one ring of slots, each holding a line and its
+ *  output in buffers that are reused as the ring wraps around.  Each
+ *  stage counts the slots it has finished; a stage may take a slot once
+ *  the stage before it has finished with it, and the reader may refill a
+ *  slot once the writer has finished with it.  So lines stay in order
+ *  without any locks, and nothing is allocated per line once the buffers
+ *  have grown to the longest line.  How full the ring is in front of
+ *  each stage, and how often each stage waits, show which stage limits
+ *  the rest (see occupancy and stalls, and EnigmaEvents.PipelineRun).
+ *  @author Ryan Chen
+ */
+final class Pipeline {
+
+    /** Stage numbers. */
+    static final int READ = 0, CONVERT = 1, FORMAT = 2, WRITE = 3;
+
+    /** A pipeline for MAIN with SLOTS slots, a power of 2. */
+    Pipeline(Main main, int slots) {
+        if (slots < 2 || Integer.bitCount(slots) != 1) {
+            throw error("pipeline size must be a power of 2");
+        }
+        _main = main;
+        _ring = new Slot[slots];
+        for (int i = 0; i < slots; i++) {
+            _ring[i] = new Slot();
+        }
+        for (int s = 0; s < STAGES; s++) {
+            _done[s] = new AtomicLong();
+        }
+    }
+
+    /** Process the lines of IN as Main.process does, writing the results
+     *  to OUTPUT, and return when all have been written.  Converting
+     *  happens on the calling thread. */
+    void run(Reader in, PrintStream output) {
+        _main.start();
+        Writer out = new BufferedWriter(new OutputStreamWriter(output),
+                                        BUFFER_SIZE);
+        Thread reader = new Thread(() -> stage(READ, (slot, seq) ->
+            read(in, slot)), "enigma-read");
+        Thread formatter = new Thread(() -> stage(FORMAT, this::format),
+                                      "enigma-format");
+        Thread writer = new Thread(() -> stage(WRITE, (slot, seq) ->
+            write(out, slot, seq)), "enigma-write");
+        for (Thread thread : new Thread[] {reader, formatter, writer}) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+        stage(CONVERT, this::convert);
+        try {
+            formatter.join();
+            writer.join();
+            out.flush();
+            if (_error == null) {
+                reader.join();
+                in.close();
+            }
+        } catch (InterruptedException excp) {
+            fail(error("pipeline interrupted"));
+        } catch (IOException excp) {
+            fail(error("could not write output"));
+        }
+        EnigmaEvents.pipeline(this);
+        if (_error != null) {
+            throw _error;
+        }
+    }
+
+    /** Return the average number of slots waiting for STAGE each time it
+     *  took one (or, for READ, the number of slots already filled each
+     *  time it filled one). */
+    double occupancy(int stage) {
+        long taken = _taken[stage];
+        return taken == 0 ? 0.0 : (double) _waiting[stage] / taken;
+    }
+
+    /** Return the number of times STAGE had to wait: for a slot to be
+     *  filled by the stage before it, or, for READ, to be emptied. */
+    long stalls(int stage) {
+        return _stalls[stage];
+    }
+
+    /** Return the number of slots I have. */
+    int slots() {
+        return _ring.length;
+    }
+
+    /** A step that does the work of one stage on one slot. */
+    private interface Step {
+        /** Process SLOT, which is the slot with sequence number SEQ.
+         *  Return false iff there are no more slots to process. */
+        boolean process(Slot slot, long seq) throws IOException;
+    }
+
+    /** Run stage STAGE, applying STEP to each slot in turn.  If STEP
+     *  throws an exception, record it, and stop the stages before this
+     *  one, while those after it finish the slots before the failed one. */
+    private void stage(int stage, Step step) {
+        AtomicLong done = _done[stage];
+        try {
+            for (long seq = 0; ; seq++) {
+                if (!await(stage, seq)) {
+                    break;
+                }
+                Slot slot = _ring[(int) seq & (_ring.length - 1)];
+                if (!step.process(slot, seq)) {
+                    end(seq);
+                    break;
+                }
+                done.lazySet(seq + 1);
+            }
+        } catch (IOException excp) {
+            fail(error("could not read or write: %s", excp.getMessage()));
+            end(done.get());
+        } catch (RuntimeException excp) {
+            fail(excp);
+            end(done.get());
+        }
+    }
+
+    /** Record that there are at most END slots to process. */
+    private synchronized void end(long end) {
+        if (end < _end) {
+            _end = end;
+        }
+    }
+
+    /** Wait until stage STAGE may take the slot with sequence number SEQ,
+     *  recording statistics.  Return false if that slot will never come
+     *  (because the input has ended or a stage has failed). */
+    private boolean await(int stage, long seq) {
+        boolean stalled = false;
+        for (int spins = 0; ; spins++) {
+            long available;
+            if (stage == READ) {
+                if (_error != null) {
+                    return false;
+                }
+                available = _done[WRITE].get() + _ring.length - seq;
+            } else {
+                if (seq >= _end) {
+                    return false;
+                }
+                available = _done[stage - 1].get() - seq;
+            }
+            if (available > 0) {
+                _taken[stage] += 1;
+                _waiting[stage] += stage == READ ? _ring.length - available
+                    : available - 1;
+                if (stalled) {
+                    _stalls[stage] += 1;
+                }
+                return true;
+            }
+            stalled = true;
+            if (spins < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+    }
+
+    /** Record EXCP as the failure of the pipeline, unless one is already
+     *  recorded. */
+    private synchronized void fail(RuntimeException excp) {
+        if (_error == null) {
+            _error = excp;
+        }
+    }
+
+    /** Read the next line of IN into SLOT.  Lines end as for
+     *  Scanner.nextLine: at LF, CR LF, CR, U+2028, U+2029 or U+0085, or
+     *  at the end of input, and there is no empty last line.  Return
+     *  false at the end of the input. */
+    private boolean read(Reader in, Slot slot) throws IOException {
+        int n = 0;
+        while (true) {
+            if (_chunkPos == _chunkEnd) {
+                _chunkEnd = in.read(_chunk);
+                _chunkPos = 0;
+                if (_chunkEnd <= 0) {
+                    _chunkEnd = 0;
+                    slot.inLength = n;
+                    return n > 0;
+                }
+            }
+            char c = _chunk[_chunkPos++];
+            if (_afterReturn) {
+                _afterReturn = false;
+                if (c == '\n') {
+                    continue;
+                }
+            }
+            if (c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029'
+                || c == '\u0085') {
+                _afterReturn = c == '\r';
+                slot.inLength = n;
+                return true;
+            }
+            if (n == slot.in.length) {
+                slot.in = Arrays.copyOf(slot.in, 2 * n);
+            }
+            slot.in[n++] = c;
+        }
+    }
+
+    /** Convert the line in SLOT, with sequence number SEQ, in place. */
+    private boolean convert(Slot slot, long seq) {
+        int room = slot.inLength * _main.expansion();
+        if (room > slot.in.length) {
+            slot.in = Arrays.copyOf(slot.in, room);
+        }
+        slot.messageLength = _main.processLine(slot.in, slot.inLength);
+        return true;
+    }
+
+    /** Group the converted message in SLOT into its output line. */
+    private boolean format(Slot slot, long seq) {
+        int n = slot.messageLength;
+        if (n < 0) {
+            slot.outLength = -1;
+            return true;
+        }
+        int room = n + n / GROUP;
+        if (room > slot.out.length) {
+            slot.out = new char[Math.max(room, 2 * slot.out.length)];
+        }
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            if (i > 0 && i % GROUP == 0) {
+                slot.out[k++] = ' ';
+            }
+            slot.out[k++] = slot.in[i];
+        }
+        slot.outLength = k;
+        return true;
+    }
+
+    /** Write the output line of SLOT, if any, to OUT, flushing OUT when
+     *  no more lines are ready or once the last line is written. */
+    private boolean write(Writer out, Slot slot, long seq) throws IOException {
+        if (slot.outLength >= 0) {
+            out.write(slot.out, 0, slot.outLength);
+            out.write(LINE_SEPARATOR);
+        }
+        if (_done[FORMAT].get() <= seq + 1) {
+            out.flush();
+        }
+        return true;
+    }
+
+    /** A reusable place for one line and its output. */
+    private static class Slot {
+        /** The line, and then its converted message. */
+        private char[] in = new char[INITIAL_LINE];
+        /** The length of the line. */
+        private int inLength;
+        /** The length of the converted message, or -1 if none. */
+        private int messageLength;
+        /** The output line. */
+        private char[] out = new char[INITIAL_LINE];
+        /** The length of the output line, or -1 if none. */
+        private int outLength;
+    }
+
+    /** The Main whose lines I process. */
+    private final Main _main;
+    /** The slots. */
+    private final Slot[] _ring;
+    /** The number of slots each stage has finished. */
+    private final AtomicLong[] _done = new AtomicLong[STAGES];
+    /** The number of slots there will be, once known. */
+    private volatile long _end = Long.MAX_VALUE;
+    /** The first failure, or null. */
+    private volatile RuntimeException _error;
+    /** For each stage, the number of slots taken, the total of the slots
+     *  waiting each time, and the number of waits.  Each is updated only
+     *  by its stage's thread. */
+    private final long[] _taken = new long[STAGES],
+        _waiting = new long[STAGES], _stalls = new long[STAGES];
+    /** Characters read from the input but not yet put in a slot. */
+    private final char[] _chunk = new char[BUFFER_SIZE];
+    /** The unconsumed part of _chunk. */
+    private int _chunkPos, _chunkEnd;
+    /** True iff the last line ended at a \r, so a following \n is part
+     *  of the same line end. */
+    private boolean _afterReturn;
+
+    /** The number of stages. */
+    private static final int STAGES = 4;
+    /** The default number of slots. */
+    static final int DEFAULT_SLOTS = 256;
+    /** The size of a message group in the output. */
+    private static final int GROUP = 5;
+    /** The initial size of a slot's buffers. */
+    private static final int INITIAL_LINE = 128;
+    /** The size of the input and output buffers. */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** The number of times to spin before parking, while waiting. */
+    private static final int SPINS = 100;
+    /** The time to park for, while waiting. */
+    private static final long PARK_NANOS = 20_000;
+    /** The end of an output line. */
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+}
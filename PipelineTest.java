@@ -0,0 +1,96 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.Scanner;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Pipeline class.
+ *  @author Ryan Chen
+ */
+public class PipelineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the output of Main.process on INPUT, followed by the
+     *  error message if there is one. */
+    private static String serial(String input) {
+        return outputAndError((out) ->
+            new Main(navalConfig(5, 3), new Scanner(input), out).process());
+    }
+
+    /** Return the output of a Pipeline with SLOTS slots on INPUT,
+     *  followed by the error message if there is one. */
+    private static String pipelined(String input, int slots) {
+        return outputAndError((out) -> {
+                Main main = new Main(navalConfig(5, 3), null, null);
+                new Pipeline(main, slots).run(new StringReader(input), out);
+            });
+    }
+
+    /** Return an input with SECTIONS settings lines, each followed by
+     *  a few messages. */
+    private static String input(int sections) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < sections; i++) {
+            result.append("* B Beta III IV I ")
+                .append((char) ('A' + i % 26)).append("XLE (YF) (ZH)\n");
+            for (int j = 0; j < i % 4; j++) {
+                result.append("HELLO WORLD ".repeat(j * 3 + i % 7))
+                    .append("\n\n");
+            }
+        }
+        return result.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesMain() {
+        String in = input(300);
+        String expected = serial(in);
+        assertEquals(expected, pipelined(in, 2));
+        assertEquals(expected, pipelined(in, 8));
+        assertEquals(expected, pipelined(in, 256));
+    }
+
+    @Test
+    public void testLineEnds() {
+        String in = "* B Beta III IV I AXLE (YF) (ZH)\r\nHELLO WORLD\r\r"
+            + "ABC\u2028DEF\u0085\n";
+        assertEquals(serial(in), pipelined(in, 4));
+        assertEquals(serial(""), pipelined("", 4));
+    }
+
+    @Test
+    public void testStopsAtError() {
+        String in = input(40) + "HELLo\n" + input(40);
+        String expected = serial(in);
+        assertTrue(expected.contains("Error: "));
+        assertEquals(expected, pipelined(in, 4));
+        assertEquals(serial("HELLO\n"), pipelined("HELLO\n", 4));
+    }
+
+    @Test
+    public void testStatistics() {
+        Main main = new Main(navalConfig(5, 3), null, null);
+        Pipeline p = new Pipeline(main, 16);
+        p.run(new StringReader(input(100)),
+              new PrintStream(new ByteArrayOutputStream()));
+        for (int stage = Pipeline.READ; stage <= Pipeline.WRITE; stage++) {
+            assertTrue(p.occupancy(stage) >= 0);
+            assertTrue(p.occupancy(stage) < 16);
+        }
+    }
+}
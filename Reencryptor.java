@@ -0,0 +1,213 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** Re-encrypts an edited message without re-running the machine over
+ *  the whole of it.  The machine enciphers each character according to
+ *  its position alone, so replacing characters changes only the
+ *  ciphertext at those positions, which is recomputed by seeking the
+ *  machine to each of them.  An insertion or deletion shifts every
+ *  later character, so the ciphertext is recomputed from the first one
+ *  onward.
+ *
+ *  Seeking uses packed snapshots of the machine (see Machine.snapshot)
+ *  taken every INTERVAL positions.  While snapshots are being taken the
+ *  states seen are also remembered, so once the machine's stepping
+ *  returns to an earlier state (after at most the period of its rotors,
+ *  16900 characters for the naval machine) every later position maps
+ *  back onto a position already seen.  A seek therefore costs at most
+ *  INTERVAL steps plus, the first time, the steps up to the period, no
+ *  matter how long the message.
+ *  @author Ryan Chen
+ */
+final class Reencryptor {
+
+    /** A re-encryptor for messages that follow the settings line SETTINGS
+     *  on machines described by CONFIG. */
+    Reencryptor(MachineConfig config, String settings) {
+        _machine = machine(config, settings);
+        _explorer = machine(config, settings);
+        checkpoint(_explorer.snapshot());
+        _seen.put(_explorer.snapshot(), 0);
+    }
+
+    /** Return a machine described by CONFIG set up by SETTINGS. */
+    private static Machine machine(MachineConfig config, String settings) {
+        Main main = new Main(config, null, null);
+        main.start();
+        main.processLine(settings);
+        return main.machine();
+    }
+
+    /** Return the ciphertext of the result of applying EDITS to PLAIN,
+     *  given that CIPHER is the ciphertext of PLAIN.  Both are strings of
+     *  alphabet characters without spaces, and the offsets of EDITS refer
+     *  to PLAIN.  Edits may not overlap. */
+    String patch(String plain, String cipher, List<Edit> edits) {
+        if (plain.length() != cipher.length()) {
+            throw error("plaintext and ciphertext differ in length");
+        }
+        Edit[] sorted = edits.toArray(new Edit[0]);
+        Arrays.sort(sorted, Comparator.comparingInt(Edit::offset));
+        int end = 0;
+        for (Edit edit : sorted) {
+            if (edit.offset() < end || edit.offset() + edit.delete()
+                > plain.length()) {
+                throw error("edits overlap or extend past the message");
+            }
+            end = edit.offset() + edit.delete();
+        }
+        String edited = apply(plain, sorted);
+        char[] result = new char[edited.length()];
+        int tail = result.length;
+        for (Edit edit : sorted) {
+            if (edit.delete() != edit.insert().length()) {
+                tail = edit.offset();
+                break;
+            }
+        }
+        cipher.getChars(0, tail, result, 0);
+        for (Edit edit : sorted) {
+            if (edit.offset() >= tail) {
+                break;
+            }
+            int length = edit.insert().length();
+            edit.insert().getChars(0, length, result, edit.offset());
+            seek(edit.offset());
+            _machine.convert(result, edit.offset(), edit.offset() + length);
+        }
+        if (tail < result.length) {
+            edited.getChars(tail, result.length, result, tail);
+            seek(tail);
+            _machine.convert(result, tail, result.length);
+        }
+        return new String(result);
+    }
+
+    /** Return PLAIN with EDITS, which do not overlap, applied. */
+    static String apply(String plain, Edit[] edits) {
+        Edit[] sorted = edits.clone();
+        Arrays.sort(sorted, Comparator.comparingInt(Edit::offset));
+        StringBuilder result = new StringBuilder();
+        int from = 0;
+        for (Edit edit : sorted) {
+            result.append(plain, from, edit.offset()).append(edit.insert());
+            from = edit.offset() + edit.delete();
+        }
+        return result.append(plain, from, plain.length()).toString();
+    }
+
+    /** Put my machine in the state it has after converting POSITION
+     *  characters. */
+    void seek(long position) {
+        while (_periodStart < 0 && _explored < position) {
+            explore();
+        }
+        if (_periodStart >= 0 && position > _periodStart) {
+            position = _periodStart + (position - _periodStart) % _period;
+        }
+        int k = (int) (position / INTERVAL);
+        _machine.restore(_checkpoints[k]);
+        for (long p = (long) k * INTERVAL; p < position; p++) {
+            _machine.advanceMachine();
+        }
+    }
+
+    /** Step my explorer to the next position, recording a checkpoint if
+     *  it is at a multiple of INTERVAL and noting whether its stepping
+     *  has returned to a state already seen. */
+    private void explore() {
+        _explorer.advanceMachine();
+        _explored += 1;
+        long state = _explorer.snapshot();
+        if (_explored % INTERVAL == 0) {
+            checkpoint(state);
+        }
+        if (_seen.size() < MAX_TRACKED) {
+            long first = _seen.put(state, _explored);
+            if (first != LongLongMap.MISSING) {
+                _periodStart = first;
+                _period = _explored - first;
+                _seen = null;
+            }
+        }
+    }
+
+    /** Record STATE as the next checkpoint. */
+    private void checkpoint(long state) {
+        if (_checkpointCount == _checkpoints.length) {
+            _checkpoints = Arrays.copyOf(_checkpoints,
+                                         2 * _checkpoints.length);
+        }
+        _checkpoints[_checkpointCount++] = state;
+    }
+
+    /** An edit to a message: deleting DELETE characters at OFFSET and
+     *  inserting INSERT in their place. */
+    static class Edit {
+
+        /** An edit replacing DELETE characters at OFFSET with INSERT. */
+        Edit(int offset, int delete, String insert) {
+            if (offset < 0 || delete < 0) {
+                throw error("bad edit at %d", offset);
+            } else if (insert == null) {
+                throw error("edit at %d has no inserted text", offset);
+            }
+            _offset = offset;
+            _delete = delete;
+            _insert = insert;
+        }
+
+        /** Return the offset of the edit. */
+        int offset() {
+            return _offset;
+        }
+
+        /** Return the number of characters deleted. */
+        int delete() {
+            return _delete;
+        }
+
+        /** Return the text inserted. */
+        String insert() {
+            return _insert;
+        }
+
+        /** The offset. */
+        private final int _offset;
+        /** The number of characters deleted. */
+        private final int _delete;
+        /** The text inserted. */
+        private final String _insert;
+    }
+
+    /** The machine that converts edited text. */
+    private final Machine _machine;
+    /** The machine that steps ahead to take checkpoints. */
+    private final Machine _explorer;
+    /** The state after each multiple of INTERVAL characters, as far as
+     *  _explored, in the first _checkpointCount elements. */
+    private long[] _checkpoints = new long[INITIAL_CHECKPOINTS];
+    /** The number of checkpoints recorded. */
+    private int _checkpointCount;
+    /** The position of each state seen, until the period is found. */
+    private LongLongMap _seen = new LongLongMap();
+    /** The number of positions _explorer has stepped through. */
+    private long _explored;
+    /** The first position of the repeating part of the states, or -1 if
+     *  not yet known. */
+    private long _periodStart = -1;
+    /** The length of the repeating part. */
+    private long _period;
+
+    /** The number of positions between checkpoints. */
+    static final int INTERVAL = 256;
+    /** The initial room for checkpoints. */
+    private static final int INITIAL_CHECKPOINTS = 64;
+    /** The most states remembered while looking for the period. */
+    private static final int MAX_TRACKED = 1 << 24;
+}
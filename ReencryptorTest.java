@@ -0,0 +1,94 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Reencryptor class.
+ *  @author Ryan Chen
+ */
+public class ReencryptorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The settings line used. */
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE BCDF (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Return a random message of LENGTH letters from RANDOM. */
+    private static String text(Random random, int length) {
+        char[] result = new char[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = (char) ('A' + random.nextInt(26));
+        }
+        return new String(result);
+    }
+
+    /** Return the ciphertext of PLAIN, computed from scratch. */
+    private static String encipher(String plain) {
+        return navalMachine(SETTINGS).convert(plain);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void replacementsMatchFullRun() {
+        Random random = new Random(37);
+        String plain = text(random, 50000);
+        String cipher = encipher(plain);
+        Reencryptor patcher = new Reencryptor(navalConfig(5, 3), SETTINGS);
+        List<Reencryptor.Edit> edits = Arrays.asList(
+            new Reencryptor.Edit(49990, 10, "HIAWATHAXX"),
+            new Reencryptor.Edit(3, 4, "ABCD"),
+            new Reencryptor.Edit(20000, 1, "Q"));
+        String edited = Reencryptor.apply(
+            plain, edits.toArray(new Reencryptor.Edit[0]));
+        assertEquals(encipher(edited), patcher.patch(plain, cipher, edits));
+    }
+
+    @Test
+    public void insertionsMatchFullRun() {
+        Random random = new Random(38);
+        String plain = text(random, 30000);
+        String cipher = encipher(plain);
+        Reencryptor patcher = new Reencryptor(navalConfig(5, 3), SETTINGS);
+        Reencryptor.Edit[] edits = {
+            new Reencryptor.Edit(100, 2, "XY"),
+            new Reencryptor.Edit(25000, 0, "INSERTED"),
+            new Reencryptor.Edit(29990, 10, ""),
+        };
+        String edited = Reencryptor.apply(plain, edits);
+        assertEquals(encipher(edited),
+                     patcher.patch(plain, cipher, Arrays.asList(edits)));
+    }
+
+    @Test
+    public void seekWrapsAroundPeriod() {
+        Random random = new Random(39);
+        String plain = text(random, 1000000);
+        String cipher = encipher(plain);
+        Reencryptor patcher = new Reencryptor(navalConfig(5, 3), SETTINGS);
+        Reencryptor.Edit[] edits = {
+            new Reencryptor.Edit(999000, 5, "ENIGM"),
+            new Reencryptor.Edit(999990, 10, "ABCDEFGHIJ"),
+        };
+        String patched = patcher.patch(plain, cipher, Arrays.asList(edits));
+        assertEquals(encipher(Reencryptor.apply(plain, edits)), patched);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void rejectsMissingInsert() {
+        new Reencryptor.Edit(3, 1, null);
+    }
+}
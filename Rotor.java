@@ -44,7 +44,7 @@ class Rotor {
     }
 
     /** Return my current setting. */
-    int setting() {
+    final int setting() {
         return _setting;
     }
 
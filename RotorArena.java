@@ -0,0 +1,487 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** A library of rotors stored off the Java heap: the kind, notches, and
+ *  forward and inverse wirings of every rotor, packed into one buffer
+ *  (one byte per entry for alphabets of at most 256 characters and two
+ *  otherwise), with their names in one byte array and a table of name
+ *  offsets.  A library of a million rotors is thus a handful of objects
+ *  for the collector to look at, rather than several per rotor.  Rotor
+ *  and Permutation objects are made only for the rotors a machine
+ *  actually uses (see newRotor and MachineConfig).
+ *
+ *  An arena can be saved to a file and opened again by mapping it, so
+ *  that processes share one copy of a library through the page cache.
+ *  Main.readConfig accepts such a file in place of a configuration file.
+ *  The file is a header (magic number, version, alphabet size, entry
+ *  width, number of rotors, numbers of slots and pawls, and the alphabet
+ *  in UTF-16), then the kinds, the notch bit sets and the wirings, each
+ *  section padded to a multiple of 8 bytes, then the name offsets and
+ *  the names in UTF-8.
+ *
+ *  Usage: java enigma.RotorArena CONFIG FILE saves the rotors of the
+ *  configuration file CONFIG as an arena in FILE.
+ *  @author Ryan Chen
+ */
+final class RotorArena {
+
+    /** Save the configuration named by ARGS[0] as an arena in the file
+     *  named by ARGS[1]. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 2) {
+                throw error("Usage: java enigma.RotorArena CONFIG FILE");
+            }
+            fromConfig(Main.readConfig(new File(args[0])))
+                .save(new File(args[1]));
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** An empty arena with room for CAPACITY rotors over ALPHABET, for
+     *  machines with NUMROTORS slots and NUMPAWLS pawls. */
+    RotorArena(Alphabet alphabet, int numRotors, int numPawls,
+               int capacity) {
+        _alphabet = alphabet;
+        _numRotors = numRotors;
+        _numPawls = numPawls;
+        _size = alphabet.size();
+        _width = _size <= BYTE_LIMIT ? 1 : 2;
+        _notchBytes = (_size + Byte.SIZE - 1) / Byte.SIZE;
+        _capacity = capacity;
+        layout(FIXED_HEADER + 2 * _size);
+        _buffer = ByteBuffer.allocateDirect(checkedSize(_wiringsAt
+            + (long) capacity * 2 * _size * _width));
+        _nameOffsets = new int[capacity + 1];
+        _names = new byte[Math.max(1, capacity) * NAME_GUESS];
+        _hash = new int[tableSize(capacity)];
+    }
+
+    /** Return an arena holding every rotor of CONFIG. */
+    static RotorArena fromConfig(MachineConfig config) {
+        List<String> names = config.rotorNames();
+        RotorArena result = new RotorArena(config.alphabet(),
+                                           config.numRotors(),
+                                           config.numPawls(), names.size());
+        for (String name : names) {
+            RotorSpec spec = config.spec(name);
+            result.add(name, spec.type(), spec.notches(),
+                       spec.permutation().forwardTable());
+        }
+        return result;
+    }
+
+    /** Compute the offsets of my sections, given that the header ends
+     *  at offset HEADER. */
+    private void layout(int header) {
+        _typesAt = align(header);
+        _notchesAt = align(_typesAt + _capacity);
+        _wiringsAt = align(_notchesAt + (long) _capacity * _notchBytes);
+    }
+
+    /** Return N rounded up to a multiple of 8. */
+    private static long align(long n) {
+        return (n + ALIGN - 1) & ~(ALIGN - 1);
+    }
+
+    /** Return N as a buffer size, if it is small enough for one. */
+    private static int checkedSize(long n) {
+        if (n > Integer.MAX_VALUE) {
+            throw error("rotor arena too large");
+        }
+        return (int) n;
+    }
+
+    /** Return a power-of-two hash table size for N names. */
+    private static int tableSize(int n) {
+        return Integer.highestOneBit(Math.max(MIN_TABLE, 2 * n) - 1) << 1;
+    }
+
+    /** Add the rotor NAME of kind TYPE ('M', 'N' or 'R'), with NOTCHES,
+     *  whose forward wiring maps index K to FORWARD[K], returning its
+     *  index in the arena. */
+    int add(String name, char type, String notches, int[] forward) {
+        if (_count == _capacity) {
+            throw error("rotor arena is full");
+        }
+        if (index(name) >= 0) {
+            throw error("duplicate rotor %s in arena", name);
+        }
+        if (forward.length != _size) {
+            throw error("rotor %s has the wrong size", name);
+        }
+        int i = _count;
+        int[] inverse = new Permutation(forward, _alphabet).inverseTable();
+        _buffer.put(checkedSize(_typesAt + i), (byte) type);
+        for (int k = 0; k < notches.length(); k++) {
+            int c = _alphabet.toInt(notches.charAt(k));
+            if (c >= 0) {
+                int at = checkedSize(_notchesAt + (long) i * _notchBytes
+                                     + c / Byte.SIZE);
+                _buffer.put(at, (byte) (_buffer.get(at)
+                                        | 1 << (c % Byte.SIZE)));
+            }
+        }
+        for (int k = 0; k < _size; k++) {
+            putEntry(wiring(i, false) + k, forward[k]);
+            putEntry(wiring(i, true) + k, inverse[k]);
+        }
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int start = _nameOffsets[i];
+        if (start + bytes.length > _names.length) {
+            _names = Arrays.copyOf(_names, Math.max(2 * _names.length,
+                                                    start + bytes.length));
+        }
+        System.arraycopy(bytes, 0, _names, start, bytes.length);
+        _nameOffsets[i + 1] = start + bytes.length;
+        _count += 1;
+        insertName(i);
+        return i;
+    }
+
+    /** Return the entry number of the first entry of the forward (or if
+     *  INVERSE, the inverse) wiring of rotor I. */
+    private long wiring(int i, boolean inverse) {
+        return ((long) i * 2 + (inverse ? 1 : 0)) * _size;
+    }
+
+    /** Store VALUE as wiring entry number ENTRY. */
+    private void putEntry(long entry, int value) {
+        if (_width == 1) {
+            _buffer.put(checkedSize(_wiringsAt + entry), (byte) value);
+        } else {
+            _buffer.putShort(checkedSize(_wiringsAt + 2 * entry),
+                             (short) value);
+        }
+    }
+
+    /** Return wiring entry number ENTRY. */
+    private int getEntry(long entry) {
+        if (_width == 1) {
+            return _buffer.get(checkedSize(_wiringsAt + entry)) & BYTE_MASK;
+        }
+        return _buffer.getShort(checkedSize(_wiringsAt + 2 * entry))
+            & SHORT_MASK;
+    }
+
+    /** Return the number of rotors. */
+    int count() {
+        return _count;
+    }
+
+    /** Return the alphabet of the rotors. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the name of rotor I. */
+    String name(int i) {
+        return new String(_names, _nameOffsets[i],
+                          _nameOffsets[i + 1] - _nameOffsets[i],
+                          StandardCharsets.UTF_8);
+    }
+
+    /** Return the kind of rotor I ('M', 'N' or 'R'). */
+    char type(int i) {
+        return (char) _buffer.get(checkedSize(_typesAt + i));
+    }
+
+    /** Return true iff rotor I has a notch at position POSN. */
+    boolean notch(int i, int posn) {
+        int at = checkedSize(_notchesAt + (long) i * _notchBytes
+                             + posn / Byte.SIZE);
+        return (_buffer.get(at) & 1 << (posn % Byte.SIZE)) != 0;
+    }
+
+    /** Return the notches of rotor I, as characters of my alphabet. */
+    String notches(int i) {
+        StringBuilder result = new StringBuilder();
+        for (int c = 0; c < _size; c++) {
+            if (notch(i, c)) {
+                result.append(_alphabet.toChar(c));
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return where rotor I maps index K at its 0 setting. */
+    int forward(int i, int k) {
+        return getEntry(wiring(i, false) + k);
+    }
+
+    /** Return where the inverse of rotor I maps index K at its 0
+     *  setting. */
+    int inverse(int i, int k) {
+        return getEntry(wiring(i, true) + k);
+    }
+
+    /** Return the permutation of rotor I at its 0 setting.  It is made
+     *  anew from the arena on each call, at the cost of two tables of the
+     *  alphabet's size.  That is deliberate: a machine makes each rotor
+     *  it uses only once (see Machine.insertRotors), and keeping the
+     *  results here would put every rotor ever used back on the heap. */
+    Permutation permutation(int i) {
+        int[] map = new int[_size];
+        for (int k = 0; k < _size; k++) {
+            map[k] = forward(i, k);
+        }
+        return new Permutation(map, _alphabet);
+    }
+
+    /** Return a new rotor made from rotor I, in its 0 setting. */
+    Rotor newRotor(int i) {
+        char type = type(i);
+        if (type == 'M') {
+            return new MovingRotor(name(i), permutation(i), notches(i));
+        } else if (type == 'N') {
+            return new FixedRotor(name(i), permutation(i));
+        } else {
+            return new Reflector(name(i), permutation(i));
+        }
+    }
+
+    /** Return the index of the rotor named NAME, or -1 if there is
+     *  none. */
+    int index(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int mask = _hash.length - 1;
+        for (int h = hash(bytes, 0, bytes.length) & mask; _hash[h] != 0;
+             h = (h + 1) & mask) {
+            int i = _hash[h] - 1;
+            if (Arrays.equals(_names, _nameOffsets[i], _nameOffsets[i + 1],
+                              bytes, 0, bytes.length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Enter the name of rotor I into my hash table. */
+    private void insertName(int i) {
+        int mask = _hash.length - 1;
+        int h = hash(_names, _nameOffsets[i], _nameOffsets[i + 1]) & mask;
+        while (_hash[h] != 0) {
+            h = (h + 1) & mask;
+        }
+        _hash[h] = i + 1;
+    }
+
+    /** Return a hash of BYTES[FROM .. TO-1]. */
+    private static int hash(byte[] bytes, int from, int to) {
+        int result = FNV_BASIS;
+        for (int i = from; i < to; i++) {
+            result = (result ^ (bytes[i] & BYTE_MASK)) * FNV_PRIME;
+        }
+        return result ^ (result >>> (Integer.SIZE / 2));
+    }
+
+    /** Return the names of my rotors, in order.  This makes a String for
+     *  each rotor, so is meant for small arenas. */
+    List<String> names() {
+        ArrayList<String> result = new ArrayList<>();
+        for (int i = 0; i < _count; i++) {
+            result.add(name(i));
+        }
+        return result;
+    }
+
+    /** Return a configuration whose rotors are mine. */
+    MachineConfig config() {
+        return new MachineConfig(_alphabet, _numRotors, _numPawls, this);
+    }
+
+    /** Write me to FILE, under a temporary name that is then renamed. */
+    void save(File file) {
+        File temp = new File(file.getPath() + ".tmp");
+        long header = FIXED_HEADER + 2L * _size;
+        long wiringsAt, typesAt, notchesAt;
+        typesAt = align(header);
+        notchesAt = align(typesAt + _count);
+        wiringsAt = align(notchesAt + (long) _count * _notchBytes);
+        long wirings = (long) _count * 2 * _size * _width;
+        long namesAt = align(wiringsAt + wirings);
+        int nameBytes = _nameOffsets[_count];
+        long total = namesAt + 4L * (_count + 1) + nameBytes;
+        try (RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+             FileChannel channel = raf.getChannel()) {
+            raf.setLength(0);
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE,
+                                               0, checkedSize(total));
+            map.order(ByteOrder.BIG_ENDIAN);
+            map.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, _size)
+                .putInt(12, _width).putInt(16, _count)
+                .putInt(20, _numRotors).putInt(24, _numPawls);
+            for (int c = 0; c < _size; c++) {
+                map.putChar(FIXED_HEADER + 2 * c, _alphabet.toChar(c));
+            }
+            copy(map, typesAt, _typesAt, _count);
+            copy(map, notchesAt, _notchesAt, (long) _count * _notchBytes);
+            copy(map, wiringsAt, _wiringsAt, wirings);
+            for (int i = 0; i <= _count; i++) {
+                map.putInt(checkedSize(namesAt + 4L * i), _nameOffsets[i]);
+            }
+            map.position(checkedSize(namesAt + 4L * (_count + 1)));
+            map.put(_names, 0, nameBytes);
+            map.force();
+        } catch (IOException excp) {
+            throw error("could not write %s", temp);
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw error("could not rename %s", temp);
+        }
+    }
+
+    /** Copy LENGTH bytes starting at offset FROM of my buffer to offset
+     *  TO of MAP. */
+    private void copy(ByteBuffer map, long to, long from, long length) {
+        ByteBuffer source = _buffer.duplicate();
+        source.position(checkedSize(from)).limit(checkedSize(from + length));
+        ByteBuffer target = map.duplicate();
+        target.position(checkedSize(to));
+        target.put(source);
+    }
+
+    /** Return true iff FILE starts with the magic number of an arena. */
+    static boolean isArena(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return raf.length() >= Integer.BYTES && raf.readInt() == MAGIC;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Return the arena stored in FILE, mapped read-only. */
+    static RotorArena open(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            ByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                         raf.length());
+            return new RotorArena(file, map);
+        } catch (IOException excp) {
+            throw error("could not open %s", file);
+        }
+    }
+
+    /** An arena read from MAP, the contents of FILE. */
+    private RotorArena(File file, ByteBuffer map) {
+        map.order(ByteOrder.BIG_ENDIAN);
+        if (map.capacity() < FIXED_HEADER || map.getInt(0) != MAGIC
+            || map.getInt(4) != VERSION) {
+            throw error("%s is not a rotor arena", file);
+        }
+        _size = map.getInt(8);
+        _width = map.getInt(12);
+        _count = _capacity = map.getInt(16);
+        _numRotors = map.getInt(20);
+        _numPawls = map.getInt(24);
+        _notchBytes = (_size + Byte.SIZE - 1) / Byte.SIZE;
+        long header = FIXED_HEADER + 2L * _size;
+        if (_size < 1 || _count < 0 || header > map.capacity()
+            || _width != (_size <= BYTE_LIMIT ? 1 : 2)) {
+            throw error("%s is truncated or corrupt", file);
+        }
+        char[] chars = new char[_size];
+        for (int c = 0; c < _size; c++) {
+            chars[c] = map.getChar(FIXED_HEADER + 2 * c);
+        }
+        _alphabet = new Alphabet(new String(chars));
+        layout(checkedSize(header));
+        long namesAt = align(_wiringsAt + (long) _count * 2 * _size * _width);
+        if (namesAt + 4L * (_count + 1) > map.capacity()) {
+            throw error("%s is truncated or corrupt", file);
+        }
+        _nameOffsets = new int[_count + 1];
+        for (int i = 0; i <= _count; i++) {
+            _nameOffsets[i] = map.getInt(checkedSize(namesAt + 4L * i));
+            if (_nameOffsets[i] < (i == 0 ? 0 : _nameOffsets[i - 1])) {
+                throw error("%s is truncated or corrupt", file);
+            }
+        }
+        long namesStart = namesAt + 4L * (_count + 1);
+        if (_nameOffsets[0] != 0
+            || namesStart + _nameOffsets[_count] != map.capacity()) {
+            throw error("%s is truncated or corrupt", file);
+        }
+        for (int i = 0; i < _count; i++) {
+            if (KINDS.indexOf(map.get(checkedSize(_typesAt + i))) < 0) {
+                throw error("%s is truncated or corrupt", file);
+            }
+        }
+        _names = new byte[_nameOffsets[_count]];
+        map.position(checkedSize(namesStart));
+        map.get(_names);
+        _buffer = map;
+        _hash = new int[tableSize(_count)];
+        for (int i = 0; i < _count; i++) {
+            insertName(i);
+        }
+    }
+
+    /** The alphabet of the rotors. */
+    private final Alphabet _alphabet;
+    /** The numbers of slots and pawls of machines using the rotors. */
+    private final int _numRotors, _numPawls;
+    /** The alphabet size. */
+    private final int _size;
+    /** The number of bytes in a wiring entry. */
+    private final int _width;
+    /** The number of bytes in a notch bit set. */
+    private final int _notchBytes;
+    /** The most rotors I can hold. */
+    private final int _capacity;
+    /** The number of rotors I hold. */
+    private int _count;
+    /** The kinds, notches and wirings of the rotors. */
+    private final ByteBuffer _buffer;
+    /** The offsets in _buffer of the kinds, notches and wirings. */
+    private long _typesAt, _notchesAt, _wiringsAt;
+    /** The names of the rotors, in UTF-8, one after another. */
+    private byte[] _names;
+    /** The offset in _names of each name, and of the end of the last. */
+    private final int[] _nameOffsets;
+    /** Open-addressed table of 1 + the index of each rotor, by name. */
+    private final int[] _hash;
+
+    /** Magic number at the start of an arena file ("ENRA"). */
+    private static final int MAGIC = 0x454e5241;
+    /** Current file format version. */
+    private static final int VERSION = 1;
+    /** The size of the header before the alphabet. */
+    private static final int FIXED_HEADER = 28;
+    /** The kinds of rotor, as stored. */
+    private static final String KINDS = "MNR";
+    /** The alignment of sections. */
+    private static final long ALIGN = 8;
+    /** The largest alphabet whose entries fit in a byte. */
+    private static final int BYTE_LIMIT = 256;
+    /** Initial guess at the bytes in a name. */
+    private static final int NAME_GUESS = 8;
+    /** The smallest name hash table. */
+    private static final int MIN_TABLE = 16;
+    /** FNV-1a hash parameters. */
+    private static final int FNV_BASIS = 0x811c9dc5, FNV_PRIME = 0x01000193;
+    /** Masks that convert signed bytes and shorts to unsigned values. */
+    private static final int BYTE_MASK = 0xff, SHORT_MASK = 0xffff;
+}
@@ -0,0 +1,159 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the RotorArena class.
+ *  @author Ryan Chen
+ */
+public class RotorArenaTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The settings line used. */
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** A message. */
+    private static final String MESSAGE =
+        "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+
+    /** Return MESSAGE converted after SETTINGS by a machine for CONFIG. */
+    private String convert(MachineConfig config) {
+        return machineFor(config, SETTINGS).convert(MESSAGE);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void arenaMatchesConfig() {
+        MachineConfig naval = navalConfig(5, 3);
+        RotorArena arena = RotorArena.fromConfig(naval);
+        assertEquals(12, arena.count());
+        for (String name : NAVALA.keySet()) {
+            int i = arena.index(name);
+            assertEquals(name, arena.name(i));
+            assertEquals(NAVAL_INFO.get(name).charAt(0), arena.type(i));
+            char[] notches = NAVAL_INFO.get(name).substring(1).toCharArray();
+            Arrays.sort(notches);
+            assertEquals(new String(notches), arena.notches(i));
+            int[] forward = naval.spec(name).permutation().forwardTable();
+            for (int k = 0; k < 26; k++) {
+                assertEquals(forward[k], arena.forward(i, k));
+                assertEquals(k, arena.inverse(i, forward[k]));
+            }
+        }
+        assertEquals(-1, arena.index("IX"));
+        assertEquals(convert(naval), convert(arena.config()));
+    }
+
+    @Test
+    public void saveAndMap() throws IOException {
+        File file = File.createTempFile("enigma", ".arena");
+        try {
+            RotorArena.fromConfig(navalConfig(5, 3)).save(file);
+            assertTrue(RotorArena.isArena(file));
+            MachineConfig mapped = Main.readConfig(file);
+            assertEquals(5, mapped.numRotors());
+            assertEquals(3, mapped.numPawls());
+            assertEquals(convert(navalConfig(5, 3)), convert(mapped));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /** The offset of the kinds in a saved naval arena. */
+    private static final int KINDS_AT = 28 + 2 * 26;
+
+    /** Return the contents of a saved naval arena. */
+    private byte[] saved() throws IOException {
+        File file = File.createTempFile("enigma", ".arena");
+        try {
+            RotorArena.fromConfig(navalConfig(5, 3)).save(file);
+            return Files.readAllBytes(file.toPath());
+        } finally {
+            file.delete();
+        }
+    }
+
+    /** Return the number of rotors in the arena whose contents are
+     *  BYTES. */
+    private int count(byte[] bytes) throws IOException {
+        File file = File.createTempFile("enigma", ".arena");
+        try {
+            Files.write(file.toPath(), bytes);
+            return RotorArena.open(file).count();
+        } finally {
+            file.delete();
+        }
+    }
+
+    /** Assert that the arena whose contents are BYTES is rejected. */
+    private void assertCorrupt(byte[] bytes) throws IOException {
+        try {
+            count(bytes);
+            fail("corrupt arena accepted");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().endsWith("truncated or corrupt"));
+        }
+    }
+
+    @Test
+    public void rejectsCorruptHeader() throws IOException {
+        byte[] good = saved();
+        assertEquals(12, count(good));
+        int names = 0;
+        for (String name : NAVALA.keySet()) {
+            names += name.length();
+        }
+        int offsets = good.length - names - 4 * (NAVALA.size() + 1);
+
+        byte[] kind = good.clone();
+        kind[KINDS_AT + 3] = 'X';
+        assertCorrupt(kind);
+
+        ByteBuffer first = ByteBuffer.wrap(good.clone());
+        first.putInt(offsets, 1);
+        assertCorrupt(first.array());
+
+        ByteBuffer order = ByteBuffer.wrap(good.clone());
+        order.putInt(offsets + 4, order.getInt(offsets + 8) + 1);
+        assertCorrupt(order.array());
+    }
+
+    @Test
+    public void largeLibrary() {
+        int count = 200000;
+        RotorArena arena = new RotorArena(UPPER, 5, 3, count);
+        Random random = new Random(38);
+        int[] map = new int[26];
+        for (int i = 0; i < count; i++) {
+            for (int k = 0; k < 26; k++) {
+                int j = random.nextInt(k + 1);
+                map[k] = map[j];
+                map[j] = k;
+            }
+            arena.add("R" + i, 'M', "Q", map);
+        }
+        assertEquals(count, arena.count());
+        assertEquals(123456, arena.index("R123456"));
+        Rotor rotor = arena.config().newRotor("R199999");
+        assertTrue(rotor.rotates());
+        assertEquals(map[7], rotor.permutation().permute(7));
+    }
+}
@@ -0,0 +1,97 @@
+package enigma;
+
+/** The description of one rotor from a configuration file: its name,
+ *  its kind, its notches and its permutation.  The permutation is shared
+ *  by every Rotor made from the description, since permutations do not
+ *  change after they are built.  A description indexed by ConfigReader
+ *  keeps the text of its cycles, already checked, and does not build its
+ *  permutation until it is first needed.
+ *  @author Ryan Chen
+ */
+class RotorSpec {
+
+    /** A description of the rotor NAME, whose kind is given by TYPE
+     *  ('M' for moving, 'N' for fixed, 'R' for a reflector), with the
+     *  given NOTCHES (moving rotors only) and permutation PERM. */
+    RotorSpec(String name, char type, String notches, Permutation perm) {
+        _name = name;
+        _type = type;
+        _notches = notches;
+        _permutation = perm;
+        _alphabet = perm.alphabet();
+        _cycles = null;
+    }
+
+    /** A description of the rotor NAME of kind TYPE with the given
+     *  NOTCHES, whose permutation over ALPHABET is given by CYCLES, which
+     *  must be well formed. */
+    RotorSpec(String name, char type, String notches, String cycles,
+              Alphabet alphabet) {
+        _name = name;
+        _type = type;
+        _notches = notches;
+        _alphabet = alphabet;
+        _cycles = cycles;
+    }
+
+    /** Return the name of the rotor. */
+    String name() {
+        return _name;
+    }
+
+    /** Return the kind of the rotor ('M', 'N' or 'R'). */
+    char type() {
+        return _type;
+    }
+
+    /** Return the notches of the rotor. */
+    String notches() {
+        return _notches;
+    }
+
+    /** Return the permutation of the rotor at its 0 setting, reading and
+     *  building it if this is the first request for it. */
+    Permutation permutation() {
+        Permutation result = _permutation;
+        if (result == null) {
+            synchronized (this) {
+                result = _permutation;
+                if (result == null) {
+                    result = new Permutation(_cycles, _alphabet);
+                    _permutation = result;
+                    _cycles = null;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return true iff my permutation has been built. */
+    boolean loaded() {
+        return _permutation != null;
+    }
+
+    /** Return a new rotor as described, in its 0 setting. */
+    Rotor newRotor() {
+        if (_type == 'M') {
+            return new MovingRotor(_name, permutation(), _notches);
+        } else if (_type == 'N') {
+            return new FixedRotor(_name, permutation());
+        } else {
+            return new Reflector(_name, permutation());
+        }
+    }
+
+    /** The name of the rotor. */
+    private final String _name;
+    /** The kind of rotor. */
+    private final char _type;
+    /** The notches of the rotor. */
+    private final String _notches;
+    /** The permutation of the rotor, or null if not yet built. */
+    private volatile Permutation _permutation;
+    /** The alphabet of the rotor. */
+    private final Alphabet _alphabet;
+    /** The cycles of my permutation, or null once it is built. */
+    private String _cycles;
+}
@@ -0,0 +1,216 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Parallel processing for Main.  Each settings line starts a section
+ *  that does not depend on the ones before it, since it sets up a new
+ *  machine, so sections can be converted at once on several threads.
+ *  The input is cut into chunks of whole sections, each chunk is
+ *  processed by its own Main sharing the parsed configuration, and the
+ *  chunks' output is written in input order.  If a line fails, the
+ *  output is everything before that line, and the error is as it would
+ *  have been from Main.process.  When Main follows a changing
+ *  configuration (see Main.reload), each chunk uses the configuration
+ *  current when it was read, so that sections see configurations in
+ *  input order however their chunks are scheduled.
+ *
+ *  Only a bounded number of chunks are read ahead of the one being
+ *  written, and a section that grows past SERIAL_CHARS characters is
+ *  not buffered any further: the chunks before it are written, and the
+ *  rest of it is converted as it is read, on the calling thread, as
+ *  Main.process would.  Memory thus stays proportional to the number of
+ *  threads, however long a section is.
+ *  @author Ryan Chen
+ */
+final class Sections {
+
+    /** Parallel processing for MAIN on THREADS threads. */
+    Sections(Main main, int threads) {
+        if (threads < 1) {
+            throw error("bad thread count: %d", threads);
+        }
+        _main = main;
+        _threads = threads;
+    }
+
+    /** Process the lines of IN as Main.process does, writing the results
+     *  to OUT. */
+    void run(Scanner in, PrintStream out) {
+        _main.start();
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        ArrayDeque<Future<Result>> pending = new ArrayDeque<>();
+        try {
+            ArrayList<String> chunk = new ArrayList<>();
+            long first = 1, line = 0;
+            int chars = 0;
+            while (in.hasNextLine()) {
+                String next = in.nextLine();
+                line += 1;
+                if (chars >= CHUNK_CHARS && next.startsWith("*")) {
+                    pending.add(submit(pool, chunk, first,
+                                       _main.definition()));
+                    chunk = new ArrayList<>();
+                    first = line;
+                    chars = 0;
+                    if (pending.size() >= _threads * CHUNKS_PER_THREAD) {
+                        write(pending.remove(), out);
+                    }
+                } else if (chars >= SERIAL_CHARS) {
+                    while (!pending.isEmpty()) {
+                        write(pending.remove(), out);
+                    }
+                    chunk.add(next);
+                    Main serial = stream(chunk, first, _main.definition(),
+                                         out);
+                    chunk = new ArrayList<>();
+                    chars = 0;
+                    next = null;
+                    while (next == null && in.hasNextLine()) {
+                        String more = in.nextLine();
+                        line += 1;
+                        if (more.startsWith("*")) {
+                            next = more;
+                        } else {
+                            serial.processLine(more);
+                        }
+                    }
+                    out.flush();
+                    first = line;
+                    if (next == null) {
+                        continue;
+                    }
+                }
+                chunk.add(next);
+                chars += next.length() + 1;
+            }
+            pending.add(submit(pool, chunk, first, _main.definition()));
+            while (!pending.isEmpty()) {
+                write(pending.remove(), out);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Return the future result of processing the lines CHUNK on POOL
+     *  with configuration DEFINITION, the first of which is line FIRST of
+     *  the input. */
+    private Future<Result> submit(ExecutorService pool,
+                                  ArrayList<String> chunk, long first,
+                                  MachineConfig definition) {
+        return pool.submit(() -> process(chunk, first, definition));
+    }
+
+    /** Process CHUNK, whose first line is line FIRST of the input, on a
+     *  Main of its own with configuration DEFINITION that writes straight
+     *  to OUT, and return that Main, so that the rest of CHUNK's last
+     *  section can follow it. */
+    private Main stream(ArrayList<String> chunk, long first,
+                        MachineConfig definition, PrintStream out) {
+        Main worker = _main.worker(out, definition);
+        worker.start();
+        worker.nextLine(first);
+        for (String line : chunk) {
+            worker.processLine(line);
+        }
+        return worker;
+    }
+
+    /** Write the output of the chunk that will be the result of PENDING
+     *  to OUT, throwing its error, if any, once it is written.  Any other
+     *  exception that stopped the chunk is rethrown as it was. */
+    private void write(Future<Result> pending, PrintStream out) {
+        Result result;
+        try {
+            result = pending.get();
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw error("parallel processing failed: %s", cause);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("parallel processing interrupted");
+        }
+        out.write(result.output(), 0, result.output().length);
+        out.flush();
+        if (result.error() != null) {
+            throw result.error();
+        }
+    }
+
+    /** Process CHUNK, whose first line is line FIRST of the input, on a
+     *  Main of its own with configuration DEFINITION, returning the output
+     *  up to the first error. */
+    private Result process(ArrayList<String> chunk, long first,
+                           MachineConfig definition) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes);
+        Main worker = _main.worker(out, definition);
+        worker.start();
+        worker.nextLine(first);
+        EnigmaException error = null;
+        try {
+            for (String line : chunk) {
+                worker.processLine(line);
+            }
+        } catch (EnigmaException excp) {
+            error = excp;
+        }
+        out.flush();
+        return new Result(bytes.toByteArray(), error);
+    }
+
+    /** The output of a chunk, and the error that stopped it, if any. */
+    private static class Result {
+
+        /** A result with output OUTPUT that ended with ERROR, or null if
+         *  there was none. */
+        Result(byte[] output, EnigmaException error) {
+            _output = output;
+            _error = error;
+        }
+
+        /** Return the output. */
+        byte[] output() {
+            return _output;
+        }
+
+        /** Return the error, or null. */
+        EnigmaException error() {
+            return _error;
+        }
+
+        /** The output. */
+        private final byte[] _output;
+        /** The error, or null. */
+        private final EnigmaException _error;
+    }
+
+    /** The Main whose configuration and options I use. */
+    private final Main _main;
+    /** The number of threads. */
+    private final int _threads;
+
+    /** The number of characters of input after which a chunk is ended at
+     *  the next settings line. */
+    static final int CHUNK_CHARS = 1 << 14;
+    /** The number of characters of input after which a chunk that has
+     *  found no settings line at which to end stops being buffered. */
+    static final int SERIAL_CHARS = 1 << 20;
+    /** The number of chunks that may be read ahead per thread. */
+    private static final int CHUNKS_PER_THREAD = 4;
+}
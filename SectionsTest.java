@@ -0,0 +1,114 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Scanner;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Sections class.
+ *  @author Ryan Chen
+ */
+public class SectionsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the output of Main.process on INPUT with THREADS threads
+     *  (1 meaning the usual serial loop), followed by the error message
+     *  if there is one. */
+    private static String run(String input, int threads) {
+        return outputAndError((out) -> {
+                Main main =
+                    new Main(navalConfig(5, 3), new Scanner(input), out);
+                if (threads == 1) {
+                    main.process();
+                } else {
+                    new Sections(main, threads).run(new Scanner(input), out);
+                }
+            });
+    }
+
+    /** Return an input of SECTIONS short sections, enough to span many
+     *  chunks. */
+    private static String input(int sections) {
+        StringBuilder result = new StringBuilder("\n");
+        for (int i = 0; i < sections; i++) {
+            result.append("* B Beta III IV I ")
+                .append((char) ('A' + i % 26)).append("XLE (YF) (ZH)\n")
+                .append("FROM HIS SHOULDER ".repeat(1 + i % 5)).append("\n");
+            if (i % 3 == 0) {
+                result.append("\n");
+            }
+        }
+        return result.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesSerial() {
+        String in = input(3000);
+        assertTrue(in.length() > 10 * Sections.CHUNK_CHARS);
+        String expected = run(in, 1);
+        assertEquals(expected, run(in, 2));
+        assertEquals(expected, run(in, 8));
+        assertEquals(run("", 1), run("", 4));
+    }
+
+    @Test
+    public void testStopsAtFirstError() {
+        String in = input(1000) + "NOT A SETTINGS LINE\nABCd\n"
+            + input(1000) + "x\n";
+        String expected = run(in, 1);
+        assertTrue(expected.endsWith(
+            "Error: This message has a letter that is not in the Alphabet"));
+        assertEquals(expected, run(in, 4));
+        String bad = "HELLO\n" + input(1000);
+        assertEquals(run(bad, 1), run(bad, 4));
+    }
+
+    @Test
+    public void testStreamsLongSection() {
+        String message = "FROM HIS SHOULDER HIAWATHA\n";
+        String longSection = "* B Beta III IV I QXLE (YF) (ZH)\n"
+            + message.repeat(2 * Sections.SERIAL_CHARS / message.length());
+        String in = input(500) + longSection + input(500);
+        String expected = run(in, 1);
+        assertEquals(expected, run(in, 4));
+        assertEquals(run(input(500) + longSection, 1),
+                     run(input(500) + longSection, 4));
+        String bad = input(500) + longSection + "x\n" + input(500);
+        expected = run(bad, 1);
+        assertTrue(expected.contains("Error"));
+        assertEquals(expected, run(bad, 4));
+    }
+
+    @Test
+    public void testPassesOnOtherFailures() {
+        ArrayList<RotorSpec> specs =
+            new ArrayList<>(navalConfig(5, 3).specs());
+        specs.add(new RotorSpec("X", 'M', "A",
+                                new Permutation("(AB)", new Alphabet("AB"))));
+        MachineConfig broken = new MachineConfig(UPPER, 5, 3, specs);
+        String in = input(1000) + "* B Beta III IV X AAAA\nHELLO\n"
+            + input(10);
+        PrintStream out = new PrintStream(new ByteArrayOutputStream());
+        try {
+            new Sections(new Main(broken, null, out), 4)
+                .run(new Scanner(in), out);
+            fail("a broken rotor was used");
+        } catch (IndexOutOfBoundsException excp) {
+            /* As Main.process would have thrown. */
+        }
+    }
+}
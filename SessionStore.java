@@ -0,0 +1,547 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.function.LongSupplier;
+import java.util.stream.LongStream;
+
+import static enigma.EnigmaException.*;
+
+/** Many ongoing conversations, each converting a message that arrives in
+ *  chunks, so that each chunk carries on from the rotor positions the
+ *  last one left.  Rather than a Machine per conversation, a session
+ *  keeps two longs: its definition (one of my configurations with a
+ *  plugboard, numbered as they are first used) along with the time it
+ *  was last used, and its packed machine state (see MachineState).  So
+ *  millions of sessions fit in one heap.  The two longs are an entry in
+ *  each of two LongLongMaps, whose cells are at most LongSet.LOAD full,
+ *  and at least half that after they grow, so a session costs from 53
+ *  to 107 bytes: at a million sessions, the maps have 2^21 cells each,
+ *  and 2 * 2^21 cells of 16 bytes come to about 67 bytes a session.
+ *
+ *  A definition costs far more (its plugboard's tables and a key to
+ *  find it by), but it is shared by all the sessions with the same
+ *  configuration and plugboard, and is dropped, and its number reused,
+ *  when the last of them ends.  Sessions that each have a plugboard of
+ *  their own carry the cost of a definition each.
+ *
+ *  Sessions are spread by a hash of their ids over a power-of-two number
+ *  of stripes, each a pair of LongLongMaps with its own lock and its own
+ *  machine for each configuration.  A chunk is converted by restoring
+ *  the session's state into its stripe's machine, converting, and
+ *  packing the state back, all holding only that stripe's lock, so
+ *  sessions in different stripes are converted at once.
+ *
+ *  Sessions that have not been used for a while may be dropped with
+ *  evictIdle, which callers should run now and then, and all sessions
+ *  may be saved to a file and loaded again, by a store with the same
+ *  configurations, after a restart.  Times are kept to the second.
+ *  @author Ryan Chen
+ */
+final class SessionStore {
+
+    /** A store for sessions on the machines described by CONFIGS, with
+     *  at least STRIPES stripes. */
+    SessionStore(List<MachineConfig> configs, int stripes) {
+        this(configs, stripes, System::currentTimeMillis);
+    }
+
+    /** A store for sessions on the machines described by CONFIGS, with
+     *  at least STRIPES stripes, that reads the time in milliseconds
+     *  from CLOCK. */
+    SessionStore(List<MachineConfig> configs, int stripes,
+                 LongSupplier clock) {
+        if (configs.isEmpty()) {
+            throw error("a session store needs a configuration");
+        }
+        if (stripes < 1 || stripes > MAX_STRIPES) {
+            throw error("bad stripe count: %d", stripes);
+        }
+        _configs = configs.toArray(new MachineConfig[0]);
+        int n = Integer.highestOneBit(stripes - 1) << 1;
+        n = Math.max(1, n);
+        _stripes = new Stripe[n];
+        for (int i = 0; i < n; i++) {
+            _stripes[i] = new Stripe(_configs.length);
+        }
+        _stripeShift = Long.SIZE - Integer.numberOfTrailingZeros(n);
+        _clock = clock;
+    }
+
+    /** Start session SESSION on configuration number CONFIG (from 0),
+     *  set up by the settings line SETTINGS as for Main, replacing any
+     *  session SESSION there was. */
+    void open(long session, int config, String settings) {
+        if (config < 0 || config >= _configs.length) {
+            throw error("no configuration %d", config);
+        }
+        Main main = new Main(_configs[config], null, null);
+        main.start();
+        main.processLine(settings);
+        Machine machine = main.machine();
+        long state = machine.snapshot();
+        int definition = acquire(config, machine.plugboard());
+        Stripe stripe = stripe(session);
+        synchronized (stripe) {
+            stripe._states.put(session, state);
+            releaseMeta(stripe._meta.put(session, meta(definition, now())));
+        }
+    }
+
+    /** Return CHUNK converted by session SESSION, leaving its rotors
+     *  where the conversion left them.  Spaces are ignored, as for
+     *  Machine.convert. */
+    String encrypt(long session, String chunk) {
+        char[] buf = new char[chunk.length()];
+        int n = 0;
+        for (int i = 0; i < buf.length; i++) {
+            char c = chunk.charAt(i);
+            if (c != ' ') {
+                buf[n++] = c;
+            }
+        }
+        encrypt(session, buf, 0, n);
+        return new String(buf, 0, n);
+    }
+
+    /** Convert BUF[START .. END-1] in place with session SESSION, leaving
+     *  its rotors where the conversion left them.  If BUF has a character
+     *  outside the alphabet, the session is left as it was. */
+    void encrypt(long session, char[] buf, int start, int end) {
+        Stripe stripe = stripe(session);
+        synchronized (stripe) {
+            long meta = stripe._meta.get(session, LongLongMap.MISSING);
+            if (meta == LongLongMap.MISSING) {
+                throw error("no session %d", session);
+            }
+            int definition = definitionOf(meta);
+            Machine machine = stripe.machine(definition);
+            machine.restore(stripe._states.get(session, 0));
+            machine.convert(buf, start, end);
+            stripe._states.put(session, machine.snapshot());
+            stripe._meta.put(session, meta(definition, now()));
+        }
+    }
+
+    /** End session SESSION.  Return true iff there was one. */
+    boolean close(long session) {
+        Stripe stripe = stripe(session);
+        synchronized (stripe) {
+            stripe._states.remove(session);
+            long meta = stripe._meta.remove(session);
+            releaseMeta(meta);
+            return meta != LongLongMap.MISSING;
+        }
+    }
+
+    /** Return true iff there is a session SESSION. */
+    boolean contains(long session) {
+        Stripe stripe = stripe(session);
+        synchronized (stripe) {
+            return stripe._meta.containsKey(session);
+        }
+    }
+
+    /** Return the number of sessions. */
+    long size() {
+        long result = 0;
+        for (Stripe stripe : _stripes) {
+            synchronized (stripe) {
+                result += stripe._meta.size();
+            }
+        }
+        return result;
+    }
+
+    /** Return the number of definitions in use by my sessions. */
+    int definitions() {
+        synchronized (_index) {
+            return _live;
+        }
+    }
+
+    /** End every session that has not been used for at least MAXIDLE
+     *  milliseconds, and return how many were ended.  Stripes are
+     *  locked one at a time, so sessions in other stripes may be used
+     *  meanwhile. */
+    long evictIdle(long maxIdle) {
+        long cutoff = now() - maxIdle / MILLIS_PER_SECOND;
+        long result = 0;
+        for (Stripe stripe : _stripes) {
+            synchronized (stripe) {
+                LongStream.Builder idle = LongStream.builder();
+                stripe._meta.forEach((session, meta) -> {
+                    if ((meta & TIME_MASK) <= cutoff) {
+                        idle.add(session);
+                    }
+                });
+                for (long session : idle.build().toArray()) {
+                    releaseMeta(stripe._meta.remove(session));
+                    stripe._states.remove(session);
+                    result += 1;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Write all my sessions to FILE, under a temporary name that is then
+     *  renamed, so that FILE is never seen partly written.  Each stripe
+     *  is saved as of when it is reached.  The file holds a record for
+     *  each session, preceded by a record for its definition if that has
+     *  not yet been written; definitions are numbered in the file in the
+     *  order they are written. */
+    void save(File file) {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp)) {
+            DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            IdentityHashMap<Definition, Integer> saved =
+                new IdentityHashMap<>();
+            IOException[] failure = { null };
+            for (Stripe stripe : _stripes) {
+                synchronized (stripe) {
+                    stripe._meta.forEach((session, meta) -> {
+                        try {
+                            Definition def = definition(definitionOf(meta));
+                            Integer number = saved.get(def);
+                            if (number == null) {
+                                number = saved.size();
+                                saved.put(def, number);
+                                write(out, def);
+                            }
+                            out.writeByte(SESSION_RECORD);
+                            out.writeLong(session);
+                            out.writeInt(number);
+                            out.writeInt((int) (meta & TIME_MASK));
+                            out.writeLong(stripe._states.get(session, 0));
+                        } catch (IOException excp) {
+                            failure[0] = excp;
+                        }
+                    });
+                }
+                if (failure[0] != null) {
+                    throw failure[0];
+                }
+            }
+            out.writeByte(END_RECORD);
+            out.flush();
+            stream.getChannel().force(true);
+        } catch (IOException excp) {
+            throw error("could not write %s", temp);
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw error("could not rename %s", temp);
+        }
+    }
+
+    /** Write a record of DEF to OUT. */
+    private static void write(DataOutputStream out, Definition def)
+        throws IOException {
+        int[] plug = def.plugboard().forwardTable();
+        out.writeByte(DEFINITION_RECORD);
+        out.writeInt(def.config());
+        out.writeInt(plug.length);
+        for (int c : plug) {
+            out.writeInt(c);
+        }
+    }
+
+    /** Add the sessions saved in FILE by a store with the same
+     *  configurations as mine, replacing any of mine with the same ids. */
+    void load(File file) {
+        int[] definitions = new int[INITIAL_DEFINITIONS];
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw error("%s is not a session file", file);
+            }
+            for (int tag = in.readByte(); tag != END_RECORD;
+                 tag = in.readByte()) {
+                if (tag == DEFINITION_RECORD) {
+                    int config = in.readInt();
+                    int size = in.readInt();
+                    if (config < 0 || config >= _configs.length
+                        || size != _configs[config].alphabet().size()) {
+                        throw error("%s does not match my configurations",
+                                    file);
+                    }
+                    int[] plug = new int[size];
+                    for (int c = 0; c < size; c++) {
+                        plug[c] = in.readInt();
+                    }
+                    if (count == definitions.length) {
+                        definitions = Arrays.copyOf(definitions, 2 * count);
+                    }
+                    definitions[count] = acquire(config, new Permutation(
+                        plug, _configs[config].alphabet()));
+                    count += 1;
+                } else if (tag == SESSION_RECORD) {
+                    long session = in.readLong();
+                    int d = in.readInt();
+                    long time = in.readInt() & TIME_MASK;
+                    long state = in.readLong();
+                    if (d < 0 || d >= count) {
+                        throw error("%s is corrupt", file);
+                    }
+                    Stripe stripe = stripe(session);
+                    synchronized (stripe) {
+                        retain(definitions[d]);
+                        stripe._states.put(session, state);
+                        releaseMeta(stripe._meta.put(session,
+                                                 meta(definitions[d], time)));
+                    }
+                } else {
+                    throw error("%s is corrupt", file);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        } finally {
+            for (int d = 0; d < count; d++) {
+                release(definitions[d]);
+            }
+        }
+    }
+
+    /** Return the number of the definition of configuration CONFIG with
+     *  plugboard PLUGBOARD, making it if it is new, and count one more
+     *  session as using it. */
+    private int acquire(int config, Permutation plugboard) {
+        int[] table = plugboard.forwardTable();
+        char[] chars = new char[table.length + 1];
+        chars[0] = (char) config;
+        for (int c = 0; c < table.length; c++) {
+            chars[c + 1] = (char) table[c];
+        }
+        String key = new String(chars);
+        synchronized (_index) {
+            Integer known = _index.get(key);
+            if (known != null) {
+                _definitions[known]._sessions += 1;
+                return known;
+            }
+            int number;
+            if (_freeCount > 0) {
+                _freeCount -= 1;
+                number = _free[_freeCount];
+            } else {
+                number = _next;
+                _next += 1;
+                if (number == _definitions.length) {
+                    _definitions = Arrays.copyOf(_definitions, 2 * number);
+                }
+            }
+            Definition def = new Definition(config, plugboard, key);
+            def._sessions = 1;
+            _definitions[number] = def;
+            _index.put(key, number);
+            _live += 1;
+            return number;
+        }
+    }
+
+    /** Count one more session as using definition number DEFINITION,
+     *  which is in use. */
+    private void retain(int definition) {
+        synchronized (_index) {
+            _definitions[definition]._sessions += 1;
+        }
+    }
+
+    /** Count one fewer session as using definition number DEFINITION,
+     *  dropping the definition if no session still uses it. */
+    private void release(int definition) {
+        synchronized (_index) {
+            Definition def = _definitions[definition];
+            def._sessions -= 1;
+            if (def._sessions == 0) {
+                _index.remove(def.key());
+                _definitions[definition] = null;
+                if (_freeCount == _free.length) {
+                    _free = Arrays.copyOf(_free, 2 * _freeCount);
+                }
+                _free[_freeCount] = definition;
+                _freeCount += 1;
+                _live -= 1;
+            }
+        }
+    }
+
+    /** Release the definition of the session whose meta value is META
+     *  (see meta), if META is not LongLongMap.MISSING. */
+    private void releaseMeta(long meta) {
+        if (meta != LongLongMap.MISSING) {
+            release(definitionOf(meta));
+        }
+    }
+
+    /** Return definition number DEFINITION, which is in use. */
+    private Definition definition(int definition) {
+        return _definitions[definition];
+    }
+
+    /** Return the stripe that holds session SESSION. */
+    private Stripe stripe(long session) {
+        return _stripes[(int) ((session * STRIPE_MIX) >>> _stripeShift)
+                        & (_stripes.length - 1)];
+    }
+
+    /** Return the current time in seconds. */
+    private long now() {
+        return _clock.getAsLong() / MILLIS_PER_SECOND;
+    }
+
+    /** Return the packed definition number DEFINITION and time TIME (in
+     *  seconds) of a session. */
+    private static long meta(int definition, long time) {
+        return ((long) definition << Integer.SIZE) | (time & TIME_MASK);
+    }
+
+    /** Return the definition number in the meta value META. */
+    private static int definitionOf(long meta) {
+        return (int) (meta >>> Integer.SIZE);
+    }
+
+    /** A configuration with a plugboard. */
+    private static class Definition {
+
+        /** The definition of configuration number CONFIG with PLUGBOARD,
+         *  found by KEY. */
+        Definition(int config, Permutation plugboard, String key) {
+            _config = config;
+            _plugboard = plugboard;
+            _key = key;
+        }
+
+        /** Return the configuration number. */
+        int config() {
+            return _config;
+        }
+
+        /** Return the plugboard. */
+        Permutation plugboard() {
+            return _plugboard;
+        }
+
+        /** Return the key I am found by. */
+        String key() {
+            return _key;
+        }
+
+        /** The configuration number. */
+        private final int _config;
+        /** The plugboard. */
+        private final Permutation _plugboard;
+        /** The key. */
+        private final String _key;
+        /** The number of sessions using me.  Guarded by the lock on
+         *  _index. */
+        private int _sessions;
+    }
+
+    /** The sessions in one stripe, and the machines that convert them.
+     *  All access is synchronized on the stripe. */
+    private final class Stripe {
+
+        /** A stripe for NUMCONFIGS configurations. */
+        Stripe(int numConfigs) {
+            _machines = new Machine[numConfigs];
+            _loaded = new Definition[numConfigs];
+        }
+
+        /** Return my machine for definition DEFINITION, with its
+         *  plugboard set. */
+        Machine machine(int definition) {
+            Definition def = definition(definition);
+            int config = def.config();
+            if (_machines[config] == null) {
+                _machines[config] = _configs[config].newMachine();
+            }
+            if (_loaded[config] != def) {
+                _machines[config].setPlugboard(def.plugboard());
+                _loaded[config] = def;
+            }
+            return _machines[config];
+        }
+
+        /** The packed machine state of each session. */
+        private final LongLongMap _states = new LongLongMap();
+        /** The definition number and last use of each session (see
+         *  meta). */
+        private final LongLongMap _meta = new LongLongMap();
+        /** A machine for each configuration, made when first needed. */
+        private final Machine[] _machines;
+        /** The definition whose plugboard each machine has, or null.
+         *  Definitions are compared by identity, since their numbers are
+         *  reused. */
+        private final Definition[] _loaded;
+    }
+
+    /** The configurations. */
+    private final MachineConfig[] _configs;
+    /** The stripes. */
+    private final Stripe[] _stripes;
+    /** The shift that leaves the stripe bits of a mixed session id. */
+    private final int _stripeShift;
+    /** Where the time comes from. */
+    private final LongSupplier _clock;
+    /** The definitions in use, by number, with null for numbers not in
+     *  use.  Entries are written under the lock on _index before their
+     *  numbers are given out, and are cleared only when no session uses
+     *  them, so whoever holds the stripe of a session may read its
+     *  definition without the lock. */
+    private volatile Definition[] _definitions =
+        new Definition[INITIAL_DEFINITIONS];
+    /** The number of definitions in use. */
+    private int _live;
+    /** The lowest definition number never given out. */
+    private int _next;
+    /** Numbers given out and freed since, in _free[0 .. _freeCount-1],
+     *  to be given out again first. */
+    private int[] _free = new int[INITIAL_DEFINITIONS];
+    /** The number of freed numbers. */
+    private int _freeCount;
+    /** The number of each definition in use, by a key made from its
+     *  configuration number and plugboard table. */
+    private final HashMap<String, Integer> _index = new HashMap<>();
+
+    /** Magic number at the start of a session file ("ENSS"). */
+    private static final int MAGIC = 0x454e5353;
+    /** Current file format version. */
+    private static final int VERSION = 2;
+    /** The kinds of record in a session file. */
+    private static final int END_RECORD = 0, DEFINITION_RECORD = 1,
+        SESSION_RECORD = 2;
+    /** The most stripes a store may have. */
+    private static final int MAX_STRIPES = 1 << 16;
+    /** Odd multiplier that spreads session ids over stripes; different
+     *  from the one within each map (see LongSet), so that the sessions
+     *  of one stripe still spread over its map. */
+    private static final long STRIPE_MIX = 0xbf58476d1ce4e5b9L;
+    /** The bits of a session's meta value that hold its time. */
+    private static final long TIME_MASK = 0xffffffffL;
+    /** Milliseconds in a second. */
+    private static final long MILLIS_PER_SECOND = 1000;
+    /** The initial room for definitions. */
+    private static final int INITIAL_DEFINITIONS = 16;
+}
@@ -0,0 +1,225 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SessionStore class.
+ *  @author Ryan Chen
+ */
+public class SessionStoreTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The configurations used. */
+    private static final List<MachineConfig> CONFIGS =
+        Arrays.asList(navalConfig(5, 3), navalConfig(4, 3));
+
+    /** Settings lines for each configuration. */
+    private static final String[][] SETTINGS = {
+        { "* B Beta III IV I AXLE (YF) (ZH)",
+          "* C Gamma VI II VIII QZKM (AB) (CD) (EF)",
+          "* B Beta I II III AAAA" },
+        { "* B III IV I AXL (YF)", "* C V VI II QQQ" },
+    };
+
+    /** Return the settings line for session SESSION, and its
+     *  configuration number. */
+    private static String settings(long session) {
+        String[] lines = SETTINGS[config(session)];
+        return lines[(int) (session % lines.length)];
+    }
+
+    /** Return the configuration number for session SESSION. */
+    private static int config(long session) {
+        return (int) (session % CONFIGS.size());
+    }
+
+    /** Return a machine set up for session SESSION. */
+    private static Machine machine(long session) {
+        return machineFor(CONFIGS.get(config(session)), settings(session));
+    }
+
+    /** Return LENGTH random upper-case letters from RANDOM. */
+    private static String letters(Random random, int length) {
+        char[] result = new char[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = (char) ('A' + random.nextInt(26));
+        }
+        return new String(result);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testChunksContinue() {
+        SessionStore store = new SessionStore(CONFIGS, 4);
+        int sessions = 40;
+        Machine[] machines = new Machine[sessions];
+        for (int s = 0; s < sessions; s++) {
+            store.open(s * 1000003L, config(s), settings(s));
+            machines[s] = machine(s);
+        }
+        assertEquals(sessions, store.size());
+        Random random = new Random(49);
+        for (int round = 0; round < 400; round++) {
+            int s = random.nextInt(sessions);
+            String chunk = letters(random, random.nextInt(60));
+            assertEquals(machines[s].convert(chunk),
+                         store.encrypt(s * 1000003L, chunk));
+        }
+        assertEquals(4, store.definitions());
+    }
+
+    @Test
+    public void testConcurrentSessions() throws InterruptedException {
+        SessionStore store = new SessionStore(CONFIGS, 8);
+        int threads = 4, perThread = 50;
+        for (long s = 0; s < threads * perThread; s++) {
+            store.open(s, config(s), settings(s));
+        }
+        String[] failure = { null };
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int first = t * perThread;
+            workers[t] = new Thread(() -> {
+                Random random = new Random(first);
+                Machine[] machines = new Machine[perThread];
+                for (int i = 0; i < perThread; i++) {
+                    machines[i] = machine(first + i);
+                }
+                for (int round = 0; round < 2000; round++) {
+                    int i = random.nextInt(perThread);
+                    String chunk = letters(random, 1 + random.nextInt(30));
+                    if (!machines[i].convert(chunk).equals(
+                            store.encrypt(first + i, chunk))) {
+                        failure[0] = "session " + (first + i);
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertNull(failure[0]);
+    }
+
+    @Test
+    public void testBadChunkLeavesSession() {
+        SessionStore store = new SessionStore(CONFIGS, 1);
+        store.open(7, 0, SETTINGS[0][0]);
+        Machine machine = machine(0);
+        assertEquals(machine.convert("HELLO"), store.encrypt(7, "HELLO"));
+        try {
+            store.encrypt(7, "WORLD!");
+            fail("accepted a character outside the alphabet");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        assertEquals(machine.convert("WORLD"), store.encrypt(7, "WORLD"));
+    }
+
+    @Test
+    public void testCloseAndMissing() {
+        SessionStore store = new SessionStore(CONFIGS, 2);
+        store.open(Long.MIN_VALUE, 1, SETTINGS[1][0]);
+        assertTrue(store.contains(Long.MIN_VALUE));
+        assertTrue(store.close(Long.MIN_VALUE));
+        assertFalse(store.close(Long.MIN_VALUE));
+        assertEquals(0, store.size());
+        try {
+            store.encrypt(Long.MIN_VALUE, "A");
+            fail("converted with a closed session");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void testEvictIdle() {
+        AtomicLong clock = new AtomicLong(1_000_000);
+        SessionStore store = new SessionStore(CONFIGS, 4, clock::get);
+        for (long s = 0; s < 100; s++) {
+            store.open(s, config(s), settings(s));
+        }
+        clock.addAndGet(60_000);
+        for (long s = 0; s < 100; s += 3) {
+            store.encrypt(s, "ABC");
+        }
+        clock.addAndGet(30_000);
+        assertEquals(0, store.evictIdle(120_000));
+        assertEquals(66, store.evictIdle(60_000));
+        assertEquals(34, store.size());
+        assertTrue(store.contains(99));
+        assertFalse(store.contains(98));
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        SessionStore store = new SessionStore(CONFIGS, 4);
+        Machine[] machines = new Machine[50];
+        Random random = new Random(490);
+        for (int s = 0; s < machines.length; s++) {
+            store.open(s, config(s), settings(s));
+            machines[s] = machine(s);
+            String chunk = letters(random, random.nextInt(40));
+            assertEquals(machines[s].convert(chunk), store.encrypt(s, chunk));
+        }
+        File file = File.createTempFile("sessions", ".bin");
+        try {
+            store.save(file);
+            SessionStore loaded = new SessionStore(CONFIGS, 2);
+            loaded.load(file);
+            assertEquals(machines.length, loaded.size());
+            for (int s = 0; s < machines.length; s++) {
+                String chunk = letters(random, 25);
+                assertEquals(machines[s].convert(chunk),
+                             loaded.encrypt(s, chunk));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testDefinitionsAreReleased() {
+        AtomicLong clock = new AtomicLong(1_000_000);
+        SessionStore store = new SessionStore(CONFIGS, 1, clock::get);
+        for (int round = 0; round < 150; round++) {
+            char a = (char) ('A' + round % 13), b = (char) ('N' + round / 13);
+            String settings = SETTINGS[0][2] + " (" + a + b + ")";
+            store.open(round, 0, settings);
+            assertEquals(machineFor(CONFIGS.get(0), settings)
+                         .convert("HELLOWORLD"),
+                         store.encrypt(round, "HELLOWORLD"));
+            if (round % 2 == 0) {
+                assertTrue(store.close(round));
+            }
+        }
+        assertEquals(75, store.definitions());
+        store.open(1, 1, SETTINGS[1][0]);
+        assertEquals(75, store.definitions());
+        clock.addAndGet(60_000);
+        store.open(3, 1, SETTINGS[1][0]);
+        assertEquals(74, store.definitions());
+        assertEquals(74, store.evictIdle(30_000));
+        assertEquals(1, store.definitions());
+        assertTrue(store.close(3));
+        assertEquals(0, store.definitions());
+    }
+}
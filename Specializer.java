@@ -0,0 +1,388 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static enigma.EnigmaException.*;
+
+/** Generates, for one machine setup, a hidden class whose substitute
+ *  method is that setup's substitution with every slot unrolled.  The
+ *  permutation tables, the core table (see Machine.substituteTrusted)
+ *  and the rotors whose settings are read are static final fields of the
+ *  class, and the alphabet size is a constant, so the JIT treats them
+ *  all as constants and compiles each setup into straight-line code.
+ *
+ *  The generated method has no branches (positions are wrapped with
+ *  arithmetic instead), so the class file needs no stack map frames,
+ *  and a small writer here suffices in place of a bytecode library.
+ *  @author Ryan Chen
+ */
+final class Specializer {
+
+    /** The substitution of one machine setup, as generated. */
+    abstract static class Kernel {
+
+        /** Return the substitution of C, an index in range, with the
+         *  rotors at their current settings. */
+        abstract int substitute(int c);
+    }
+
+    /** Return a kernel for a machine whose slots hold SLOTS, whose
+     *  first CORESLOTS slots are composed into CORE (updated in place),
+     *  and whose plugboard has table PLUG.  FORWARD and INVERSE are the
+     *  tables of each slot's permutation. */
+    static Kernel specialize(Rotor[] slots, int coreSlots, int[] core,
+                             int[] plug, int[][] forward, int[][] inverse) {
+        Specializer gen = new Specializer(slots, coreSlots, core, plug,
+                                          forward, inverse);
+        byte[] bytes = gen.classFile();
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup()
+                .defineHiddenClassWithClassData(bytes, gen._data.toArray(),
+                                                true);
+            return (Kernel) lookup.findConstructor(lookup.lookupClass(),
+                MethodType.methodType(void.class)).invoke();
+        } catch (Throwable excp) {
+            throw error("could not specialize machine: %s", excp);
+        }
+    }
+
+    /** A generator for the kernel described by the arguments of
+     *  specialize. */
+    private Specializer(Rotor[] slots, int coreSlots, int[] core,
+                        int[] plug, int[][] forward, int[][] inverse) {
+        _slots = slots.length;
+        _coreSlots = coreSlots;
+        _size = plug.length;
+        _plug = field("plug", INTS, plug);
+        _core = field("core", INTS, core);
+        _forward = new int[_slots];
+        _inverse = new int[_slots];
+        _rotors = new int[_slots];
+        for (int k = coreSlots; k < _slots; k++) {
+            _forward[k] = field("f" + k, INTS, forward[k]);
+            _inverse[k] = field("i" + k, INTS, inverse[k]);
+            _rotors[k] = field("r" + k, ROTOR, slots[k]);
+        }
+    }
+
+    /** Add a static final field named NAME of type DESCRIPTOR, initially
+     *  VALUE, returning its field reference. */
+    private int field(String name, String descriptor, Object value) {
+        _fieldNames.add(name);
+        _fieldTypes.add(descriptor);
+        _data.add(value);
+        return fieldRef(THIS, name, descriptor);
+    }
+
+    /** Return the class file of my kernel. */
+    private byte[] classFile() {
+        byte[] init = initCode(), clinit = clinitCode(), sub = substituteCode();
+        int thisClass = classRef(THIS), superClass = classRef(KERNEL);
+        int code = utf8("Code");
+        int[] fieldNames = new int[_fieldNames.size()];
+        int[] fieldTypes = new int[_fieldNames.size()];
+        for (int i = 0; i < fieldNames.length; i++) {
+            fieldNames[i] = utf8(_fieldNames.get(i));
+            fieldTypes[i] = utf8(_fieldTypes.get(i));
+        }
+        int[][] methods = {
+            {ACC_PUBLIC, utf8("<init>"), utf8("()V"), 1, 1},
+            {ACC_STATIC, utf8("<clinit>"), utf8("()V"), 3, 1},
+            {0, utf8("substitute"), utf8("(I)I"), 5, 3 + _slots},
+        };
+        byte[][] codes = {init, clinit, sub};
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeShort(0);
+            out.writeShort(CLASS_VERSION);
+            out.writeShort(_pool.size() + 1);
+            out.write(_poolBytes.toByteArray());
+            out.writeShort(ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);
+            out.writeShort(fieldNames.length);
+            for (int i = 0; i < fieldNames.length; i++) {
+                out.writeShort(ACC_PRIVATE | ACC_STATIC | ACC_FINAL);
+                out.writeShort(fieldNames[i]);
+                out.writeShort(fieldTypes[i]);
+                out.writeShort(0);
+            }
+            out.writeShort(methods.length);
+            for (int m = 0; m < methods.length; m++) {
+                out.writeShort(methods[m][0]);
+                out.writeShort(methods[m][1]);
+                out.writeShort(methods[m][2]);
+                out.writeShort(1);
+                out.writeShort(code);
+                out.writeInt(12 + codes[m].length);
+                out.writeShort(methods[m][3]);
+                out.writeShort(methods[m][4]);
+                out.writeInt(codes[m].length);
+                out.write(codes[m]);
+                out.writeShort(0);
+                out.writeShort(0);
+            }
+            out.writeShort(0);
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw error("could not write class file");
+        }
+    }
+
+    /** Return the code of the constructor, which only calls Kernel's. */
+    private byte[] initCode() {
+        Code code = new Code();
+        code.op(ALOAD_0);
+        code.op(INVOKESPECIAL, methodRef(KERNEL, "<init>", "()V"));
+        code.op(RETURN);
+        return code.bytes();
+    }
+
+    /** Return the code of the static initializer, which sets my fields
+     *  from the class data. */
+    private byte[] clinitCode() {
+        Code code = new Code();
+        code.op(INVOKESTATIC, methodRef(HANDLES, "lookup",
+                                        "()L" + LOOKUP + ";"));
+        code.op(LDC_W, stringConst("_"));
+        code.op(LDC_W, classRef(OBJECTS));
+        code.op(INVOKESTATIC, methodRef(HANDLES, "classData",
+            "(L" + LOOKUP + ";Ljava/lang/String;Ljava/lang/Class;)"
+            + "Ljava/lang/Object;"));
+        code.op(CHECKCAST, classRef(OBJECTS));
+        code.op(ASTORE_0);
+        for (int i = 0; i < _fieldNames.size(); i++) {
+            String type = _fieldTypes.get(i);
+            code.op(ALOAD_0);
+            code.op(LDC_W, intConst(i));
+            code.op(AALOAD);
+            code.op(CHECKCAST,
+                    classRef(type.equals(INTS) ? INTS : ROTOR_CLASS));
+            code.op(PUTSTATIC, fieldRef(THIS, _fieldNames.get(i), type));
+        }
+        code.op(RETURN);
+        return code.bytes();
+    }
+
+    /** Return the code of substitute.  Local 1 is the input, local 2
+     *  the signal, and local 3 + K the setting of slot K. */
+    private byte[] substituteCode() {
+        Code code = new Code();
+        int n = intConst(_size);
+        code.op(GETSTATIC, _plug);
+        code.op(ILOAD, 1);
+        code.op(IALOAD);
+        code.op(ISTORE, 2);
+        for (int k = _slots - 1; k >= _coreSlots; k--) {
+            code.op(GETSTATIC, _rotors[k]);
+            code.op(INVOKEVIRTUAL, methodRef(ROTOR_CLASS, "setting", "()I"));
+            code.op(ISTORE, 3 + k);
+            through(code, _forward[k], 3 + k, n);
+        }
+        code.op(GETSTATIC, _core);
+        code.op(ILOAD, 2);
+        code.op(IALOAD);
+        code.op(ISTORE, 2);
+        for (int k = _coreSlots; k < _slots; k++) {
+            through(code, _inverse[k], 3 + k, n);
+        }
+        code.op(GETSTATIC, _plug);
+        code.op(ILOAD, 2);
+        code.op(IALOAD);
+        code.op(IRETURN);
+        return code.bytes();
+    }
+
+    /** Append to CODE the passage of the signal through the table in
+     *  field TABLE of a rotor whose setting is in local SETTING, N being
+     *  the constant holding the alphabet size.  Each wrap computes
+     *  t + ((t >> 31) & n), which adds n just when t is negative. */
+    private void through(Code code, int table, int setting, int n) {
+        code.op(GETSTATIC, table);
+        code.op(ILOAD, 2);
+        code.op(ILOAD, setting);
+        code.op(IADD);
+        code.op(LDC_W, n);
+        code.op(ISUB);
+        wrap(code, n);
+        code.op(IALOAD);
+        code.op(ILOAD, setting);
+        code.op(ISUB);
+        wrap(code, n);
+        code.op(ISTORE, 2);
+    }
+
+    /** Append to CODE the wrap of the value T on top of the stack into
+     *  0 .. size - 1, given -size <= T < size and N the constant holding
+     *  the alphabet size. */
+    private void wrap(Code code, int n) {
+        code.op(DUP);
+        code.op(BIPUSH, 31);
+        code.op(ISHR);
+        code.op(LDC_W, n);
+        code.op(IAND);
+        code.op(IADD);
+    }
+
+    /** Return the constant pool index of the UTF-8 constant S. */
+    private int utf8(String s) {
+        String key = "U" + s;
+        Integer index = _pool.get(key);
+        if (index == null) {
+            try {
+                DataOutputStream out = new DataOutputStream(_poolBytes);
+                out.writeByte(CONSTANT_UTF8);
+                out.writeUTF(s);
+            } catch (IOException excp) {
+                throw error("could not write constant");
+            }
+            index = _pool.size() + 1;
+            _pool.put(key, index);
+        }
+        return index;
+    }
+
+    /** Return the constant pool index of the entry KEY, with tag TAG and
+     *  the 2-byte operands A and (unless negative) B, adding it if need
+     *  be. */
+    private int entry(String key, int tag, int a, int b) {
+        Integer index = _pool.get(key);
+        if (index == null) {
+            _poolBytes.write(tag);
+            _poolBytes.write(a >> 8);
+            _poolBytes.write(a);
+            if (b >= 0) {
+                _poolBytes.write(b >> 8);
+                _poolBytes.write(b);
+            }
+            index = _pool.size() + 1;
+            _pool.put(key, index);
+        }
+        return index;
+    }
+
+    /** Return the constant pool index of the class NAME. */
+    private int classRef(String name) {
+        return entry("C" + name, CONSTANT_CLASS, utf8(name), -1);
+    }
+
+    /** Return the constant pool index of the string constant S. */
+    private int stringConst(String s) {
+        return entry("S" + s, CONSTANT_STRING, utf8(s), -1);
+    }
+
+    /** Return the constant pool index of the int constant V. */
+    private int intConst(int v) {
+        return entry("I" + v, CONSTANT_INTEGER, v >>> 16, v & 0xffff);
+    }
+
+    /** Return the constant pool index of the name and type NAME and
+     *  DESCRIPTOR. */
+    private int nameAndType(String name, String descriptor) {
+        return entry("N" + name + ":" + descriptor, CONSTANT_NAME_AND_TYPE,
+                     utf8(name), utf8(descriptor));
+    }
+
+    /** Return the constant pool index of field NAME of type DESCRIPTOR in
+     *  class OWNER. */
+    private int fieldRef(String owner, String name, String descriptor) {
+        return entry("F" + owner + "." + name, CONSTANT_FIELDREF,
+                     classRef(owner), nameAndType(name, descriptor));
+    }
+
+    /** Return the constant pool index of method NAME of type DESCRIPTOR
+     *  in class OWNER. */
+    private int methodRef(String owner, String name, String descriptor) {
+        return entry("M" + owner + "." + name + descriptor, CONSTANT_METHODREF,
+                     classRef(owner), nameAndType(name, descriptor));
+    }
+
+    /** The bytecode of one method, being written. */
+    private static class Code {
+
+        /** Append OPCODE with no operands. */
+        void op(int opcode) {
+            _bytes.write(opcode);
+        }
+
+        /** Append OPCODE with the operand ARG, which is one byte for
+         *  local variable and bipush instructions and two otherwise. */
+        void op(int opcode, int arg) {
+            _bytes.write(opcode);
+            if (opcode == ILOAD || opcode == ISTORE || opcode == BIPUSH) {
+                _bytes.write(arg);
+            } else {
+                _bytes.write(arg >> 8);
+                _bytes.write(arg);
+            }
+        }
+
+        /** Return the code written so far. */
+        byte[] bytes() {
+            return _bytes.toByteArray();
+        }
+
+        /** The code written so far. */
+        private final ByteArrayOutputStream _bytes =
+            new ByteArrayOutputStream();
+    }
+
+    /** The number of slots. */
+    private final int _slots;
+    /** The number of slots composed into the core table. */
+    private final int _coreSlots;
+    /** The alphabet size. */
+    private final int _size;
+    /** Field references of the plugboard and core tables. */
+    private final int _plug, _core;
+    /** Field references of the forward and inverse table and the rotor
+     *  of each slot outside the core. */
+    private final int[] _forward, _inverse, _rotors;
+    /** The names, descriptors and initial values of my fields. */
+    private final ArrayList<String> _fieldNames = new ArrayList<>(),
+        _fieldTypes = new ArrayList<>();
+    /** The initial values of my fields, passed as the class data. */
+    private final ArrayList<Object> _data = new ArrayList<>();
+    /** The index of each constant pool entry, by a key for its contents. */
+    private final HashMap<String, Integer> _pool = new HashMap<>();
+    /** The constant pool, as written so far. */
+    private final ByteArrayOutputStream _poolBytes =
+        new ByteArrayOutputStream();
+
+    /** Internal names of the classes referred to. */
+    private static final String THIS = "enigma/Specializer$Generated",
+        KERNEL = "enigma/Specializer$Kernel",
+        ROTOR_CLASS = "enigma/Rotor",
+        HANDLES = "java/lang/invoke/MethodHandles",
+        LOOKUP = "java/lang/invoke/MethodHandles$Lookup",
+        OBJECTS = "[Ljava/lang/Object;",
+        INTS = "[I";
+    /** The descriptor of a Rotor field. */
+    private static final String ROTOR = "L" + ROTOR_CLASS + ";";
+
+    /** Class file header values. */
+    private static final int MAGIC = 0xCAFEBABE, CLASS_VERSION = 61;
+    /** Access flags. */
+    private static final int ACC_PUBLIC = 0x0001, ACC_PRIVATE = 0x0002,
+        ACC_STATIC = 0x0008, ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+    /** Constant pool tags. */
+    private static final int CONSTANT_UTF8 = 1, CONSTANT_INTEGER = 3,
+        CONSTANT_CLASS = 7, CONSTANT_STRING = 8, CONSTANT_FIELDREF = 9,
+        CONSTANT_METHODREF = 10, CONSTANT_NAME_AND_TYPE = 12;
+    /** Opcodes. */
+    private static final int BIPUSH = 0x10, LDC_W = 0x13, ILOAD = 0x15,
+        ALOAD_0 = 0x2a, IALOAD = 0x2e, AALOAD = 0x32, ISTORE = 0x36,
+        ASTORE_0 = 0x4b, DUP = 0x59, IADD = 0x60, ISUB = 0x64,
+        ISHR = 0x7a, IAND = 0x7e, IRETURN = 0xac, RETURN = 0xb1,
+        GETSTATIC = 0xb2, PUTSTATIC = 0xb3, INVOKEVIRTUAL = 0xb6,
+        INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8, CHECKCAST = 0xc0;
+}
@@ -0,0 +1,41 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Specializer class.
+ *  @author Ryan Chen
+ */
+public class SpecializerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Check that a specialized machine with slots SLOTS at SETTING
+     *  agrees with one converting by tables (see TestUtils.engineText). */
+    private static void checkAgree(String[] slots, String setting) {
+        assertArrayEquals(engineText(slots, setting, Engines.TABLES),
+                          engineText(slots, setting, Engines.SPECIALIZED));
+    }
+
+    @Test
+    public void testFiveSlots() {
+        checkAgree(new String[] {"B", "Beta", "III", "IV", "I"}, "AXLE");
+    }
+
+    @Test
+    public void testSixSlots() {
+        checkAgree(new String[] {"C", "Gamma", "VI", "II", "VIII", "V"},
+                   "QZKMA");
+    }
+
+    @Test
+    public void testTwoSlots() {
+        checkAgree(new String[] {"B", "V"}, "Q");
+    }
+}
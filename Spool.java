@@ -0,0 +1,349 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static enigma.EnigmaException.*;
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/** Spool mode for Main: a long-running process that watches a directory
+ *  and processes input files as they arrive, so that each file is
+ *  converted by code the JIT has already compiled rather than by a fresh
+ *  JVM.  The arguments are --spool DIR [THREADS].
+ *
+ *  Each file NAME.in that appears in DIR is processed, as in a Batch
+ *  directory, with configuration NAME.conf if there is one and otherwise
+ *  default.conf.  Configurations in DIR are read when the spool starts
+ *  (or when first needed, for ones that arrive later), and read again in
+ *  the background whenever they change (see ConfigSource): a file
+ *  already being processed finishes on the configuration it started
+ *  with, and files begun after the new one is read use it.  The
+ *  output is written to a temporary file in DIR/out and then moved to
+ *  DIR/out/NAME.out in one step, so that a reader never sees a partial
+ *  output.  The input is then moved to DIR/done, or, if it could not be
+ *  processed, to DIR/failed along with NAME.err giving the reason.
+ *  Inputs should likewise be moved into DIR whole, rather than written
+ *  there in place.  THREADS (default: the number of available
+ *  processors) files are processed at once.
+ *  @author Ryan Chen
+ */
+final class Spool {
+
+    /** Run the spool described by ARGS (see the class comment) until the
+     *  process is killed, reporting each file on the standard output and
+     *  standard error, with the options NORMALIZE and ENGINE (see
+     *  options). */
+    static void run(String[] args, String normalize, int engine) {
+        if (args.length < 2 || args.length > 3) {
+            throw error("Usage: --spool DIR [THREADS]");
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (args.length == 3) {
+            try {
+                threads = Integer.parseInt(args[2]);
+            } catch (NumberFormatException excp) {
+                threads = 0;
+            }
+            if (threads < 1) {
+                throw error("bad thread count: %s", args[2]);
+            }
+        }
+        Spool spool = new Spool(new File(args[1]), threads,
+                                System.out, System.err);
+        spool.options(normalize, engine);
+        spool.start();
+        spool.watch();
+    }
+
+    /** A spool on directory DIR that processes THREADS files at once,
+     *  reporting successes to OUT and failures to ERR. */
+    Spool(File dir, int threads, PrintStream out, PrintStream err) {
+        if (!dir.isDirectory()) {
+            throw error("%s is not a directory", dir);
+        }
+        _dir = dir.toPath();
+        _outDir = _dir.resolve(OUT_DIR);
+        _doneDir = _dir.resolve(DONE_DIR);
+        _failedDir = _dir.resolve(FAILED_DIR);
+        _threads = threads;
+        _out = out;
+        _err = err;
+    }
+
+    /** Clean up messages as described by NORMALIZE (see Normalizer), or
+     *  not at all if it is null, and convert them with ENGINE (see
+     *  Engines), in every file.  Must be called before start(). */
+    void options(String normalize, int engine) {
+        _normalize = normalize;
+        _engine = engine;
+    }
+
+    /** Read my configurations, create my subdirectories, start watching
+     *  my directory, and queue the inputs already in it. */
+    void start() {
+        try {
+            Files.createDirectories(_outDir);
+            Files.createDirectories(_doneDir);
+            Files.createDirectories(_failedDir);
+            _watcher = FileSystems.getDefault().newWatchService();
+            _dir.register(_watcher, ENTRY_CREATE, ENTRY_MODIFY);
+        } catch (IOException excp) {
+            throw error("could not watch %s", _dir);
+        }
+        _pool = Executors.newFixedThreadPool(_threads);
+        String[] names = _dir.toFile().list();
+        Arrays.sort(names);
+        for (String name : names) {
+            if (name.endsWith(Batch.CONFIG_SUFFIX)) {
+                try {
+                    config(name);
+                } catch (EnigmaException excp) {
+                    _err.printf("Error: %s: %s%n", name, excp.getMessage());
+                }
+            }
+        }
+        for (String name : names) {
+            submit(name);
+        }
+    }
+
+    /** Queue each input that arrives in my directory, until stop() is
+     *  called. */
+    void watch() {
+        try {
+            while (true) {
+                WatchKey key = _watcher.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        rescan();
+                    } else {
+                        String name = event.context().toString();
+                        if (name.endsWith(Batch.CONFIG_SUFFIX)) {
+                            reload(name);
+                        } else {
+                            submit(name);
+                        }
+                    }
+                }
+                if (!key.reset()) {
+                    throw error("%s is no longer accessible", _dir);
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException excp) {
+            return;
+        }
+    }
+
+    /** Stop watching, and wait for the files being processed to finish. */
+    void stop() {
+        try {
+            _watcher.close();
+        } catch (IOException excp) {
+            /* Ignore: we are shutting down. */
+        }
+        _reloader.shutdownNow();
+        _pool.shutdown();
+        try {
+            _pool.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException excp) {
+            _pool.shutdownNow();
+        }
+    }
+
+    /** Queue every input currently in my directory, and reread every
+     *  configuration, after events may have been lost. */
+    private void rescan() {
+        String[] names = _dir.toFile().list();
+        Arrays.sort(names);
+        for (String name : names) {
+            if (name.endsWith(Batch.CONFIG_SUFFIX)) {
+                reload(name);
+            } else {
+                submit(name);
+            }
+        }
+    }
+
+    /** Reread the configuration NAME in the background, once changes to
+     *  it have settled, if it has been read before and is not already
+     *  about to be reread.  Configurations not yet read are read when
+     *  first needed, as usual. */
+    private void reload(String name) {
+        if (_configs.containsKey(name) && _reloading.add(name)) {
+            _reloader.execute(() -> {
+                try {
+                    Thread.sleep(SETTLE_MILLIS);
+                } catch (InterruptedException excp) {
+                    return;
+                }
+                _reloading.remove(name);
+                ConfigSource source = _configs.get(name);
+                if (source == null
+                    || !Files.isRegularFile(_dir.resolve(name))) {
+                    return;
+                }
+                try {
+                    source.reload();
+                    _out.printf("%s: reloaded%n", name);
+                } catch (EnigmaException excp) {
+                    _err.printf("Error: %s: %s%n", name, excp.getMessage());
+                }
+            });
+        }
+    }
+
+    /** Queue the file NAME in my directory if it is an input that is not
+     *  already queued. */
+    private void submit(String name) {
+        if (name.endsWith(Batch.INPUT_SUFFIX)
+            && Files.isRegularFile(_dir.resolve(name))
+            && _queued.add(name)) {
+            _pool.execute(() -> process(name));
+        }
+    }
+
+    /** Process the input NAME, moving it out of my directory when done.
+     *  Whatever goes wrong, even an Error, only this input fails: it is
+     *  moved to my failed directory and the spool carries on. */
+    private void process(String name) {
+        Path input = _dir.resolve(name);
+        String base = name.substring(0, name.length()
+                                     - Batch.INPUT_SUFFIX.length());
+        long start = System.nanoTime();
+        Path temp = null;
+        try {
+            if (!Files.isRegularFile(input)) {
+                return;
+            }
+            long bytes = Files.size(input);
+            String configName = base + Batch.CONFIG_SUFFIX;
+            if (!Files.isRegularFile(_dir.resolve(configName))) {
+                configName = Batch.DEFAULT_CONFIG;
+            }
+            MachineConfig definition = config(configName);
+            temp = Files.createTempFile(_outDir, base, TEMP_SUFFIX);
+            try (Scanner in = new Scanner(input.toFile());
+                 PrintStream out = new PrintStream(new BufferedOutputStream(
+                         Files.newOutputStream(temp)))) {
+                Main main = new Main(definition, in, out);
+                main.normalize(_normalize);
+                main.useEngine(_engine);
+                main.process();
+                out.flush();
+                if (out.checkError()) {
+                    throw error("could not write %s", temp);
+                }
+            }
+            Files.move(temp, _outDir.resolve(base + Batch.OUTPUT_SUFFIX),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+            temp = null;
+            Files.move(input, _doneDir.resolve(name),
+                       StandardCopyOption.REPLACE_EXISTING);
+            long nanos = System.nanoTime() - start;
+            _out.printf("%s: %d bytes in %.1f ms (%.2f MB/s)%n", name, bytes,
+                        nanos / 1e6, nanos == 0 ? 0.0 : bytes * 1e3 / nanos);
+        } catch (EnigmaException excp) {
+            fail(name, excp.getMessage());
+        } catch (IOException excp) {
+            fail(name, "could not process " + name);
+        } catch (Throwable excp) {
+            fail(name, excp.toString());
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException excp) {
+                    /* Ignore: the failure is already reported. */
+                }
+            }
+            _queued.remove(name);
+        }
+    }
+
+    /** Report that the input NAME failed with message MSG, and move it to
+     *  my failed directory with a note of MSG. */
+    private void fail(String name, String msg) {
+        msg = msg == null ? "failed" : msg;
+        _err.printf("Error: %s: %s%n", name, msg);
+        try {
+            String base = name.substring(0, name.length()
+                                         - Batch.INPUT_SUFFIX.length());
+            Files.writeString(_failedDir.resolve(base + ERROR_SUFFIX),
+                              msg + System.lineSeparator());
+            Files.move(_dir.resolve(name), _failedDir.resolve(name),
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            _err.printf("Error: could not move %s to %s%n", name, _failedDir);
+        }
+    }
+
+    /** Return the configuration in file NAME of my directory, reading it
+     *  if it has not been read yet. */
+    private MachineConfig config(String name) {
+        return _configs.computeIfAbsent(name, (n) ->
+            new ConfigSource(_dir.resolve(n).toFile())).current();
+    }
+
+    /** The spool directory. */
+    private final Path _dir;
+    /** The directories for outputs, processed inputs and failed inputs. */
+    private final Path _outDir, _doneDir, _failedDir;
+    /** The number of files processed at once. */
+    private final int _threads;
+    /** Where successes and failures are reported. */
+    private final PrintStream _out, _err;
+    /** The normalization spec for every file, or null. */
+    private String _normalize;
+    /** The engine for every file. */
+    private int _engine = Engines.ADAPTIVE;
+    /** The configurations read so far, by file name. */
+    private final ConcurrentHashMap<String, ConfigSource> _configs =
+        new ConcurrentHashMap<>();
+    /** The names of configurations waiting to be reread. */
+    private final Set<String> _reloading = ConcurrentHashMap.newKeySet();
+    /** The thread that rereads configurations. */
+    private final ExecutorService _reloader =
+        Executors.newSingleThreadExecutor((r) -> {
+            Thread thread = new Thread(r, "enigma-config-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+    /** The names of inputs queued or being processed. */
+    private final Set<String> _queued = ConcurrentHashMap.newKeySet();
+    /** Watches _dir for arrivals. */
+    private WatchService _watcher;
+    /** The threads that process inputs. */
+    private ExecutorService _pool;
+
+    /** Subdirectory of the spool for outputs. */
+    static final String OUT_DIR = "out";
+    /** Subdirectory of the spool for inputs that have been processed. */
+    static final String DONE_DIR = "done";
+    /** Subdirectory of the spool for inputs that could not be processed. */
+    static final String FAILED_DIR = "failed";
+    /** Suffix of the reason an input failed, in FAILED_DIR. */
+    static final String ERROR_SUFFIX = ".err";
+    /** Suffix of outputs being written. */
+    private static final String TEMP_SUFFIX = ".tmp";
+    /** The time to wait after a configuration changes for further
+     *  changes, before rereading it. */
+    private static final long SETTLE_MILLIS = 50;
+}
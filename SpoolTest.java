@@ -0,0 +1,149 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.stream.Stream;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Spool class.
+ *  @author Ryan Chen
+ */
+public class SpoolTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A configuration file. */
+    private static final String CONFIG = String.join("\n",
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ",
+        "5 3",
+        " I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)",
+        " III MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)",
+        " IV MJ     (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)",
+        " Beta N    (ALBEVFCYODJWUGNMQTZSKPR) (HIX)",
+        " B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)",
+        "           (RX) (SZ) (TV)", "");
+
+    /** An input file for CONFIG. */
+    private static final String INPUT = String.join("\n",
+        "* B Beta III IV I AXLE (YF) (ZH)",
+        "FROM HIS SHOULDER HIAWATHA", "",
+        "TOOK THE CAMERA OF ROSEWOOD", "");
+
+    /** Move a file containing TEXT into DIR as NAME in one step. */
+    private static void drop(Path dir, String name, String text)
+        throws IOException {
+        Path temp = Files.createTempFile(dir.getParent(), "enigma", ".tmp");
+        Files.writeString(temp, text);
+        Files.move(temp, dir.resolve(name),
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Wait until FILE exists, failing after a few seconds. */
+    private static void await(Path file) throws InterruptedException {
+        for (int i = 0; !Files.exists(file); i++) {
+            assertTrue("timed out waiting for " + file, i < 500);
+            Thread.sleep(10);
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testArrivals() throws Exception {
+        Path root = Files.createTempDirectory("enigma");
+        Path dir = Files.createDirectory(root.resolve("spool"));
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(log, true);
+        Spool spool = null;
+        try {
+            Files.writeString(dir.resolve(Batch.DEFAULT_CONFIG), CONFIG);
+            drop(dir, "early.in", INPUT);
+            spool = new Spool(dir.toFile(), 2, out, out);
+            spool.start();
+            Thread watcher = new Thread(spool::watch);
+            watcher.start();
+            drop(dir, "late.in", INPUT);
+            drop(dir, "bad.in", "no settings line\n");
+            Path outDir = dir.resolve(Spool.OUT_DIR);
+            Path failedDir = dir.resolve(Spool.FAILED_DIR);
+            await(outDir.resolve("early.out"));
+            await(outDir.resolve("late.out"));
+            await(failedDir.resolve("bad.in"));
+            spool.stop();
+            watcher.join();
+            String want =
+                mainOutput(dir.resolve(Batch.DEFAULT_CONFIG).toFile(), INPUT);
+            assertEquals(want, Files.readString(outDir.resolve("early.out")));
+            assertEquals(want, Files.readString(outDir.resolve("late.out")));
+            assertTrue(Files.exists(dir.resolve(Spool.DONE_DIR)
+                                    .resolve("late.in")));
+            assertFalse(Files.exists(dir.resolve("late.in")));
+            assertTrue(Files.readString(failedDir.resolve("bad.err"))
+                       .contains("incorrectly formatted"));
+            try (Stream<Path> files = Files.list(outDir)) {
+                assertEquals(2, files.count());
+            }
+        } finally {
+            if (spool != null) {
+                spool.stop();
+            }
+            deleteTree(root);
+        }
+    }
+
+    @Test
+    public void testConfigReload() throws Exception {
+        Path root = Files.createTempDirectory("enigma");
+        Path dir = Files.createDirectory(root.resolve("spool"));
+        Path other = root.resolve("other.conf");
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(log, true);
+        Spool spool = null;
+        try {
+            Files.writeString(dir.resolve(Batch.DEFAULT_CONFIG), CONFIG);
+            Files.writeString(other, CONFIG.replace("(IV) (JZ) (S)",
+                                                    "(IVS) (JZ)"));
+            spool = new Spool(dir.toFile(), 1, out, out);
+            spool.start();
+            Thread watcher = new Thread(spool::watch);
+            watcher.start();
+            Path outDir = dir.resolve(Spool.OUT_DIR);
+            drop(dir, "before.in", INPUT);
+            await(outDir.resolve("before.out"));
+            Files.writeString(dir.resolve(Batch.DEFAULT_CONFIG),
+                              Files.readString(other));
+            for (int i = 0; !log.toString().contains("reloaded"); i++) {
+                assertTrue("timed out waiting for reload", i < 500);
+                Thread.sleep(10);
+            }
+            drop(dir, "after.in", INPUT);
+            await(outDir.resolve("after.out"));
+            spool.stop();
+            watcher.join();
+            String old = Files.readString(outDir.resolve("before.out"));
+            String now = Files.readString(outDir.resolve("after.out"));
+            assertEquals(mainOutput(dir.resolve(Batch.DEFAULT_CONFIG)
+                                    .toFile(), INPUT), now);
+            assertNotEquals(old, now);
+        } finally {
+            if (spool != null) {
+                spool.stop();
+            }
+            deleteTree(root);
+        }
+    }
+}
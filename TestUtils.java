@@ -1,6 +1,17 @@
 package enigma;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Scanner;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /** Utility definitions for use in unit tests.
  *  @author P. N. Hilfinger
@@ -126,4 +137,133 @@ class TestUtils {
         NAVALZ_MAP.put("Gamma", "EGTPLBOVFSINCUJZDXMRQAYWHK");
     }
 
+    /** The kinds and notches of the naval rotors, as in a configuration
+     *  file. */
+    static final HashMap<String, String> NAVAL_INFO = new HashMap<>();
+    static {
+        NAVAL_INFO.put("I", "MQ");
+        NAVAL_INFO.put("II", "ME");
+        NAVAL_INFO.put("III", "MV");
+        NAVAL_INFO.put("IV", "MJ");
+        NAVAL_INFO.put("V", "MZ");
+        NAVAL_INFO.put("VI", "MZM");
+        NAVAL_INFO.put("VII", "MZM");
+        NAVAL_INFO.put("VIII", "MZM");
+        NAVAL_INFO.put("Beta", "N");
+        NAVAL_INFO.put("Gamma", "N");
+        NAVAL_INFO.put("B", "R");
+        NAVAL_INFO.put("C", "R");
+    }
+
+    /** Return a configuration of all the naval rotors with NUMROTORS
+     *  slots and NUMPAWLS pawls. */
+    static MachineConfig navalConfig(int numRotors, int numPawls) {
+        ArrayList<RotorSpec> specs = new ArrayList<>();
+        for (String name : NAVAL_INFO.keySet()) {
+            String info = NAVAL_INFO.get(name);
+            specs.add(new RotorSpec(name, info.charAt(0), info.substring(1),
+                                    new Permutation(NAVALA.get(name), UPPER)));
+        }
+        return new MachineConfig(UPPER, numRotors, numPawls, specs);
+    }
+
+    /** Return a machine for CONFIG set up by the settings line SETTINGS,
+     *  exactly as Main sets one up. */
+    static Machine machineFor(MachineConfig config, String settings) {
+        Main main = new Main(config, null, null);
+        main.start();
+        main.processLine(settings);
+        return main.machine();
+    }
+
+    /** Return what Main prints for the lines of INPUT on the configuration
+     *  file CONFIG, computed directly. */
+    static String mainOutput(File config, String input) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes);
+        new Main(Main.readConfig(config), new Scanner(input), out).process();
+        out.flush();
+        return bytes.toString();
+    }
+
+    /** Return what RUN prints on the stream it is given, followed by
+     *  "Error: " and the message of the EnigmaException it throws, if
+     *  any. */
+    static String outputAndError(Consumer<PrintStream> run) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes);
+        String error = "";
+        try {
+            run.accept(out);
+        } catch (EnigmaException excp) {
+            error = "Error: " + excp.getMessage();
+        }
+        out.flush();
+        return bytes + error;
+    }
+
+    /** Delete DIR and everything in it. */
+    static void deleteTree(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder())
+                .forEach((f) -> f.toFile().delete());
+        }
+    }
+
+    /** Return a machine with five naval rotor slots and three pawls, set
+     *  up by the settings line SETTINGS. */
+    static Machine navalMachine(String settings) {
+        return machineFor(navalConfig(5, 3), settings);
+    }
+
+    /** Return a naval machine with slots SLOTS at SETTING and a small
+     *  plugboard, converting with ENGINE (see Engines). */
+    static Machine navalMachine(String[] slots, String setting,
+                                int engine) {
+        Machine m = new Machine(navalConfig(slots.length,
+                                            Math.max(1, slots.length - 2)));
+        m.useEngine(engine);
+        m.insertRotors(slots);
+        m.setRotors(setting);
+        m.setPlugboard(new Permutation("(AQ) (EP) (TR)", UPPER));
+        return m;
+    }
+
+    /** Return the result of converting a long message with
+     *  navalMachine(SLOTS, SETTING, ENGINE) in pieces, moving a slot part
+     *  way through, so that the engines can be compared. */
+    static char[] engineText(String[] slots, String setting, int engine) {
+        char[] text = new char[4000];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = (char) ('A' + (i * i + 5 * i) % 26);
+        }
+        Machine m = navalMachine(slots, setting, engine);
+        m.convert(text, 0, 3);
+        m.convert(text, 3, 2000);
+        m.getRotorSlots().get(Math.min(2, slots.length - 1)).set(11);
+        m.convert(text, 2000, text.length);
+        return text;
+    }
+
+    /** Return a machine over the byte alphabet with three rotors whose
+     *  wirings are simple affine maps. */
+    static Machine byteMachine() {
+        Alphabet bytes = Alphabet.byteAlphabet();
+        int[] reflect = new int[256], left = new int[256],
+            right = new int[256];
+        for (int i = 0; i < 256; i++) {
+            reflect[i] = i ^ 1;
+            left[i] = (7 * i + 3) & 255;
+            right[i] = (29 * i + 101) & 255;
+        }
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(new Reflector("R", new Permutation(reflect, bytes)));
+        all.add(new MovingRotor("L", new Permutation(left, bytes), "\0"));
+        all.add(new MovingRotor("F", new Permutation(right, bytes), "\377"));
+        Machine m = new Machine(bytes, 3, 2, all);
+        m.setPlugboard(new Permutation("", bytes));
+        m.insertRotors(new String[] {"R", "L", "F"});
+        return m;
+    }
+
 }
@@ -11,7 +11,19 @@ public class UnitTest {
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
         textui.runClasses(PermutationTest.class, MovingRotorTest.class,
-                AlphabetTest.class);
+                AlphabetTest.class, MachineTest.class,
+                ConfigReaderTest.class, KeystreamTableTest.class,
+                DepthDetectorTest.class, KeySpaceTest.class,
+                MachineStateTest.class, KeySearchTest.class,
+                ReencryptorTest.class, RotorArenaTest.class,
+                GeneratorTest.class, NormalizerTest.class,
+                SpoolTest.class, SpecializerTest.class,
+                PipelineTest.class, SectionsTest.class,
+                CribFinderTest.class, EnigmaReaderTest.class,
+                EnigmaWriterTest.class, EnginesTest.class,
+                SessionStoreTest.class, ConfigSourceTest.class,
+                BatchTest.class, CheckpointTest.class,
+                EnigmaEventsTest.class);
     }
 
 }